@@ -0,0 +1,46 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.provider;
+
+/**
+ * Exception thrown when an Identity Provider is written based on a version which is no longer the stored one, i.e.
+ * the Identity Provider has been modified since it was read. The caller needs to read it again and reapply the change.
+ */
+public class IdentityProviderConflictException extends IdentityProviderException {
+
+    private static final long serialVersionUID = -6131950325270484367L;
+
+    private final int identityProviderId;
+    private final int expectedVersion;
+
+    public IdentityProviderConflictException(int identityProviderId, int expectedVersion) {
+        super("Identity provider with ID: " + identityProviderId + " has been modified since version: "
+                + expectedVersion);
+        this.identityProviderId = identityProviderId;
+        this.expectedVersion = expectedVersion;
+    }
+
+    public int getIdentityProviderId() {
+        return identityProviderId;
+    }
+
+    public int getExpectedVersion() {
+        return expectedVersion;
+    }
+}
@@ -23,6 +23,7 @@ import org.wso2.carbon.identity.provider.model.IdPMetadata;
 import org.wso2.carbon.identity.provider.model.IdentityProvider;
 import org.wso2.carbon.identity.provider.model.ProvisioningConfig;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
@@ -71,6 +72,72 @@ public interface IdentityProviderInterceptor {
 
     void postDisableIdentityProvider(int identityProviderId) throws IdentityProviderException;
 
+    /**
+     * Invoked once before a bulk delete. Delegates to {@link #preDeleteIdentityProvider(int)} for each ID unless
+     * overridden to handle the whole batch at once.
+     */
+    default void preDeleteIdentityProviders(Collection<Integer> identityProviderIds)
+            throws IdentityProviderException {
+        for (int identityProviderId : identityProviderIds) {
+            preDeleteIdentityProvider(identityProviderId);
+        }
+    }
+
+    /**
+     * Invoked once after a bulk delete. Delegates to {@link #postDeleteIdentityProvider(int)} for each ID unless
+     * overridden to handle the whole batch at once.
+     */
+    default void postDeleteIdentityProviders(Collection<Integer> identityProviderIds)
+            throws IdentityProviderException {
+        for (int identityProviderId : identityProviderIds) {
+            postDeleteIdentityProvider(identityProviderId);
+        }
+    }
+
+    /**
+     * Invoked once before a bulk enable. Delegates to {@link #preEnableIdentityProvider(int)} for each ID unless
+     * overridden to handle the whole batch at once.
+     */
+    default void preEnableIdentityProviders(Collection<Integer> identityProviderIds)
+            throws IdentityProviderException {
+        for (int identityProviderId : identityProviderIds) {
+            preEnableIdentityProvider(identityProviderId);
+        }
+    }
+
+    /**
+     * Invoked once after a bulk enable. Delegates to {@link #postEnableIdentityProvider(int)} for each ID unless
+     * overridden to handle the whole batch at once.
+     */
+    default void postEnableIdentityProviders(Collection<Integer> identityProviderIds)
+            throws IdentityProviderException {
+        for (int identityProviderId : identityProviderIds) {
+            postEnableIdentityProvider(identityProviderId);
+        }
+    }
+
+    /**
+     * Invoked once before a bulk disable. Delegates to {@link #preDisableIdentityProvider(int)} for each ID unless
+     * overridden to handle the whole batch at once.
+     */
+    default void preDisableIdentityProviders(Collection<Integer> identityProviderIds)
+            throws IdentityProviderException {
+        for (int identityProviderId : identityProviderIds) {
+            preDisableIdentityProvider(identityProviderId);
+        }
+    }
+
+    /**
+     * Invoked once after a bulk disable. Delegates to {@link #postDisableIdentityProvider(int)} for each ID unless
+     * overridden to handle the whole batch at once.
+     */
+    default void postDisableIdentityProviders(Collection<Integer> identityProviderIds)
+            throws IdentityProviderException {
+        for (int identityProviderId : identityProviderIds) {
+            postDisableIdentityProvider(identityProviderId);
+        }
+    }
+
     void preUpdateIdPMetadata(int identityProviderId, IdPMetadata metadata) throws IdentityProviderException;
 
     void postUpdateIdPMetadata(int identityProviderId, IdPMetadata metadata) throws IdentityProviderException;
@@ -19,27 +19,40 @@
 package org.wso2.carbon.identity.provider;
 
 import org.wso2.carbon.identity.provider.model.AuthenticationConfig;
+import org.wso2.carbon.identity.provider.model.IdPListQuery;
+import org.wso2.carbon.identity.provider.model.IdPListResult;
 import org.wso2.carbon.identity.provider.model.IdPMetadata;
 import org.wso2.carbon.identity.provider.model.IdentityProvider;
 import org.wso2.carbon.identity.provider.model.ProvisioningConfig;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
 /**
  * Defines the functionality that should be supported by Identity Provider Service.
  */
-//ToDO Address patching the identity provider, without rewriting all again when only a section is modified.
 public interface IdentityProviderService {
 
     /**
-     * Lists the names of all the Identity Providers.
+     * Lists the names of all the Identity Providers. The whole list is held in memory, hence
+     * {@link #forEachIdentityProvider(Consumer)} is to be used to go through a large number of Identity Providers.
      *
      * @return List<IDP Name>
      * @throws IdentityProviderException
      */
     List<String> listIdentityProviders() throws IdentityProviderException;
 
+    /**
+     * Passes the names of all the Identity Providers to the consumer, reading them from the database as they are
+     * consumed, so that the memory used does not grow with the number of Identity Providers.
+     *
+     * @param consumer receives the name of each Identity Provider.
+     * @throws IdentityProviderException
+     */
+    void forEachIdentityProvider(Consumer<String> consumer) throws IdentityProviderException;
+
     /**
      * Lists the names of all the Identity Providers which are currently enabled.
      *
@@ -48,6 +61,16 @@ public interface IdentityProviderService {
      */
     List<String> listEnabledIdentityProviders() throws IdentityProviderException;
 
+    /**
+     * Lists a page of Identity Providers matching the filters of the given query, ordered by ID.
+     * The next page is fetched by passing {@link IdPListResult#getNextAfterId()} as the cursor of the next query.
+     *
+     * @param idPListQuery the cursor, page size and filters.
+     * @return the page of Identity Providers, carrying their metadata and enabled state.
+     * @throws IdentityProviderException
+     */
+    IdPListResult listIdentityProviders(IdPListQuery idPListQuery) throws IdentityProviderException;
+
     /**
      * Creates the Identity provider and returns the primary ID.
      *
@@ -75,6 +98,39 @@ public interface IdentityProviderService {
      */
     IdentityProvider getIdentityProvider(String idPName) throws IdentityProviderException;
 
+    /**
+     * Returns the Identity provider of a tenant given the home realm identifier sent by service providers to skip the
+     * Identity Provider selection. The resolved Identity Providers are kept in memory by the cache of the service,
+     * until they are modified through it or expire.
+     *
+     * @param tenantId    ID of the tenant
+     * @param homeRealmId home realm identifier of the IDP
+     * @return the Identity Provider with the home realm identifier. Null if no Identity provider of the tenant has it.
+     * @throws IdentityProviderException
+     */
+    IdentityProvider getIdentityProviderByHomeRealmId(int tenantId, String homeRealmId)
+            throws IdentityProviderException;
+
+    /**
+     * Returns the Identity providers given their primary IDs, fetched with one or a few database round trips.
+     *
+     * @param identityProviderIds the primary IDs.
+     * @return the Identity Providers found, keyed by the ID. The IDs without an Identity Provider are left out.
+     * @throws IdentityProviderException
+     */
+    Map<Integer, IdentityProvider> getIdentityProviders(Collection<Integer> identityProviderIds)
+            throws IdentityProviderException;
+
+    /**
+     * Returns the Identity providers given their unique names, fetched with one or a few database round trips.
+     *
+     * @param idPNames unique names of IDPs
+     * @return the Identity Providers found, keyed by the name. The names without an Identity Provider are left out.
+     * @throws IdentityProviderException
+     */
+    Map<String, IdentityProvider> getIdentityProvidersByName(Collection<String> idPNames)
+            throws IdentityProviderException;
+
     /**
      * Returns the Identity provider identified by the unique property value of IDP.
      *
@@ -106,9 +162,13 @@ public interface IdentityProviderService {
     IdentityProvider getIdPByUniqueProvisionerProperty(String name, Object value) throws IdentityProviderException;
 
     /**
-     * Updates the saved information about the identity provider
+     * Updates the saved information about the identity provider.
+     * Only the sections which differ from the saved information are written, hence an edit of a single authenticator
+     * property rewrites only that property.
      *
-     * @param identityProvider carries the updated information of the identity provider.
+     * @param identityProvider carries the updated information of the identity provider, identified by its ID, and the
+     *                         version of the metadata it was read from.
+     * @throws IdentityProviderConflictException when the identity provider has been modified since that version.
      * @throws IdentityProviderException
      */
     void updateIdentityProvider(IdentityProvider identityProvider) throws IdentityProviderException;
@@ -138,11 +198,72 @@ public interface IdentityProviderService {
      */
     void disableIdentityProvider(int identityProviderId) throws IdentityProviderException;
 
+    /**
+     * Delete the identity providers identified by the given ids, in a single transaction. The interceptors are
+     * invoked once for the whole batch.
+     *
+     * @param identityProviderIds primary ids of the identity providers
+     * @return the number of identity providers deleted
+     * @throws IdentityProviderException
+     */
+    int deleteIdentityProviders(Collection<Integer> identityProviderIds) throws IdentityProviderException;
+
+    /**
+     * Delete the identity providers matching the name prefix, enabled and federation hub filters of the given query.
+     * The cursor and the page size of the query are ignored.
+     *
+     * @param filter filters selecting the identity providers
+     * @return the number of identity providers deleted
+     * @throws IdentityProviderException
+     */
+    int deleteIdentityProviders(IdPListQuery filter) throws IdentityProviderException;
+
+    /**
+     * Enables the identity providers identified by the given ids, in a single transaction. The interceptors are
+     * invoked once for the whole batch.
+     *
+     * @param identityProviderIds primary ids of the identity providers
+     * @return the number of identity providers updated
+     * @throws IdentityProviderException
+     */
+    int enableIdentityProviders(Collection<Integer> identityProviderIds) throws IdentityProviderException;
+
+    /**
+     * Enables the identity providers matching the name prefix, enabled and federation hub filters of the given query.
+     * The cursor and the page size of the query are ignored.
+     *
+     * @param filter filters selecting the identity providers
+     * @return the number of identity providers updated
+     * @throws IdentityProviderException
+     */
+    int enableIdentityProviders(IdPListQuery filter) throws IdentityProviderException;
+
+    /**
+     * Disables the identity providers identified by the given ids, in a single transaction. The interceptors are
+     * invoked once for the whole batch.
+     *
+     * @param identityProviderIds primary ids of the identity providers
+     * @return the number of identity providers updated
+     * @throws IdentityProviderException
+     */
+    int disableIdentityProviders(Collection<Integer> identityProviderIds) throws IdentityProviderException;
+
+    /**
+     * Disables the identity providers matching the name prefix, enabled and federation hub filters of the given query.
+     * The cursor and the page size of the query are ignored.
+     *
+     * @param filter filters selecting the identity providers
+     * @return the number of identity providers updated
+     * @throws IdentityProviderException
+     */
+    int disableIdentityProviders(IdPListQuery filter) throws IdentityProviderException;
+
     /**
      * Update the meta details of an identity provider
      *
      * @param identityProviderId primary if of the identity provider
-     * @param metadata           carries the updated meta details
+     * @param metadata           carries the updated meta details, and the version they were read from
+     * @throws IdentityProviderConflictException when the identity provider has been modified since that version.
      * @throws IdentityProviderException
      */
     void updateIdPMetadata(int identityProviderId, IdPMetadata metadata) throws IdentityProviderException;
@@ -151,20 +272,24 @@ public interface IdentityProviderService {
      * Update just the authentication details of the identity provider, identified by the given id.
      *
      * @param identityProviderId   primary id of identity provider
+     * @param version              the version of the identity provider the authentication configuration was read from
      * @param authenticationConfig carries the updated details of authentication configuration
+     * @throws IdentityProviderConflictException when the identity provider has been modified since that version.
      * @throws IdentityProviderException
      */
-    void updateIdPAuthenticationConfig(int identityProviderId, AuthenticationConfig authenticationConfig)
+    void updateIdPAuthenticationConfig(int identityProviderId, int version, AuthenticationConfig authenticationConfig)
             throws IdentityProviderException;
 
     /**
      * Update just the provisioning details of the identity provider, identified by the given id.
      *
      * @param identityProviderId primary id of identity provider
+     * @param version            the version of the identity provider the provisioning configuration was read from
      * @param provisioningConfig carries the updated details of provisioning configuration
+     * @throws IdentityProviderConflictException when the identity provider has been modified since that version.
      * @throws IdentityProviderException
      */
-    void updateIdPProvisioningConfig(int identityProviderId, ProvisioningConfig provisioningConfig)
+    void updateIdPProvisioningConfig(int identityProviderId, int version, ProvisioningConfig provisioningConfig)
             throws IdentityProviderException;
 
     /**
@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.provider.dao;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded executor running the asynchronous calls of {@link JdbcTemplate}.
+ * Acts as a bulkhead: at most {@code maxConcurrency} database calls run at a time, at most {@code queueCapacity} more
+ * wait for their turn, and anything beyond that is rejected immediately instead of piling up.
+ * The calls can run either on a fixed pool of platform threads, or on a virtual thread per task where the JDK
+ * supports it.
+ */
+public class AsyncQueryExecutor implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(AsyncQueryExecutor.class);
+
+    private final ExecutorService executorService;
+    private final int maxAdmissions;
+    private final Semaphore admissionPermits;
+    private final Semaphore concurrencyPermits;
+
+    private AsyncQueryExecutor(ExecutorService executorService, int queueCapacity, int maxConcurrency,
+            boolean limitConcurrency) {
+        this.executorService = executorService;
+        this.maxAdmissions = maxConcurrency + queueCapacity;
+        this.admissionPermits = new Semaphore(maxAdmissions);
+        this.concurrencyPermits = limitConcurrency ? new Semaphore(maxConcurrency) : null;
+    }
+
+    /**
+     * Creates an executor running the database calls on a fixed pool of daemon platform threads.
+     *
+     * @param maxConcurrency the number of database calls that can run at once.
+     * @param queueCapacity the number of database calls that can wait for a thread.
+     * @return the executor.
+     */
+    public static AsyncQueryExecutor newPlatformThreadExecutor(int maxConcurrency, int queueCapacity) {
+        validate(maxConcurrency, queueCapacity);
+        AtomicInteger threadCount = new AtomicInteger();
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, "jdbc-async-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        return new AsyncQueryExecutor(Executors.newFixedThreadPool(maxConcurrency, threadFactory), queueCapacity,
+                maxConcurrency, false);
+    }
+
+    /**
+     * Creates an executor running each database call on its own virtual thread, while still limiting the number of
+     * calls running at once. Falls back to platform threads when the JDK does not support virtual threads.
+     *
+     * @param maxConcurrency the number of database calls that can run at once.
+     * @param queueCapacity the number of database calls that can wait for their turn.
+     * @return the executor.
+     */
+    public static AsyncQueryExecutor newVirtualThreadExecutor(int maxConcurrency, int queueCapacity) {
+        validate(maxConcurrency, queueCapacity);
+        try {
+            ExecutorService executorService = (ExecutorService) Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            return new AsyncQueryExecutor(executorService, queueCapacity, maxConcurrency, true);
+        } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
+            logger.warn("Virtual threads are not supported by the JDK. Using platform threads for asynchronous "
+                    + "database calls.");
+            return newPlatformThreadExecutor(maxConcurrency, queueCapacity);
+        }
+    }
+
+    /**
+     * Submits the database call for execution.
+     *
+     * @param task the database call.
+     * @throws RejectedExecutionException when both the concurrency limit and the queue are exhausted.
+     */
+    public void execute(Runnable task) {
+        if (!admissionPermits.tryAcquire()) {
+            throw new RejectedExecutionException("Too many database calls in flight. The asynchronous call is "
+                    + "rejected.");
+        }
+        try {
+            executorService.execute(() -> {
+                try {
+                    runWithinConcurrencyLimit(task);
+                } finally {
+                    admissionPermits.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            admissionPermits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the number of database calls either running or waiting to run.
+     *
+     * @return the number of calls in flight.
+     */
+    public int getInFlightCount() {
+        return maxAdmissions - admissionPermits.availablePermits();
+    }
+
+    @Override
+    public void close() {
+        executorService.shutdown();
+    }
+
+    private void runWithinConcurrencyLimit(Runnable task) {
+        if (concurrencyPermits == null) {
+            task.run();
+            return;
+        }
+        concurrencyPermits.acquireUninterruptibly();
+        try {
+            task.run();
+        } finally {
+            concurrencyPermits.release();
+        }
+    }
+
+    private static void validate(int maxConcurrency, int queueCapacity) {
+        if (maxConcurrency <= 0 || queueCapacity < 0) {
+            throw new IllegalArgumentException("Invalid asynchronous executor bounds. Concurrency: " + maxConcurrency
+                    + ", queue capacity: " + queueCapacity);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.provider.dao;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * SQL variable binding for one element of a batch.
+ * e.g.
+ * <code>
+ *     "INSERT INTO IDP_AUTHENTICATOR (IDP_ID, NAME) VALUES (?,?)";
+ *     this.jdbcTemplate.executeBatch(INSERT_SQL, authenticators, (preparedStatement, authenticator) -> {
+ *          preparedStatement.setInt(1, idpId);
+ *          preparedStatement.setString(2, authenticator.getName());
+ *     });
+ * </code>
+ *
+ * @param <T> the type of the domain object bound to each batch entry.
+ */
+@FunctionalInterface
+public interface BatchQueryFilter<T extends Object> {
+
+    /**
+     * Performs the variable binding for a single batch entry.
+     *
+     * @param preparedStatement the statement shared by the whole batch.
+     * @param bean the domain object to be bound.
+     * @throws SQLException
+     */
+    void filter(PreparedStatement preparedStatement, T bean) throws SQLException;
+}
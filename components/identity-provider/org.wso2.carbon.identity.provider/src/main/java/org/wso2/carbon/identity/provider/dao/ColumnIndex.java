@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.provider.dao;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The positions of the columns of a result set, keyed by the column label.
+ * Labels are matched case insensitively, the same way {@link ResultSet} resolves them.
+ */
+public class ColumnIndex {
+
+    private final Map<String, Integer> indexes;
+
+    private ColumnIndex(Map<String, Integer> indexes) {
+        this.indexes = indexes;
+    }
+
+    /**
+     * Reads the column labels of the given result set from its metadata.
+     *
+     * @param resultSet the result set.
+     * @return the column index of the result set.
+     * @throws SQLException when the metadata cannot be read.
+     */
+    public static ColumnIndex of(ResultSet resultSet) throws SQLException {
+        ResultSetMetaData metaData = resultSet.getMetaData();
+        int columnCount = metaData.getColumnCount();
+        Map<String, Integer> indexes = new HashMap<>(columnCount * 2);
+        for (int i = columnCount; i > 0; i--) {
+            // Iterating backwards lets the first of the duplicate labels win, as it does with ResultSet.
+            indexes.put(metaData.getColumnLabel(i).toUpperCase(Locale.ENGLISH), i);
+        }
+        return new ColumnIndex(indexes);
+    }
+
+    /**
+     * Returns the position of the given column.
+     *
+     * @param columnLabel the column label.
+     * @return the 1 based position of the column.
+     * @throws SQLException when the result set does not have the column.
+     */
+    public int indexOf(String columnLabel) throws SQLException {
+        Integer index = indexes.get(columnLabel.toUpperCase(Locale.ENGLISH));
+        if (index == null) {
+            throw new SQLException("Column not found in the result set: " + columnLabel);
+        }
+        return index;
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.provider.dao;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps a latency histogram per SQL template, along with the latency of acquiring the connections.
+ * The number of SQL templates is bounded by the constant queries of the DAOs, hence the statistics are never evicted.
+ */
+public class DefaultQueryMetricsCollector implements QueryMetricsCollector {
+
+    private final QueryStatistics connectionStatistics = new QueryStatistics();
+    private final Map<String, QueryStatistics> queryStatistics = new ConcurrentHashMap<>();
+
+    @Override
+    public void connectionAcquired(long durationNanos) {
+        connectionStatistics.record(durationNanos, 0, true);
+    }
+
+    @Override
+    public void queryExecuted(String query, long durationNanos, int rowCount, boolean successful) {
+        queryStatistics.computeIfAbsent(query, key -> new QueryStatistics())
+                .record(durationNanos, rowCount, successful);
+    }
+
+    /**
+     * Returns the statistics of acquiring connections from the data source.
+     *
+     * @return the connection acquisition statistics.
+     */
+    public QueryStatistics getConnectionStatistics() {
+        return connectionStatistics;
+    }
+
+    /**
+     * Returns the statistics of each SQL template executed so far.
+     *
+     * @return the live statistics keyed by the SQL template.
+     */
+    public Map<String, QueryStatistics> getQueryStatistics() {
+        return Collections.unmodifiableMap(queryStatistics);
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.provider.dao;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Groups the rows of a JOIN query by the key of the parent entity, so that an object graph is built in one pass over
+ * the result set. The parent is created from the first row of its group, and every row of the group is then given to
+ * the row accumulator, which adds the child entities. Deeper levels are grouped the same way with
+ * {@link #groupChildren(Function, RowMapper, RowMapper, RowAccumulator)}.
+ * Usage
+ * <code>
+ *        this.jdbcTemplate.query(SELECT_PARENT_JOIN_CHILD_SQL, new GroupingResultSetExtractor&lt;&gt;(
+ *              (resultSet, rowNumber) -&gt; resultSet.getInt("PARENT_ID"),
+ *              (resultSet, rowNumber) -&gt; new ParentBuilder(resultSet.getString("PARENT_NAME")),
+ *              GroupingResultSetExtractor.groupChildren(ParentBuilder::getChildren,
+ *                      (resultSet, rowNumber) -&gt; (Integer) resultSet.getObject("CHILD_ID"),
+ *                      (resultSet, rowNumber) -&gt; new ChildBuilder(resultSet.getString("CHILD_NAME")), null)),
+ *              null);
+ * </code>
+ *
+ * @param <K> the type of the parent key.
+ * @param <P> the type of the parent, usually a builder.
+ */
+public class GroupingResultSetExtractor<K extends Object, P extends Object> implements ResultSetExtractor<Map<K, P>> {
+
+    private final RowMapper<K> keyMapper;
+    private final RowMapper<P> parentMapper;
+    private final RowAccumulator<P> rowAccumulator;
+
+    /**
+     * @param keyMapper reads the key of the parent from a row.
+     * @param parentMapper creates the parent from the first row of its group.
+     * @param rowAccumulator adds the details of each row of the group to the parent. May be null.
+     */
+    public GroupingResultSetExtractor(RowMapper<K> keyMapper, RowMapper<P> parentMapper,
+            RowAccumulator<P> rowAccumulator) {
+        this.keyMapper = keyMapper;
+        this.parentMapper = parentMapper;
+        this.rowAccumulator = rowAccumulator;
+    }
+
+    /**
+     * Returns the parents in the order of their first row.
+     */
+    @Override
+    public Map<K, P> extractData(ResultSet resultSet) throws SQLException {
+        Map<K, P> parents = new LinkedHashMap<>();
+        int rowNumber = 0;
+        while (resultSet.next()) {
+            K key = keyMapper.mapRow(resultSet, rowNumber);
+            P parent = parents.get(key);
+            if (parent == null) {
+                parent = parentMapper.mapRow(resultSet, rowNumber);
+                parents.put(key, parent);
+            }
+            if (rowAccumulator != null) {
+                rowAccumulator.accumulate(parent, resultSet, rowNumber);
+            }
+            rowNumber++;
+        }
+        return parents;
+    }
+
+    /**
+     * Returns an accumulator grouping the rows of a parent by the key of a child entity, into the map of children held
+     * by the parent. Rows with a null child key, as produced by a LEFT JOIN for a parent without children, are skipped.
+     *
+     * @param children returns the map of children of the parent, keyed by the child key.
+     * @param childKeyMapper reads the key of the child from a row, or null when the row has no child.
+     * @param childMapper creates the child from the first row of its group.
+     * @param childAccumulator adds the details of each row of the group to the child. May be null.
+     * @param <P> the type of the parent.
+     * @param <K> the type of the child key.
+     * @param <C> the type of the child, usually a builder.
+     * @return the accumulator for the parent.
+     */
+    public static <P extends Object, K extends Object, C extends Object> RowAccumulator<P> groupChildren(
+            Function<P, Map<K, C>> children, RowMapper<K> childKeyMapper, RowMapper<C> childMapper,
+            RowAccumulator<C> childAccumulator) {
+        return (parent, resultSet, rowNumber) -> {
+            K key = childKeyMapper.mapRow(resultSet, rowNumber);
+            if (key == null) {
+                return;
+            }
+            Map<K, C> parentChildren = children.apply(parent);
+            C child = parentChildren.get(key);
+            if (child == null) {
+                child = childMapper.mapRow(resultSet, rowNumber);
+                parentChildren.put(key, child);
+            }
+            if (childAccumulator != null) {
+                childAccumulator.accumulate(child, resultSet, rowNumber);
+            }
+        };
+    }
+}
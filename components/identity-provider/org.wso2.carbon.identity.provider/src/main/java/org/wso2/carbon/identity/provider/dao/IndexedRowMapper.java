@@ -0,0 +1,40 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.provider.dao;
+
+import java.sql.SQLException;
+
+/**
+ * Creates a {@link RowMapper} once per result set, with the column positions resolved up front, so that the rows are
+ * read by index rather than by looking up the column labels on every row.
+ * Usage
+ * <code>
+ *        this.jdbcTemplate.executeQuery(SELECT_SQL, columnIndex -> {
+ *          int column1 = columnIndex.indexOf("COLUMN_1");
+ *          return (resultSet, rowNumber) -> new DomainObject(resultSet.getString(column1));
+ *        }
+ * </code>
+ *
+ * @param <T> the type of the domain object.
+ */
+@FunctionalInterface
+public interface IndexedRowMapper<T extends Object> {
+
+    RowMapper<T> withColumns(ColumnIndex columnIndex) throws SQLException;
+}
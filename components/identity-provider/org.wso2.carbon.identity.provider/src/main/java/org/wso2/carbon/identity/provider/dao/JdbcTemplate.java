@@ -23,23 +23,253 @@ import org.slf4j.LoggerFactory;
 import org.slf4j.helpers.MessageFormatter;
 
 import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Savepoint;
+import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Locale;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * A utility class to call JDBC with lambda expressions.
+ * The template prepares a new statement for every call. Statements are reused across calls by the statement cache of
+ * the data source or the driver, e.g. the prepStmtCacheSize of the pool, or cachePrepStmts of the MySQL driver, which
+ * keeps the statements of the physical connection across its checkouts.
  */
 public class JdbcTemplate {
 
     private static final Logger logger = LoggerFactory.getLogger(JdbcTemplate.class);
+    private static final int DEFAULT_BATCH_SIZE = 100;
+    private static final int DEFAULT_ASYNC_CONCURRENCY = 10;
+    private static final int DEFAULT_ASYNC_QUEUE_CAPACITY = 100;
+    private static final int DEFAULT_MAX_IN_LIST_SIZE = 1000;
+
+    private static final ThreadLocal<StatementCanceller> asyncCallCanceller = new ThreadLocal<>();
+
     private DataSource dataSource;
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private int fetchSize;
+    private int queryTimeout;
+    private volatile int maxInListSize;
+    private final ThreadLocal<Connection> transactionConnection;
+    private final JdbcTemplate connectionSource;
+    private volatile AsyncQueryExecutor asyncExecutor;
+    private volatile QueryMetricsCollector metricsCollector;
+    private volatile long slowQueryThresholdNanos;
+    // Whether the driver returns the generated key of every row of a batch. Unknown until the first batch returning
+    // the generated keys
+    private volatile Boolean batchGeneratedKeysSupported;
 
     public JdbcTemplate(DataSource dataSource) {
         this.dataSource = dataSource;
+        this.transactionConnection = new ThreadLocal<>();
+        this.connectionSource = this;
+    }
+
+    private JdbcTemplate(JdbcTemplate template, int queryTimeout) {
+        this.dataSource = template.dataSource;
+        this.batchSize = template.batchSize;
+        this.fetchSize = template.fetchSize;
+        this.queryTimeout = queryTimeout;
+        this.maxInListSize = template.maxInListSize;
+        this.transactionConnection = template.transactionConnection;
+        this.connectionSource = template.connectionSource;
+        this.asyncExecutor = template.getAsyncExecutor();
+        this.metricsCollector = template.metricsCollector;
+        this.slowQueryThresholdNanos = template.slowQueryThresholdNanos;
+        this.batchGeneratedKeysSupported = template.batchGeneratedKeysSupported;
+    }
+
+    /**
+     * Sets the default number of seconds a statement may run before the driver aborts it with a
+     * {@link java.sql.SQLTimeoutException}. Zero means no limit.
+     *
+     * @param queryTimeout the statement timeout in seconds.
+     * @see #withQueryTimeout(int)
+     */
+    public void setQueryTimeout(int queryTimeout) {
+        if (queryTimeout < 0) {
+            throw new IllegalArgumentException("Invalid query timeout: " + queryTimeout);
+        }
+        this.queryTimeout = queryTimeout;
+    }
+
+    /**
+     * Returns a template applying the given statement timeout instead of the default one, for the calls which need a
+     * tighter or looser limit. The returned template takes a copy of the current settings of this template, and shares
+     * its transactions, statement cache, asynchronous executor and connection routing.
+     *
+     * @param queryTimeout the statement timeout in seconds. Zero means no limit.
+     * @return the template applying the given timeout.
+     */
+    public JdbcTemplate withQueryTimeout(int queryTimeout) {
+        if (queryTimeout < 0) {
+            throw new IllegalArgumentException("Invalid query timeout: " + queryTimeout);
+        }
+        return new JdbcTemplate(this, queryTimeout);
+    }
+
+    /**
+     * Sets the number of statements sent to the database in one round trip by the batch operations.
+     *
+     * @param batchSize the maximum number of entries per JDBC batch.
+     */
+    public void setBatchSize(int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Invalid batch size: " + batchSize);
+        }
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Sets the number of rows fetched from the database per round trip by the streaming queries.
+     * Zero leaves the driver default in place. Some drivers need a driver specific value to stream the results
+     * (e.g. {@link Integer#MIN_VALUE} for MySQL Connector/J).
+     *
+     * @param fetchSize the JDBC fetch size hint.
+     */
+    public void setFetchSize(int fetchSize) {
+        this.fetchSize = fetchSize;
+    }
+
+    /**
+     * Sets the executor running the asynchronous calls. A bounded pool of platform threads is used when not set.
+     *
+     * @param asyncExecutor the executor for the asynchronous database calls.
+     */
+    public void setAsyncExecutor(AsyncQueryExecutor asyncExecutor) {
+        this.asyncExecutor = asyncExecutor;
+    }
+
+    /**
+     * Sets the collector receiving the connection acquisition and query execution timings.
+     *
+     * @param metricsCollector the metrics collector, or null to disable the metrics.
+     */
+    public void setMetricsCollector(QueryMetricsCollector metricsCollector) {
+        this.metricsCollector = metricsCollector;
+    }
+
+    /**
+     * Sets the execution time above which a query is logged as a warning. Only the SQL template is logged, the bound
+     * parameter values are never written to the log. Zero disables the slow query log.
+     *
+     * @param slowQueryThresholdMillis the slow query threshold in milliseconds.
+     */
+    public void setSlowQueryThreshold(long slowQueryThresholdMillis) {
+        this.slowQueryThresholdNanos = TimeUnit.MILLISECONDS.toNanos(slowQueryThresholdMillis);
+    }
+
+    /**
+     * Sets the maximum number of parameters bound to a single IN list, overriding the limit derived from the database
+     * product.
+     *
+     * @param maxInListSize the maximum number of IN list parameters.
+     * @see #getMaxInListSize()
+     */
+    public void setMaxInListSize(int maxInListSize) {
+        if (maxInListSize <= 0) {
+            throw new IllegalArgumentException("Invalid IN list size: " + maxInListSize);
+        }
+        this.maxInListSize = maxInListSize;
+    }
+
+    /**
+     * Returns the maximum number of parameters to bind to a single IN list, so that the multi-row lookups can be split
+     * into chunks the database accepts. Unless set, the limit is derived once from the database product name, e.g.
+     * Oracle rejects IN lists longer than 1000 and SQL Server statements with more than 2100 parameters.
+     *
+     * @return the maximum number of IN list parameters.
+     */
+    public int getMaxInListSize() throws DataAccessException {
+        int size = maxInListSize;
+        if (size == 0) {
+            try {
+                Connection connection = connectionSource.openConnection(true);
+                try {
+                    size = getMaxInListSize(connection.getMetaData().getDatabaseProductName());
+                } finally {
+                    connectionSource.releaseConnection(connection);
+                }
+            } catch (SQLException e) {
+                throw new DataAccessException("Error in reading the database metadata", e);
+            }
+            maxInListSize = size;
+        }
+        return size;
+    }
+
+    private static int getMaxInListSize(String databaseProductName) {
+        if (databaseProductName == null) {
+            return DEFAULT_MAX_IN_LIST_SIZE;
+        }
+        String productName = databaseProductName.toLowerCase(Locale.ENGLISH);
+        if (productName.contains("sql server")) {
+            return 2000;
+        } else if (productName.contains("postgresql") || productName.contains("mysql")
+                || productName.contains("mariadb") || productName.contains("h2")) {
+            return 5000;
+        }
+        // Oracle, DB2 and the unknown databases
+        return DEFAULT_MAX_IN_LIST_SIZE;
+    }
+
+    /**
+     * Executes the callback within a database transaction.
+     * A single connection is bound to the calling thread for the scope of the callback, and all the calls made to this
+     * template within the callback reuse it. The transaction is committed once the callback returns, and rolled back
+     * if the callback fails. Calls nested within an ongoing transaction join it.
+     *
+     * @param callback the unit of work to be executed in the transaction.
+     * @param <T> the type of the result of the unit of work.
+     * @return the result of the callback.
+     */
+    public <T extends Object> T inTransaction(TransactionCallback<T> callback) throws DataAccessException {
+        if (transactionConnection.get() != null) {
+            return callback.doInTransaction();
+        }
+        try {
+            Connection connection = connectionSource.openConnection(false);
+            try {
+                boolean autoCommit = connection.getAutoCommit();
+                connection.setAutoCommit(false);
+                transactionConnection.set(connection);
+                try {
+                    T result = callback.doInTransaction();
+                    connection.commit();
+                    return result;
+                } catch (DataAccessException | RuntimeException e) {
+                    rollback(connection);
+                    throw e;
+                } finally {
+                    transactionConnection.remove();
+                    connection.setAutoCommit(autoCommit);
+                }
+            } finally {
+                connectionSource.releaseConnection(connection);
+            }
+        } catch (SQLException e) {
+            logDebugInfo("Error in performing database transaction", e);
+            throw new DataAccessException("Error in performing database transaction", e);
+        }
     }
 
     /**
@@ -65,27 +295,142 @@ public class JdbcTemplate {
     public <T extends Object> List<T> executeQuery(String query, RowMapper<T> rowMapper, QueryFilter queryFilter)
             throws DataAccessException {
         List<T> result = new ArrayList();
-        try (Connection connection = dataSource.getConnection();
+        QueryExecution execution = new QueryExecution(query);
+        try (ManagedConnection connection = getConnection(execution, true);
                 PreparedStatement preparedStatement = connection.prepareStatement(query)) {
             if (queryFilter != null) {
                 queryFilter.filter(preparedStatement);
             }
-            ResultSet resultSet = preparedStatement.executeQuery();
-            int i = 0;
-            while (resultSet.next()) {
-                T row = rowMapper.mapRow(resultSet, i);
-                result.add(row);
-                i++;
+            try (ResultSet resultSet = preparedStatement.executeQuery()) {
+                int i = 0;
+                while (resultSet.next()) {
+                    T row = rowMapper.mapRow(resultSet, i);
+                    result.add(row);
+                    i++;
+                }
             }
+            execution.succeeded(result.size());
         } catch (SQLException e) {
             logDebugInfo(
                     "There has been an error performing the database query. The query is {}, and the Parameters are {}",
                     e, query, queryFilter);
             throw new DataAccessException("Error in performing Database query: " + query, e);
+        } finally {
+            execution.end();
         }
         return result;
     }
 
+    /**
+     * Executes a query on JDBC and return the result as a list of domain objects, reading the columns by the positions
+     * resolved once for the result set.
+     *
+     * @param query the SQL query with the parameter placeholders.
+     * @param indexedRowMapper creates the row mapper for the column positions of the result set.
+     * @param queryFilter parameters for the SQL query parameter replacement.
+     * @return List of domain objects of required type.
+     */
+    public <T extends Object> List<T> executeQuery(String query, IndexedRowMapper<T> indexedRowMapper,
+            QueryFilter queryFilter) throws DataAccessException {
+        return executeQuery(query, new ColumnResolvingRowMapper<>(indexedRowMapper), queryFilter);
+    }
+
+    /**
+     * Executes a query on JDBC and builds the result from the whole result set, e.g. an object graph from the rows of a
+     * JOIN query. The rows the extractor reads are counted for the metrics and the slow query log, as the rows mapped.
+     *
+     * @param query the SQL query with the parameter placeholders.
+     * @param resultSetExtractor builds the result from the result set.
+     * @param queryFilter parameters for the SQL query parameter replacement.
+     * @return the result built by the extractor.
+     * @see GroupingResultSetExtractor
+     */
+    public <T extends Object> T query(String query, ResultSetExtractor<T> resultSetExtractor, QueryFilter queryFilter)
+            throws DataAccessException {
+        QueryExecution execution = new QueryExecution(query);
+        try (ManagedConnection connection = getConnection(execution, true);
+                PreparedStatement preparedStatement = connection.prepareStatement(query)) {
+            if (queryFilter != null) {
+                queryFilter.filter(preparedStatement);
+            }
+            T result;
+            try (ResultSet resultSet = preparedStatement.executeQuery()) {
+                if (execution.isMeasured()) {
+                    RowCountingHandler rowCounter = new RowCountingHandler(resultSet);
+                    result = resultSetExtractor.extractData((ResultSet) Proxy.newProxyInstance(
+                            ResultSet.class.getClassLoader(), new Class<?>[] { ResultSet.class }, rowCounter));
+                    execution.succeeded(rowCounter.rowCount);
+                } else {
+                    result = resultSetExtractor.extractData(resultSet);
+                    execution.succeeded(0);
+                }
+            }
+            return result;
+        } catch (SQLException e) {
+            logDebugInfo(
+                    "There has been an error performing the database query. The query is {}, and the Parameters are {}",
+                    e, query, queryFilter);
+            throw new DataAccessException("Error in performing Database query: " + query, e);
+        } finally {
+            execution.end();
+        }
+    }
+
+    /**
+     * Executes a query on JDBC and return the result as a lazily populated stream of domain objects.
+     * Rows are read from the open cursor, using the configured fetch size, only as the stream is consumed.
+     * The connection, statement and result set are released when the stream is closed or fully consumed,
+     * hence the stream must be used in a try-with-resources block.
+     * Errors happening while consuming the stream are thrown as {@link UncheckedDataAccessException}.
+     *
+     * @param query the SQL query with the parameter placeholders.
+     * @param rowMapper Row mapper functional interface
+     * @param queryFilter parameters for the SQL query parameter replacement.
+     * @return Stream of domain objects of required type.
+     */
+    public <T extends Object> Stream<T> streamQuery(String query, RowMapper<T> rowMapper, QueryFilter queryFilter)
+            throws DataAccessException {
+        ManagedConnection connection = null;
+        PreparedStatement preparedStatement = null;
+        ResultSet resultSet = null;
+        QueryExecution execution = new QueryExecution(query);
+        try {
+            connection = getConnection(execution, true);
+            preparedStatement = connection.prepareStatement(query, ResultSet.TYPE_FORWARD_ONLY,
+                    ResultSet.CONCUR_READ_ONLY);
+            preparedStatement.setFetchSize(fetchSize);
+            if (queryFilter != null) {
+                queryFilter.filter(preparedStatement);
+            }
+            resultSet = preparedStatement.executeQuery();
+        } catch (SQLException e) {
+            closeQuietly(resultSet, preparedStatement, connection);
+            execution.end();
+            logDebugInfo(
+                    "There has been an error performing the database query. The query is {}, and the Parameters are {}",
+                    e, query, queryFilter);
+            throw new DataAccessException("Error in performing Database query: " + query, e);
+        }
+        ResultSetSpliterator<T> spliterator = new ResultSetSpliterator<>(execution, rowMapper, resultSet,
+                preparedStatement, connection);
+        return StreamSupport.stream(spliterator, false).onClose(spliterator::close);
+    }
+
+    /**
+     * Executes a query on JDBC and return the result as a lazily populated stream of domain objects, reading the
+     * columns by the positions resolved once for the result set.
+     *
+     * @param query the SQL query with the parameter placeholders.
+     * @param indexedRowMapper creates the row mapper for the column positions of the result set.
+     * @param queryFilter parameters for the SQL query parameter replacement.
+     * @return Stream of domain objects of required type.
+     * @see #streamQuery(String, RowMapper, QueryFilter)
+     */
+    public <T extends Object> Stream<T> streamQuery(String query, IndexedRowMapper<T> indexedRowMapper,
+            QueryFilter queryFilter) throws DataAccessException {
+        return streamQuery(query, new ColumnResolvingRowMapper<>(indexedRowMapper), queryFilter);
+    }
+
     /**
      * Executes a query on JDBC and return the result as a domain object.
      *
@@ -97,39 +442,67 @@ public class JdbcTemplate {
     public <T extends Object> T fetchSingleRecord(String query, RowMapper<T> rowMapper, QueryFilter queryFilter)
             throws DataAccessException {
         T result = null;
-        try (Connection connection = dataSource.getConnection();
+        QueryExecution execution = new QueryExecution(query);
+        try (ManagedConnection connection = getConnection(execution, true);
                 PreparedStatement preparedStatement = connection.prepareStatement(query)) {
             if (queryFilter != null) {
                 queryFilter.filter(preparedStatement);
             }
-            ResultSet resultSet = preparedStatement.executeQuery();
-            if (resultSet.next()) {
-                result = rowMapper.mapRow(resultSet, 0);
-            }
-            if (resultSet.next()) {
-                logDebugInfo("There are more records than one found for query: {} for the parameters {}", query,
-                        queryFilter);
-                throw new DataAccessException("There are more records than one found for query: " + query);
+            try (ResultSet resultSet = preparedStatement.executeQuery()) {
+                if (resultSet.next()) {
+                    result = rowMapper.mapRow(resultSet, 0);
+                }
+                if (resultSet.next()) {
+                    logDebugInfo("There are more records than one found for query: {} for the parameters {}", query,
+                            queryFilter);
+                    throw new DataAccessException("There are more records than one found for query: " + query);
+                }
             }
+            execution.succeeded(result == null ? 0 : 1);
         } catch (SQLException e) {
             logDebugInfo(
                     "There has been an error performing the database query. The query is {}, and the parameters are {}",
                     e, query, rowMapper, queryFilter);
             throw new DataAccessException("Error in performing database query: " + query, e);
+        } finally {
+            execution.end();
         }
         return result;
     }
 
-    public void executeUpdate(String query, QueryFilter queryFilter) throws DataAccessException {
-        try (Connection connection = dataSource.getConnection();
+    /**
+     * Executes a query on JDBC and return the result as a domain object, reading the columns by the positions resolved
+     * for the result set.
+     *
+     * @param query the SQL query with the parameter placeholders.
+     * @param indexedRowMapper creates the row mapper for the column positions of the result set.
+     * @param queryFilter parameters for the SQL query parameter replacement.
+     * @return domain object of required type.
+     */
+    public <T extends Object> T fetchSingleRecord(String query, IndexedRowMapper<T> indexedRowMapper,
+            QueryFilter queryFilter) throws DataAccessException {
+        return fetchSingleRecord(query, new ColumnResolvingRowMapper<>(indexedRowMapper), queryFilter);
+    }
+
+    /**
+     * Executes the jdbc insert/update query.
+     *
+     * @param query The SQL for insert/update.
+     * @param queryFilter Query filter to prepared statement parameter binding.
+     * @return the number of rows affected.
+     */
+    public int executeUpdate(String query, QueryFilter queryFilter) throws DataAccessException {
+        QueryExecution execution = new QueryExecution(query);
+        try (ManagedConnection connection = getConnection(execution, false);
                 PreparedStatement preparedStatement = connection.prepareStatement(query)) {
-            if (queryFilter != null) {
-                queryFilter.filter(preparedStatement);
-            }
-            preparedStatement.executeUpdate();
+            int updateCount = doInternalUpdate(queryFilter, preparedStatement);
+            execution.succeeded(updateCount);
+            return updateCount;
         } catch (SQLException e) {
             logDebugInfo("Error in performing database update: {} with parameters {}", query, queryFilter);
             throw new DataAccessException("Error in performing database update: " + query, e);
+        } finally {
+            execution.end();
         }
     }
 
@@ -138,14 +511,20 @@ public class JdbcTemplate {
      *
      * @param query The SQL for insert/update.
      * @param <T>
+     * @return the number of rows affected.
      */
-    public <T extends Object> void executeUpdate(String query) throws DataAccessException {
-        try (Connection connection = dataSource.getConnection();
+    public <T extends Object> int executeUpdate(String query) throws DataAccessException {
+        QueryExecution execution = new QueryExecution(query);
+        try (ManagedConnection connection = getConnection(execution, false);
                 PreparedStatement preparedStatement = connection.prepareStatement(query)) {
-            doInternalUpdate(null, preparedStatement);
+            int updateCount = doInternalUpdate(null, preparedStatement);
+            execution.succeeded(updateCount);
+            return updateCount;
         } catch (SQLException e) {
             logDebugInfo("Error in performing database update: {}", query);
             throw new DataAccessException("Error in performing database update: " + query, e);
+        } finally {
+            execution.end();
         }
     }
 
@@ -159,9 +538,10 @@ public class JdbcTemplate {
      */
     public <T extends Object> int executeInsert(String query, QueryFilter queryFilter, T bean, boolean fetchInsertedId)
             throws DataAccessException {
-        try (Connection connection = dataSource.getConnection();
+        QueryExecution execution = new QueryExecution(query);
+        try (ManagedConnection connection = getConnection(execution, false);
                 PreparedStatement preparedStatement = connection.prepareStatement(query)) {
-            doInternalUpdate(queryFilter, preparedStatement);
+            execution.succeeded(doInternalUpdate(queryFilter, preparedStatement));
             if (fetchInsertedId) {
                 if (logger.isDebugEnabled()) {
                     logger.debug("Mapping generated key (Auto Increment ID) to the object");
@@ -180,18 +560,329 @@ public class JdbcTemplate {
                 }
             }
         } catch (SQLException e) {
+            execution.failed();
             logDebugInfo("Error in performing database insert: {} with parameters {}", query, queryFilter);
             throw new DataAccessException("Error in performing database insert: " + query, e);
+        } finally {
+            execution.end();
         }
         return 0;
     }
 
-    private <T extends Object> void doInternalUpdate(QueryFilter queryFilter, PreparedStatement preparedStatement)
+    /**
+     * Executes the jdbc insert/update query for each of the given beans as a JDBC batch and returns the generated
+     * keys of all the rows.
+     *
+     * @param query The SQL for insert/update.
+     * @param beans the Domain objects to be inserted/updated.
+     * @param batchQueryFilter binds the parameters of each domain object to the prepared statement.
+     * @param <T>
+     * @return the generated keys (Auto Increment IDs), one per domain object in the same order.
+     * @see #executeBatch(String, Collection, BatchQueryFilter, boolean)
+     */
+    public <T extends Object> List<Integer> executeBatch(String query, Collection<T> beans,
+            BatchQueryFilter<T> batchQueryFilter) throws DataAccessException {
+        return executeBatch(query, beans, batchQueryFilter, true);
+    }
+
+    /**
+     * Executes the jdbc insert/update query for each of the given beans as a JDBC batch.
+     * A single connection and statement is used for the whole collection, and the batch is flushed to the database
+     * once the configured batch size is reached. All the chunks are committed together, or as part of the enclosing
+     * transaction when called within {@link #inTransaction(TransactionCallback)}.
+     *
+     * @param query The SQL for insert/update.
+     * @param beans the Domain objects to be inserted/updated.
+     * @param batchQueryFilter binds the parameters of each domain object to the prepared statement.
+     * @param fetchGeneratedKeys whether the generated keys (Auto Increment IDs) need to be returned.
+     * @param <T>
+     * @return the generated keys, one per domain object in the same order. Empty when the keys are not fetched.
+     * Drivers which report only the last key of a batch (e.g. H2) are detected on the first chunk, which is rolled back
+     * to a savepoint, and the rows are then inserted one at a time to obtain the key of each of them.
+     */
+    public <T extends Object> List<Integer> executeBatch(String query, Collection<T> beans,
+            BatchQueryFilter<T> batchQueryFilter, boolean fetchGeneratedKeys) throws DataAccessException {
+        if (beans == null || beans.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<Integer> generatedKeys = new ArrayList<>(fetchGeneratedKeys ? beans.size() : 0);
+        QueryExecution execution = new QueryExecution(query);
+        try (ManagedConnection connection = getConnection(execution, false)) {
+            boolean localTransaction = !connection.isTransactional();
+            boolean autoCommit = connection.getConnection().getAutoCommit();
+            if (localTransaction) {
+                connection.getConnection().setAutoCommit(false);
+            }
+            try (PreparedStatement preparedStatement = fetchGeneratedKeys ?
+                    connection.prepareStatement(query, Statement.RETURN_GENERATED_KEYS) :
+                    connection.prepareStatement(query)) {
+                List<T> chunk = new ArrayList<>(Math.min(batchSize, beans.size()));
+                for (T bean : beans) {
+                    chunk.add(bean);
+                    if (chunk.size() == batchSize) {
+                        flushBatch(connection.getConnection(), preparedStatement, chunk, batchQueryFilter,
+                                fetchGeneratedKeys, generatedKeys);
+                        chunk.clear();
+                    }
+                }
+                if (!chunk.isEmpty()) {
+                    flushBatch(connection.getConnection(), preparedStatement, chunk, batchQueryFilter,
+                            fetchGeneratedKeys, generatedKeys);
+                }
+                if (localTransaction) {
+                    connection.getConnection().commit();
+                }
+                execution.succeeded(beans.size());
+            } catch (SQLException e) {
+                if (localTransaction) {
+                    connection.getConnection().rollback();
+                }
+                throw e;
+            } finally {
+                if (localTransaction) {
+                    connection.getConnection().setAutoCommit(autoCommit);
+                }
+            }
+        } catch (SQLException e) {
+            logDebugInfo("Error in performing database batch: {} for {} entries", e, query, beans.size());
+            throw new DataAccessException("Error in performing database batch: " + query, e);
+        } finally {
+            execution.end();
+        }
+        if (logger.isDebugEnabled()) {
+            logger.debug("Executed batch: {} for {} entries with batch size {}", query, beans.size(), batchSize);
+        }
+        return generatedKeys;
+    }
+
+    /**
+     * Sends a chunk of the batch to the database. When the generated keys are fetched and the driver is not yet known
+     * to return the key of every row, the chunk is run within a savepoint, so that it can be run again one row at a
+     * time if the driver returns fewer keys than rows.
+     */
+    private <T extends Object> void flushBatch(Connection connection, PreparedStatement preparedStatement,
+            List<T> chunk, BatchQueryFilter<T> batchQueryFilter, boolean fetchGeneratedKeys,
+            List<Integer> generatedKeys) throws SQLException {
+        if (fetchGeneratedKeys && Boolean.FALSE.equals(batchGeneratedKeysSupported)) {
+            executeRowByRow(preparedStatement, chunk, batchQueryFilter, generatedKeys);
+            return;
+        }
+        Savepoint savepoint = null;
+        if (fetchGeneratedKeys && batchGeneratedKeysSupported == null) {
+            try {
+                savepoint = connection.setSavepoint();
+            } catch (SQLFeatureNotSupportedException e) {
+                batchGeneratedKeysSupported = Boolean.FALSE;
+                executeRowByRow(preparedStatement, chunk, batchQueryFilter, generatedKeys);
+                return;
+            }
+        }
+        for (T bean : chunk) {
+            batchQueryFilter.filter(preparedStatement, bean);
+            preparedStatement.addBatch();
+        }
+        preparedStatement.executeBatch();
+        if (!fetchGeneratedKeys) {
+            return;
+        }
+        List<Integer> chunkKeys = new ArrayList<>(chunk.size());
+        try (ResultSet resultSet = preparedStatement.getGeneratedKeys()) {
+            while (resultSet.next()) {
+                chunkKeys.add(resultSet.getInt(1));
+            }
+        }
+        if (chunkKeys.size() == chunk.size()) {
+            batchGeneratedKeysSupported = Boolean.TRUE;
+            generatedKeys.addAll(chunkKeys);
+            return;
+        }
+        if (savepoint == null) {
+            throw new SQLException("The driver returned " + chunkKeys.size() + " generated keys for a batch of "
+                    + chunk.size() + " rows");
+        }
+        connection.rollback(savepoint);
+        batchGeneratedKeysSupported = Boolean.FALSE;
+        if (logger.isDebugEnabled()) {
+            logger.debug("The driver returned {} generated keys for a batch of {} rows. Inserting the rows one at a "
+                    + "time to obtain their keys.", chunkKeys.size(), chunk.size());
+        }
+        executeRowByRow(preparedStatement, chunk, batchQueryFilter, generatedKeys);
+    }
+
+    private <T extends Object> void executeRowByRow(PreparedStatement preparedStatement, List<T> chunk,
+            BatchQueryFilter<T> batchQueryFilter, List<Integer> generatedKeys) throws SQLException {
+        for (T bean : chunk) {
+            batchQueryFilter.filter(preparedStatement, bean);
+            preparedStatement.executeUpdate();
+            try (ResultSet resultSet = preparedStatement.getGeneratedKeys()) {
+                if (!resultSet.next()) {
+                    throw new SQLException("Inserting the batch entry failed, no generated key obtained.");
+                }
+                generatedKeys.add(resultSet.getInt(1));
+            }
+        }
+    }
+
+    /**
+     * Asynchronously executes a query on JDBC and return the result as a list of domain objects.
+     * The query runs on the asynchronous executor, outside of any transaction of the calling thread.
+     * Cancelling the returned future cancels the statement if it is already running.
+     *
+     * @param query the SQL query with the parameter placeholders.
+     * @param rowMapper Row mapper functional interface
+     * @param queryFilter parameters for the SQL query parameter replacement.
+     * @return future of the list of domain objects, completed with a {@link DataAccessException} on failure.
+     * @see #executeQuery(String, RowMapper, QueryFilter)
+     */
+    public <T extends Object> CompletableFuture<List<T>> executeQueryAsync(String query, RowMapper<T> rowMapper,
+            QueryFilter queryFilter) {
+        return supplyAsync(query, () -> executeQuery(query, rowMapper, queryFilter));
+    }
+
+    /**
+     * Asynchronously executes a query on JDBC and return the result as a domain object.
+     * The query runs on the asynchronous executor, outside of any transaction of the calling thread.
+     * Cancelling the returned future cancels the statement if it is already running.
+     *
+     * @param query the SQL query with the parameter placeholders.
+     * @param rowMapper Row mapper functional interface
+     * @param queryFilter parameters for the SQL query parameter replacement.
+     * @return future of the domain object, completed with a {@link DataAccessException} on failure.
+     * @see #fetchSingleRecord(String, RowMapper, QueryFilter)
+     */
+    public <T extends Object> CompletableFuture<T> fetchSingleRecordAsync(String query, RowMapper<T> rowMapper,
+            QueryFilter queryFilter) {
+        return supplyAsync(query, () -> fetchSingleRecord(query, rowMapper, queryFilter));
+    }
+
+    /**
+     * Asynchronously executes the jdbc insert/update query.
+     * The update runs on the asynchronous executor, outside of any transaction of the calling thread.
+     * Cancelling the returned future cancels the statement if it is already running.
+     *
+     * @param query The SQL for insert/update.
+     * @param queryFilter Query filter to prepared statement parameter binding.
+     * @return future completed once the update is done, or with a {@link DataAccessException} on failure.
+     * @see #executeUpdate(String, QueryFilter)
+     */
+    public CompletableFuture<Void> executeUpdateAsync(String query, QueryFilter queryFilter) {
+        return supplyAsync(query, () -> {
+            executeUpdate(query, queryFilter);
+            return null;
+        });
+    }
+
+    private <T extends Object> CompletableFuture<T> supplyAsync(String query, DataAccessCall<T> call) {
+        StatementCanceller canceller = new StatementCanceller();
+        CompletableFuture<T> future = new CompletableFuture<T>() {
+            @Override
+            public boolean cancel(boolean mayInterruptIfRunning) {
+                boolean cancelled = super.cancel(mayInterruptIfRunning);
+                if (cancelled) {
+                    canceller.cancel();
+                }
+                return cancelled;
+            }
+        };
+        try {
+            getAsyncExecutor().execute(() -> {
+                if (future.isDone()) {
+                    return;
+                }
+                asyncCallCanceller.set(canceller);
+                try {
+                    future.complete(call.execute());
+                } catch (DataAccessException | RuntimeException e) {
+                    future.completeExceptionally(e);
+                } finally {
+                    asyncCallCanceller.remove();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            logDebugInfo("Asynchronous database call rejected for query: {}", e, query);
+            future.completeExceptionally(new DataAccessException("Asynchronous database call rejected: " + query, e));
+        }
+        return future;
+    }
+
+    /**
+     * Returns the executor running the asynchronous calls, creating the default one on first use.
+     *
+     * @return the executor for the asynchronous database calls.
+     */
+    public AsyncQueryExecutor getAsyncExecutor() {
+        AsyncQueryExecutor executor = asyncExecutor;
+        if (executor == null) {
+            synchronized (this) {
+                if (asyncExecutor == null) {
+                    asyncExecutor = AsyncQueryExecutor.newPlatformThreadExecutor(DEFAULT_ASYNC_CONCURRENCY,
+                            DEFAULT_ASYNC_QUEUE_CAPACITY);
+                }
+                executor = asyncExecutor;
+            }
+        }
+        return executor;
+    }
+
+    private <T extends Object> int doInternalUpdate(QueryFilter queryFilter, PreparedStatement preparedStatement)
             throws SQLException, DataAccessException {
         if (queryFilter != null) {
             queryFilter.filter(preparedStatement);
         }
-        preparedStatement.executeUpdate();
+        return preparedStatement.executeUpdate();
+    }
+
+    /**
+     * Opens a connection for a template call made outside of a transaction. Template calls only reading data ask for a
+     * read-only connection, which subclasses may serve from a different data source than the one used for writes.
+     *
+     * @param readOnly whether the connection is only used to read data.
+     * @return an open connection.
+     * @throws SQLException when a connection cannot be obtained.
+     */
+    protected Connection openConnection(boolean readOnly) throws SQLException {
+        return dataSource.getConnection();
+    }
+
+    /**
+     * Releases a connection obtained from {@link #openConnection(boolean)}, once the template call is done with it.
+     *
+     * @param connection the connection to be released.
+     * @throws SQLException when the connection cannot be closed.
+     */
+    protected void releaseConnection(Connection connection) throws SQLException {
+        connection.close();
+    }
+
+    private ManagedConnection getConnection(QueryExecution execution, boolean readOnly) throws SQLException {
+        Connection connection = transactionConnection.get();
+        if (connection != null) {
+            execution.connectionAcquired(false);
+            return new ManagedConnection(connection, true, execution);
+        }
+        connection = connectionSource.openConnection(readOnly);
+        execution.connectionAcquired(true);
+        return new ManagedConnection(connection, false, execution);
+    }
+
+    private void rollback(Connection connection) {
+        try {
+            connection.rollback();
+        } catch (SQLException e) {
+            logDebugInfo("Error in rolling back the database transaction", e);
+        }
+    }
+
+    private void closeQuietly(AutoCloseable... resources) {
+        for (AutoCloseable resource : resources) {
+            if (resource != null) {
+                try {
+                    resource.close();
+                } catch (Exception e) {
+                    logDebugInfo("Error in closing the database resource {}", e, resource);
+                }
+            }
+        }
     }
 
     private void logDebugInfo(String s, Object... params) {
@@ -203,4 +894,285 @@ public class JdbcTemplate {
             logger.debug(MessageFormatter.arrayFormat(s, params).getMessage(), e);
         }
     }
+
+    /**
+     * Maps the rows of an open result set on demand, and releases the JDBC resources once exhausted or closed.
+     */
+    private class ResultSetSpliterator<T> extends Spliterators.AbstractSpliterator<T> {
+
+        private final QueryExecution execution;
+        private final RowMapper<T> rowMapper;
+        private final ResultSet resultSet;
+        private final PreparedStatement preparedStatement;
+        private final ManagedConnection connection;
+        private int rowNumber;
+        private boolean closed;
+
+        ResultSetSpliterator(QueryExecution execution, RowMapper<T> rowMapper, ResultSet resultSet,
+                PreparedStatement preparedStatement, ManagedConnection connection) {
+            super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+            this.execution = execution;
+            this.rowMapper = rowMapper;
+            this.resultSet = resultSet;
+            this.preparedStatement = preparedStatement;
+            this.connection = connection;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super T> action) {
+            if (closed) {
+                return false;
+            }
+            try {
+                if (!resultSet.next()) {
+                    execution.succeeded(rowNumber);
+                    close();
+                    return false;
+                }
+                action.accept(rowMapper.mapRow(resultSet, rowNumber++));
+                return true;
+            } catch (SQLException e) {
+                execution.failed();
+                close();
+                logDebugInfo("There has been an error reading the database query result. The query is {}", e,
+                        execution.query);
+                throw new UncheckedDataAccessException(
+                        new DataAccessException("Error in reading Database query result: " + execution.query, e));
+            }
+        }
+
+        void close() {
+            if (!closed) {
+                closed = true;
+                closeQuietly(resultSet, preparedStatement, connection);
+                if (!execution.successful) {
+                    execution.succeeded(rowNumber);
+                }
+                execution.end();
+            }
+        }
+    }
+
+    /**
+     * Counts the rows read from a result set handed to a {@link ResultSetExtractor}.
+     */
+    private static class RowCountingHandler implements InvocationHandler {
+
+        private final ResultSet resultSet;
+        private int rowCount;
+
+        RowCountingHandler(ResultSet resultSet) {
+            this.resultSet = resultSet;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            try {
+                Object result = method.invoke(resultSet, args);
+                if (Boolean.TRUE.equals(result) && "next".equals(method.getName())) {
+                    rowCount++;
+                }
+                return result;
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    /**
+     * Adapts an {@link IndexedRowMapper} to a {@link RowMapper}, resolving the column positions on the first row of the
+     * result set.
+     */
+    private static class ColumnResolvingRowMapper<T> implements RowMapper<T> {
+
+        private final IndexedRowMapper<T> indexedRowMapper;
+        private ResultSet resultSet;
+        private RowMapper<T> rowMapper;
+
+        ColumnResolvingRowMapper(IndexedRowMapper<T> indexedRowMapper) {
+            this.indexedRowMapper = indexedRowMapper;
+        }
+
+        @Override
+        public T mapRow(ResultSet resultSet, int rowNumber) throws SQLException {
+            if (resultSet != this.resultSet) {
+                rowMapper = indexedRowMapper.withColumns(ColumnIndex.of(resultSet));
+                this.resultSet = resultSet;
+            }
+            return rowMapper.mapRow(resultSet, rowNumber);
+        }
+    }
+
+    /**
+     * Times a template call, and reports it to the metrics collector and the slow query log once ended.
+     * The execution time starts once the connection is acquired, and includes mapping the rows.
+     * Also applies the query timeout to the statements of the call, and exposes them to the asynchronous caller for
+     * cancellation.
+     */
+    private class QueryExecution {
+
+        private final String query;
+        private final StatementCanceller canceller = asyncCallCanceller.get();
+        private long startTime = System.nanoTime();
+        private int rowCount;
+        private boolean successful;
+        private boolean failed;
+
+        QueryExecution(String query) {
+            this.query = query;
+        }
+
+        void connectionAcquired(boolean fromDataSource) {
+            long now = System.nanoTime();
+            QueryMetricsCollector collector = metricsCollector;
+            if (fromDataSource && collector != null) {
+                collector.connectionAcquired(now - startTime);
+            }
+            startTime = now;
+        }
+
+        void statementPrepared(Statement statement) throws SQLException {
+            statement.setQueryTimeout(queryTimeout);
+            if (canceller != null) {
+                canceller.register(statement);
+            }
+        }
+
+        void statementReleased() {
+            if (canceller != null) {
+                canceller.unregister();
+            }
+        }
+
+        void succeeded(int rowCount) {
+            this.rowCount = rowCount;
+            this.successful = true;
+        }
+
+        void failed() {
+            this.failed = true;
+        }
+
+        /**
+         * Returns whether the execution is reported to the metrics collector or the slow query log.
+         */
+        boolean isMeasured() {
+            return metricsCollector != null || slowQueryThresholdNanos > 0;
+        }
+
+        void end() {
+            long duration = System.nanoTime() - startTime;
+            boolean completed = successful && !failed;
+            QueryMetricsCollector collector = metricsCollector;
+            if (collector != null) {
+                collector.queryExecuted(query, duration, rowCount, completed);
+            }
+            long threshold = slowQueryThresholdNanos;
+            if (threshold > 0 && duration >= threshold && logger.isWarnEnabled()) {
+                logger.warn("Slow database query took {} ms ({} rows, {}): {}. Bound parameter values are redacted.",
+                        TimeUnit.NANOSECONDS.toMillis(duration), rowCount, completed ? "completed" : "failed",
+                        query);
+            }
+        }
+    }
+
+    /**
+     * A connection obtained for a template call. The connection bound to an ongoing transaction is left open on close,
+     * so that it can be reused by the rest of the calls in the transaction.
+     */
+    private class ManagedConnection implements AutoCloseable {
+
+        private final Connection connection;
+        private final boolean transactional;
+        private final QueryExecution execution;
+
+        ManagedConnection(Connection connection, boolean transactional, QueryExecution execution) {
+            this.connection = connection;
+            this.transactional = transactional;
+            this.execution = execution;
+        }
+
+        Connection getConnection() {
+            return connection;
+        }
+
+        boolean isTransactional() {
+            return transactional;
+        }
+
+        PreparedStatement prepareStatement(String query) throws SQLException {
+            return track(connection.prepareStatement(query));
+        }
+
+        PreparedStatement prepareStatement(String query, int autoGeneratedKeys) throws SQLException {
+            return track(connection.prepareStatement(query, autoGeneratedKeys));
+        }
+
+        PreparedStatement prepareStatement(String query, int resultSetType, int resultSetConcurrency)
+                throws SQLException {
+            return track(connection.prepareStatement(query, resultSetType, resultSetConcurrency));
+        }
+
+        private PreparedStatement track(PreparedStatement preparedStatement) throws SQLException {
+            try {
+                execution.statementPrepared(preparedStatement);
+            } catch (SQLException e) {
+                preparedStatement.close();
+                throw e;
+            }
+            return preparedStatement;
+        }
+
+        /**
+         * Stops exposing the statements for cancellation before the connection goes back to the pool, as a cancel
+         * reaching a reused connection would abort the query of another caller.
+         */
+        @Override
+        public void close() throws SQLException {
+            execution.statementReleased();
+            if (!transactional) {
+                connectionSource.releaseConnection(connection);
+            }
+        }
+    }
+
+    /**
+     * Holds the statement an asynchronous call is running, so that it can be cancelled when the caller gives up.
+     */
+    private static class StatementCanceller {
+
+        private Statement statement;
+        private boolean cancelled;
+
+        synchronized void register(Statement statement) throws SQLException {
+            if (cancelled) {
+                throw new SQLException("The asynchronous database call was cancelled");
+            }
+            this.statement = statement;
+        }
+
+        synchronized void unregister() {
+            statement = null;
+        }
+
+        synchronized void cancel() {
+            cancelled = true;
+            if (statement != null) {
+                try {
+                    statement.cancel();
+                } catch (SQLException e) {
+                    logger.debug("Error in cancelling the database statement", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * A template call to be run asynchronously.
+     */
+    @FunctionalInterface
+    private interface DataAccessCall<T> {
+
+        T execute() throws DataAccessException;
+    }
 }
@@ -0,0 +1,46 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.provider.dao;
+
+/**
+ * Receives the timings of the database calls made through {@link JdbcTemplate}.
+ * Implementations are called on the thread performing the database call, hence need to be thread safe and fast.
+ *
+ * @see DefaultQueryMetricsCollector
+ */
+public interface QueryMetricsCollector {
+
+    /**
+     * Called once a connection is obtained from the data source.
+     *
+     * @param durationNanos the time taken to acquire the connection.
+     */
+    void connectionAcquired(long durationNanos);
+
+    /**
+     * Called once a SQL statement is executed.
+     *
+     * @param query the SQL template, with the parameter placeholders.
+     * @param durationNanos the time taken to execute the statement and map the results.
+     * @param rowCount the number of rows mapped or read by the result set extractor, or the update count for
+     *                 insert/update statements.
+     * @param successful whether the statement completed without an error.
+     */
+    void queryExecuted(String query, long durationNanos, int rowCount, boolean successful);
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.provider.dao;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histogram and counters of a single SQL template, or of the connection acquisition.
+ * The latencies are counted in fixed millisecond buckets, so that recording is lock free and of constant cost.
+ */
+public class QueryStatistics {
+
+    private static final long[] BUCKET_UPPER_BOUNDS_MILLIS =
+            { 1, 2, 5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000, Long.MAX_VALUE };
+
+    private final LongAdder[] buckets = new LongAdder[BUCKET_UPPER_BOUNDS_MILLIS.length];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder rows = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Long::max, 0);
+
+    QueryStatistics() {
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    void record(long durationNanos, int rowCount, boolean successful) {
+        long durationMillis = TimeUnit.NANOSECONDS.toMillis(durationNanos);
+        int bucket = 0;
+        while (durationMillis >= BUCKET_UPPER_BOUNDS_MILLIS[bucket]) {
+            bucket++;
+        }
+        buckets[bucket].increment();
+        count.increment();
+        totalNanos.add(durationNanos);
+        maxNanos.accumulate(durationNanos);
+        if (rowCount > 0) {
+            rows.add(rowCount);
+        }
+        if (!successful) {
+            failures.increment();
+        }
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getFailureCount() {
+        return failures.sum();
+    }
+
+    public long getRowCount() {
+        return rows.sum();
+    }
+
+    public double getMeanMillis() {
+        long executions = count.sum();
+        return executions == 0 ? 0 : totalNanos.sum() / (executions * 1_000_000d);
+    }
+
+    public double getMaxMillis() {
+        return maxNanos.get() / 1_000_000d;
+    }
+
+    /**
+     * Returns the upper bound of the histogram bucket holding the given percentile.
+     *
+     * @param percentile the percentile, between 0 and 100.
+     * @return the latency in milliseconds, or {@link Long#MAX_VALUE} when beyond the largest bucket.
+     */
+    public long getPercentileMillis(double percentile) {
+        long executions = count.sum();
+        long threshold = (long) Math.ceil(executions * percentile / 100);
+        long cumulative = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            cumulative += buckets[i].sum();
+            if (cumulative >= threshold && cumulative > 0) {
+                return BUCKET_UPPER_BOUNDS_MILLIS[i];
+            }
+        }
+        return 0;
+    }
+
+    @Override
+    public String toString() {
+        return "count=" + getCount() + ", failures=" + getFailureCount() + ", rows=" + getRowCount() + ", mean="
+                + getMeanMillis() + "ms, p99<=" + getPercentileMillis(99) + "ms, max=" + getMaxMillis() + "ms";
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.provider.dao;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Builds a result from the whole result set, for the results spanning several rows such as the object graphs read
+ * with a JOIN query. The extractor iterates the result set itself, and must not close it.
+ * Usage
+ * <code>
+ *        this.jdbcTemplate.query(SELECT_SQL, resultSet -> {
+ *          Map&lt;String, DomainObject&gt; domainObjects = new HashMap&lt;&gt;();
+ *          while (resultSet.next()) {
+ *              ...
+ *          }
+ *          return domainObjects;
+ *        }, null);
+ * </code>
+ *
+ * @param <T> the type of the result.
+ * @see GroupingResultSetExtractor
+ */
+@FunctionalInterface
+public interface ResultSetExtractor<T extends Object> {
+
+    T extractData(ResultSet resultSet) throws SQLException;
+}
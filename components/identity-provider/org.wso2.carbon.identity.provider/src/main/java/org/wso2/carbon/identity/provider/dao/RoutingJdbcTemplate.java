@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.provider.dao;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link JdbcTemplate} sending the read-only calls to replica data sources, while the writes and everything run
+ * within a transaction go to the primary data source.
+ * <p>
+ * As the replicas lag behind the primary, the reads can be pinned to the primary for a while after a write with
+ * {@link #setReadYourWritesWindow(long)}. The window is kept for the whole template rather than per thread, as the
+ * request writing an identity provider and the one reading it back are not necessarily served by the same thread.
+ * Hence every read through this template which starts within the window after a write through it is released is
+ * served by the primary, and sees that write as long as the window covers the replication lag. Writes made through
+ * other templates, e.g. those of the other nodes of a cluster, are not covered.
+ */
+public class RoutingJdbcTemplate extends JdbcTemplate {
+
+    private static final Logger logger = LoggerFactory.getLogger(RoutingJdbcTemplate.class);
+
+    /**
+     * The strategy used to pick the replica serving a read.
+     */
+    public enum ReplicaSelection {
+        /**
+         * Cycles through the replicas.
+         */
+        ROUND_ROBIN,
+        /**
+         * Picks the replica with the least connections in use by this template.
+         */
+        LEAST_LOADED
+    }
+
+    private final DataSourceTarget primary;
+    private final List<DataSourceTarget> replicas;
+    private final ReplicaSelection replicaSelection;
+    private final AtomicInteger nextReplica = new AtomicInteger();
+    private final Map<Connection, DataSourceTarget> openConnections = new ConcurrentHashMap<>();
+    private volatile long readYourWritesWindowNanos;
+    // End of the read-your-writes window of the last write, as of System.nanoTime()
+    private final AtomicLong primaryReadsUntil = new AtomicLong(System.nanoTime());
+
+    public RoutingJdbcTemplate(DataSource primary, List<DataSource> replicas, ReplicaSelection replicaSelection) {
+        super(primary);
+        this.primary = new DataSourceTarget(primary);
+        List<DataSourceTarget> targets = new ArrayList<>(replicas.size());
+        for (DataSource replica : replicas) {
+            targets.add(new DataSourceTarget(replica));
+        }
+        this.replicas = Collections.unmodifiableList(targets);
+        this.replicaSelection = replicaSelection;
+    }
+
+    /**
+     * Sets how long all the reads are served by the primary after a write is released. Zero disables the window.
+     *
+     * @param readYourWritesWindowMillis the window in milliseconds, which should cover the replication lag.
+     */
+    public void setReadYourWritesWindow(long readYourWritesWindowMillis) {
+        this.readYourWritesWindowNanos = TimeUnit.MILLISECONDS.toNanos(readYourWritesWindowMillis);
+    }
+
+    /**
+     * Returns the number of connections of each replica currently in use by this template, in the order of the
+     * replicas given at construction.
+     *
+     * @return the in use connection count per replica.
+     */
+    public List<Integer> getReplicaLoads() {
+        List<Integer> loads = new ArrayList<>(replicas.size());
+        for (DataSourceTarget replica : replicas) {
+            loads.add(replica.inUse.get());
+        }
+        return loads;
+    }
+
+    @Override
+    protected Connection openConnection(boolean readOnly) throws SQLException {
+        if (readOnly && !replicas.isEmpty() && !isInReadYourWritesWindow()) {
+            DataSourceTarget replica = selectReplica();
+            try {
+                return replica.open(openConnections);
+            } catch (SQLException e) {
+                logger.warn("Could not obtain a connection from a replica data source. Reading from the primary.", e);
+                return super.openConnection(true);
+            }
+        }
+        if (readOnly) {
+            return super.openConnection(true);
+        }
+        return primary.open(openConnections);
+    }
+
+    @Override
+    protected void releaseConnection(Connection connection) throws SQLException {
+        DataSourceTarget target = openConnections.remove(connection);
+        if (target != null) {
+            target.inUse.decrementAndGet();
+            long window = readYourWritesWindowNanos;
+            if (target == primary && window > 0) {
+                long until = System.nanoTime() + window;
+                // Only ever extends the window, compared by difference as System.nanoTime() may overflow
+                primaryReadsUntil.accumulateAndGet(until, (current, next) -> next - current > 0 ? next : current);
+            }
+        }
+        super.releaseConnection(connection);
+    }
+
+    private boolean isInReadYourWritesWindow() {
+        return readYourWritesWindowNanos > 0 && System.nanoTime() - primaryReadsUntil.get() < 0;
+    }
+
+    private DataSourceTarget selectReplica() {
+        int start = Math.floorMod(nextReplica.getAndIncrement(), replicas.size());
+        if (replicaSelection == ReplicaSelection.ROUND_ROBIN) {
+            return replicas.get(start);
+        }
+        DataSourceTarget selected = replicas.get(start);
+        for (int i = 1; i < replicas.size(); i++) {
+            DataSourceTarget replica = replicas.get((start + i) % replicas.size());
+            if (replica.inUse.get() < selected.inUse.get()) {
+                selected = replica;
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * A data source along with the number of its connections in use by this template.
+     */
+    private static class DataSourceTarget {
+
+        private final DataSource dataSource;
+        private final AtomicInteger inUse = new AtomicInteger();
+
+        DataSourceTarget(DataSource dataSource) {
+            this.dataSource = dataSource;
+        }
+
+        Connection open(Map<Connection, DataSourceTarget> openConnections) throws SQLException {
+            Connection connection = dataSource.getConnection();
+            inUse.incrementAndGet();
+            openConnections.put(connection, this);
+            return connection;
+        }
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.provider.dao;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Adds the details of a row to an object built from several rows, e.g. the child entities of a JOIN query to their
+ * parent builder.
+ *
+ * @param <T> the type of the object accumulating the rows.
+ * @see GroupingResultSetExtractor
+ */
+@FunctionalInterface
+public interface RowAccumulator<T extends Object> {
+
+    void accumulate(T target, ResultSet resultSet, int rowNumber) throws SQLException;
+
+    /**
+     * Returns an accumulator applying this accumulator and then the given one to each row.
+     *
+     * @param next the accumulator to apply after this one.
+     * @return the composed accumulator.
+     */
+    default RowAccumulator<T> andThen(RowAccumulator<T> next) {
+        return (target, resultSet, rowNumber) -> {
+            accumulate(target, resultSet, rowNumber);
+            next.accumulate(target, resultSet, rowNumber);
+        };
+    }
+}
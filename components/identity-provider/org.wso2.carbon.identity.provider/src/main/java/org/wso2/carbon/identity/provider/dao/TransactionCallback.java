@@ -0,0 +1,44 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.provider.dao;
+
+/**
+ * Unit of work executed within a database transaction.
+ * e.g.
+ * <code>
+ *     this.jdbcTemplate.inTransaction(() -> {
+ *          int idpId = this.jdbcTemplate.executeInsert(INSERT_IDP_SQL, ..., identityProvider, true);
+ *          this.jdbcTemplate.executeBatch(INSERT_IDP_AUTHENTICATOR_SQL, authenticators, ...);
+ *          return idpId;
+ *     });
+ * </code>
+ *
+ * @param <T> the type of the result of the unit of work.
+ */
+@FunctionalInterface
+public interface TransactionCallback<T extends Object> {
+
+    /**
+     * Performs the database operations of the transaction.
+     *
+     * @return the result of the unit of work.
+     * @throws DataAccessException
+     */
+    T doInTransaction() throws DataAccessException;
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.provider.dao;
+
+/**
+ * Wraps a {@link DataAccessException} raised while consuming a lazily evaluated result, such as a stream returned by
+ * {@link JdbcTemplate#streamQuery(String, RowMapper, QueryFilter)}, where checked exceptions can not be thrown.
+ */
+public class UncheckedDataAccessException extends RuntimeException {
+
+    private static final long serialVersionUID = -3024410436207381392L;
+
+    public UncheckedDataAccessException(DataAccessException cause) {
+        super(cause.getMessage(), cause);
+    }
+
+    @Override
+    public synchronized DataAccessException getCause() {
+        return (DataAccessException) super.getCause();
+    }
+}
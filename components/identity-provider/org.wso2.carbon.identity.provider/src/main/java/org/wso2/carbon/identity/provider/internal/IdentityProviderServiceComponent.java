@@ -25,18 +25,34 @@ import org.osgi.service.component.annotations.*;
 import org.osgi.service.jndi.JNDIContextManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.wso2.carbon.identity.provider.IdentityProviderInterceptor;
 import org.wso2.carbon.identity.provider.IdentityProviderService;
+import org.wso2.carbon.identity.provider.IdentityProviderException;
+import org.wso2.carbon.identity.provider.internal.service.DeletedIdentityProviderPurger;
+import org.wso2.carbon.identity.provider.internal.service.IdentityProviderCacheWarmer;
 import org.wso2.carbon.identity.provider.internal.service.IdentityProviderServiceImpl;
+import org.wso2.carbon.identity.provider.internal.dao.CacheBackedIdPDAO;
 import org.wso2.carbon.identity.provider.internal.dao.IdentityProviderDAO;
+import org.wso2.carbon.identity.provider.dao.AsyncQueryExecutor;
+import org.wso2.carbon.identity.provider.dao.DefaultQueryMetricsCollector;
 import org.wso2.carbon.identity.provider.dao.JdbcTemplate;
+import org.wso2.carbon.identity.provider.util.IdentityProviderConstants;
+import org.wso2.carbon.identity.provider.util.IdentityProviderUtil;
 
 import javax.naming.Context;
 import javax.naming.NamingException;
 import javax.sql.DataSource;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Identity provider service component
+ * When the cache warm-up is enabled, the Identity Provider Service is registered only once the warm-up has loaded the
+ * enabled identity providers or run out of its time budget, so that the components depending on the service start
+ * with a warm cache.
  */
 @Component(
         name = "identity.provider.dscomponent",
@@ -44,16 +60,41 @@ import java.util.Map;
 public class IdentityProviderServiceComponent {
 
     private static Logger logger = LoggerFactory.getLogger(IdentityProviderServiceComponent.class);
+    private static final int HASH_BACKFILL_BATCH_SIZE = 500;
 
     private ServiceRegistration<?> identityProviderServiceRegistration;
-    private IdentityProviderServiceImpl identityProviderService;
+    private ServiceRegistration<?> queryMetricsRegistration;
+    private final DefaultQueryMetricsCollector queryMetricsCollector = new DefaultQueryMetricsCollector();
+    private final IdentityProviderServiceImpl identityProviderService = new IdentityProviderServiceImpl();
     private JdbcTemplate jdbcTemplate;
+    private AsyncQueryExecutor asyncQueryExecutor;
+    private ScheduledExecutorService purgeExecutor;
+    private ExecutorService warmUpExecutor;
+    private IdentityProviderDAO identityProviderDAO;
+    private boolean active;
 
     @Activate
     public void activate(ComponentContext componentContext, BundleContext bundleContext, Map<String, ?> properties) {
-        identityProviderService = new IdentityProviderServiceImpl();
-        identityProviderServiceRegistration = bundleContext
-                .registerService(IdentityProviderService.class.getName(), identityProviderService, null);
+        synchronized (this) {
+            active = true;
+        }
+        queryMetricsRegistration = bundleContext
+                .registerService(DefaultQueryMetricsCollector.class.getName(), queryMetricsCollector, null);
+        if (Boolean.getBoolean(IdentityProviderConstants.CACHE_WARM_UP_PROPERTY)
+                && identityProviderDAO instanceof CacheBackedIdPDAO) {
+            warmUpExecutor = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "identity-provider-warm-up");
+                thread.setDaemon(true);
+                return thread;
+            });
+            IdentityProviderCacheWarmer warmer = createCacheWarmer((CacheBackedIdPDAO) identityProviderDAO);
+            warmUpExecutor.execute(() -> {
+                warmUp(warmer);
+                registerIdentityProviderService(bundleContext);
+            });
+        } else {
+            registerIdentityProviderService(bundleContext);
+        }
         if (logger.isDebugEnabled()) {
             logger.debug("Identity Provider Service Bundle Activated.");
         }
@@ -63,8 +104,28 @@ public class IdentityProviderServiceComponent {
     public void deactivate(ComponentContext componentContext, BundleContext bundleContext, Map<String, ?> properties,
             int reason) {
 
-        if (identityProviderServiceRegistration != null) {
-            identityProviderServiceRegistration.unregister();
+        if (warmUpExecutor != null) {
+            warmUpExecutor.shutdownNow();
+        }
+
+        synchronized (this) {
+            active = false;
+            if (identityProviderServiceRegistration != null) {
+                identityProviderServiceRegistration.unregister();
+                identityProviderServiceRegistration = null;
+            }
+        }
+
+        if (queryMetricsRegistration != null) {
+            queryMetricsRegistration.unregister();
+        }
+
+        if (asyncQueryExecutor != null) {
+            asyncQueryExecutor.close();
+        }
+
+        if (purgeExecutor != null) {
+            purgeExecutor.shutdownNow();
         }
 
         if (logger.isDebugEnabled()) {
@@ -84,7 +145,12 @@ public class IdentityProviderServiceComponent {
             Context ctx = jndiContextManager.newInitialContext();
             DataSource dsObject = (DataSource)ctx.lookup("java:comp/env/jdbc/WSO2CarbonDB");
             if(dsObject != null) {
-                jdbcTemplate = new JdbcTemplate(dsObject);
+                jdbcTemplate = IdentityProviderUtil.createJdbcTemplate(ctx, dsObject);
+                jdbcTemplate.setAsyncExecutor(createAsyncExecutor());
+                jdbcTemplate.setMetricsCollector(queryMetricsCollector);
+                jdbcTemplate.setSlowQueryThreshold(Long.getLong(
+                        IdentityProviderConstants.SLOW_QUERY_THRESHOLD_PROPERTY,
+                        IdentityProviderConstants.DEFAULT_SLOW_QUERY_THRESHOLD_MILLIS));
                 initializeDao(jdbcTemplate);
             } else {
                 logger.error("Could not find WSO2CarbonDB");
@@ -98,9 +164,119 @@ public class IdentityProviderServiceComponent {
         logger.info("Un-registering data sources");
     }
 
+    @Reference(
+            name = "identity.provider.interceptor",
+            service = IdentityProviderInterceptor.class,
+            cardinality = ReferenceCardinality.MULTIPLE,
+            policy = ReferencePolicy.DYNAMIC,
+            unbind = "unsetIdentityProviderInterceptor"
+    )
+    protected void setIdentityProviderInterceptor(IdentityProviderInterceptor interceptor) {
+        identityProviderService.addInterceptor(interceptor);
+    }
+
+    protected void unsetIdentityProviderInterceptor(IdentityProviderInterceptor interceptor) {
+        identityProviderService.removeInterceptor(interceptor);
+    }
+
+    private AsyncQueryExecutor createAsyncExecutor() {
+        if (asyncQueryExecutor != null) {
+            asyncQueryExecutor.close();
+        }
+        int maxConcurrency = Integer.getInteger(IdentityProviderConstants.ASYNC_MAX_CONCURRENCY_PROPERTY,
+                IdentityProviderConstants.DEFAULT_ASYNC_MAX_CONCURRENCY);
+        int queueCapacity = Integer.getInteger(IdentityProviderConstants.ASYNC_QUEUE_CAPACITY_PROPERTY,
+                IdentityProviderConstants.DEFAULT_ASYNC_QUEUE_CAPACITY);
+        if (Boolean.getBoolean(IdentityProviderConstants.ASYNC_VIRTUAL_THREADS_PROPERTY)) {
+            asyncQueryExecutor = AsyncQueryExecutor.newVirtualThreadExecutor(maxConcurrency, queueCapacity);
+        } else {
+            asyncQueryExecutor = AsyncQueryExecutor.newPlatformThreadExecutor(maxConcurrency, queueCapacity);
+        }
+        return asyncQueryExecutor;
+    }
+
     private void initializeDao(JdbcTemplate jdbcTemplate) {
-        IdentityProviderDAO identityProviderDAO = new IdentityProviderDAO();
+        IdentityProviderDAO identityProviderDAO = Boolean.parseBoolean(
+                System.getProperty(IdentityProviderConstants.CACHE_ENABLED_PROPERTY, "true")) ?
+                new CacheBackedIdPDAO() : new IdentityProviderDAO();
         identityProviderDAO.setJdbcTemplate(jdbcTemplate);
+        if (Boolean.getBoolean(IdentityProviderConstants.VALUE_HASH_BACKFILL_PROPERTY)) {
+            backfillAuthenticatorPropertyHashes(identityProviderDAO);
+        }
+        if (Boolean.getBoolean(IdentityProviderConstants.SOFT_DELETE_PROPERTY)) {
+            identityProviderDAO.setSoftDelete(true);
+            schedulePurge(identityProviderDAO);
+        }
         identityProviderService.setIdentityProviderDAO(identityProviderDAO);
+        this.identityProviderDAO = identityProviderDAO;
+    }
+
+    /**
+     * Hashes the authenticator properties stored before the value hash column was introduced, which the lookup by
+     * authenticator property would not find otherwise. It reads the whole table, hence it runs only when requested by
+     * the system property, once after upgrading a schema whose upgrade script does not fill the hashes itself.
+     */
+    private void backfillAuthenticatorPropertyHashes(IdentityProviderDAO identityProviderDAO) {
+        try {
+            int hashed = identityProviderDAO.backfillAuthenticatorPropertyHashes(HASH_BACKFILL_BATCH_SIZE);
+            if (hashed > 0) {
+                logger.info("Filled the value hashes of " + hashed + " authenticator properties");
+            }
+        } catch (IdentityProviderException e) {
+            logger.error("Error occurred in filling the value hashes of authenticator properties", e);
+        }
+    }
+
+    private IdentityProviderCacheWarmer createCacheWarmer(CacheBackedIdPDAO identityProviderDAO) {
+        return new IdentityProviderCacheWarmer(identityProviderDAO,
+                Integer.getInteger(IdentityProviderConstants.CACHE_WARM_UP_PARALLELISM_PROPERTY,
+                        IdentityProviderConstants.DEFAULT_CACHE_WARM_UP_PARALLELISM),
+                Integer.getInteger(IdentityProviderConstants.CACHE_WARM_UP_BATCH_SIZE_PROPERTY,
+                        IdentityProviderConstants.DEFAULT_CACHE_WARM_UP_BATCH_SIZE),
+                Integer.getInteger(IdentityProviderConstants.CACHE_MAX_ENTRIES_PROPERTY,
+                        IdentityProviderConstants.DEFAULT_CACHE_MAX_ENTRIES),
+                Long.getLong(IdentityProviderConstants.CACHE_WARM_UP_TIME_BUDGET_PROPERTY,
+                        IdentityProviderConstants.DEFAULT_CACHE_WARM_UP_TIME_BUDGET_MILLIS));
+    }
+
+    private void warmUp(IdentityProviderCacheWarmer warmer) {
+        try {
+            int loaded = warmer.warmUp();
+            logger.info("Identity provider cache warm-up loaded " + loaded + " Identity providers");
+        } catch (IdentityProviderException e) {
+            logger.error("Error occurred in warming up the Identity provider cache", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Registers the Identity Provider Service, which reports the bundle ready, unless the component was deactivated
+     * in the meantime.
+     */
+    private synchronized void registerIdentityProviderService(BundleContext bundleContext) {
+        if (active) {
+            identityProviderServiceRegistration = bundleContext
+                    .registerService(IdentityProviderService.class.getName(), identityProviderService, null);
+        }
+    }
+
+    private void schedulePurge(IdentityProviderDAO identityProviderDAO) {
+        if (purgeExecutor != null) {
+            purgeExecutor.shutdownNow();
+        }
+        DeletedIdentityProviderPurger purger = new DeletedIdentityProviderPurger(identityProviderDAO,
+                Integer.getInteger(IdentityProviderConstants.PURGE_BATCH_SIZE_PROPERTY,
+                        IdentityProviderConstants.DEFAULT_PURGE_BATCH_SIZE),
+                Integer.getInteger(IdentityProviderConstants.PURGE_MAX_ROWS_PER_SECOND_PROPERTY,
+                        IdentityProviderConstants.DEFAULT_PURGE_MAX_ROWS_PER_SECOND));
+        long interval = Long.getLong(IdentityProviderConstants.PURGE_INTERVAL_PROPERTY,
+                IdentityProviderConstants.DEFAULT_PURGE_INTERVAL_SECONDS);
+        purgeExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "identity-provider-purge");
+            thread.setDaemon(true);
+            return thread;
+        });
+        purgeExecutor.scheduleWithFixedDelay(purger, interval, interval, TimeUnit.SECONDS);
     }
 }
@@ -18,8 +18,498 @@
 
 package org.wso2.carbon.identity.provider.internal.dao;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.wso2.carbon.identity.provider.IdentityProviderException;
+import org.wso2.carbon.identity.provider.model.AuthenticationConfig;
+import org.wso2.carbon.identity.provider.model.AuthenticatorConfig;
+import org.wso2.carbon.identity.provider.model.IdPMetadata;
+import org.wso2.carbon.identity.provider.model.IdentityProvider;
+import org.wso2.carbon.identity.provider.model.ProvisioningConfig;
+import org.wso2.carbon.identity.provider.util.IdentityProviderConstants;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
 /**
- * Wrapper class that provides caching functionality for DAO
+ * Wrapper class that provides caching functionality for DAO.
+ * The full Identity Provider graphs are read through an in memory store, looked up by ID, by name, by home realm
+ * identifier and by authenticator property. Every write invalidates the entry of the Identity Provider written, with
+ * all its keys, once the write is done. The writes that can move a name, home realm identifier or authenticator
+ * property to another Identity Provider also invalidate the keys of the new values.
+ * <p>
+ * The lookups that find no Identity Provider are remembered for a short time, so that the repeated requests for
+ * Identity Providers that do not exist do not reach the database. Creates and renames invalidate the misses of the
+ * keys they write at once.
+ * <p>
+ * The concurrent lookups of a key missing in memory share a single load from the database, so that a burst of logins
+ * for an Identity Provider after a restart or a flush does not run the same query once per thread.
+ * <p>
+ * The Identity Providers held expire after a time to live. Past a fraction of it, the first lookup of an entry reloads
+ * it on the asynchronous executor of the {@link org.wso2.carbon.identity.provider.dao.JdbcTemplate}, while the lookups
+ * keep being served the entry held, so that no lookup waits on the database when an entry expires. If the reload
+ * fails, the stale entry is served for a grace period and retried.
+ * <p>
+ * The DAOs created by {@link #forTenant(int)} share the store, whose keys are scoped to the tenant. The store is local
+ * to the node, hence the modifications made on other nodes are not seen until the entries held here expire. For this
+ * reason the time to live is a minute unless configured otherwise. The service uses this DAO unless the cache is
+ * disabled by a system property.
  */
 public class CacheBackedIdPDAO extends IdentityProviderDAO {
+
+    private static final Logger log = LoggerFactory.getLogger(CacheBackedIdPDAO.class);
+
+    private final IdentityProviderCache cache;
+
+    public CacheBackedIdPDAO() {
+        this(Integer.getInteger(IdentityProviderConstants.CACHE_MAX_ENTRIES_PROPERTY,
+                IdentityProviderConstants.DEFAULT_CACHE_MAX_ENTRIES),
+                Integer.getInteger(IdentityProviderConstants.CACHE_MAX_MISSES_PROPERTY,
+                        IdentityProviderConstants.DEFAULT_CACHE_MAX_MISSES),
+                Long.getLong(IdentityProviderConstants.CACHE_MISS_TTL_PROPERTY,
+                        IdentityProviderConstants.DEFAULT_CACHE_MISS_TTL_MILLIS));
+        String refreshAheadFraction = System.getProperty(
+                IdentityProviderConstants.CACHE_REFRESH_AHEAD_FRACTION_PROPERTY);
+        setExpiry(Long.getLong(IdentityProviderConstants.CACHE_TTL_PROPERTY,
+                IdentityProviderConstants.DEFAULT_CACHE_TTL_MILLIS),
+                refreshAheadFraction != null ? Double.parseDouble(refreshAheadFraction) :
+                        IdentityProviderConstants.DEFAULT_CACHE_REFRESH_AHEAD_FRACTION,
+                Long.getLong(IdentityProviderConstants.CACHE_STALE_GRACE_PROPERTY,
+                        IdentityProviderConstants.DEFAULT_CACHE_STALE_GRACE_MILLIS));
+    }
+
+    /**
+     * @param maxEntries    the maximum number of Identity Providers held.
+     * @param maxMisses     the maximum number of lookups remembered to have found no Identity Provider.
+     * @param missTtlMillis the time for which such a lookup is remembered.
+     */
+    public CacheBackedIdPDAO(int maxEntries, int maxMisses, long missTtlMillis) {
+        this(new IdentityProviderCache(maxEntries, maxMisses, TimeUnit.MILLISECONDS.toNanos(missTtlMillis)));
+    }
+
+    private CacheBackedIdPDAO(IdentityProviderCache cache) {
+        this.cache = cache;
+    }
+
+    @Override
+    protected IdentityProviderDAO newInstance() {
+        return new CacheBackedIdPDAO(cache);
+    }
+
+    /**
+     * Sets the expiry of the Identity Providers held. They never expire when the time to live is not positive, which
+     * is the default of the DAOs not created from the system properties.
+     *
+     * @param ttlMillis            the time after which an Identity Provider held is stale.
+     * @param refreshAheadFraction the fraction of the time to live after which it is reloaded in the background.
+     * @param staleGraceMillis     the time after the time to live during which it is still served if not reloaded.
+     */
+    public void setExpiry(long ttlMillis, double refreshAheadFraction, long staleGraceMillis) {
+        cache.setExpiry(TimeUnit.MILLISECONDS.toNanos(ttlMillis), refreshAheadFraction,
+                TimeUnit.MILLISECONDS.toNanos(staleGraceMillis));
+    }
+
+    /**
+     * Removes all the Identity Providers held in memory.
+     */
+    public void clearCache() {
+        cache.clear();
+    }
+
+    /**
+     * Returns the number of lookups that loaded the Identity Provider from the database on a miss in memory.
+     */
+    public long getLoadCount() {
+        return cache.getLoadCount();
+    }
+
+    /**
+     * Returns the number of lookups that waited for the load of another lookup of the same key, instead of loading
+     * the Identity Provider themselves.
+     */
+    public long getCoalescedLoadCount() {
+        return cache.getCoalescedLoadCount();
+    }
+
+    /**
+     * Loads the Identity Providers of the tenant with the given IDs into memory, using the batched graph loads of
+     * {@link #getIdentityProviders(Collection)}. The Identity Providers are not added once the store is full.
+     *
+     * @param identityProviderIds the IDs of the Identity Providers.
+     * @return the number of Identity Providers found.
+     * @throws IdentityProviderException when any database level exception occurs.
+     */
+    public int preload(Collection<Integer> identityProviderIds) throws IdentityProviderException {
+        int tenantId = getTenantId();
+        long generation = cache.generation();
+        Map<Integer, IdentityProvider> identityProviders = super.getIdentityProviders(identityProviderIds);
+        identityProviders.forEach((identityProviderId, identityProvider) -> cache.put(generation, tenantId,
+                identityProvider, IdentityProviderCache.IndexKey.ofId(tenantId, identityProviderId)));
+        return identityProviders.size();
+    }
+
+    @Override
+    public IdentityProvider loadIdentityProviderGraph(int identityProviderId) throws IdentityProviderException {
+        return readThrough(IdentityProviderCache.IndexKey.ofId(getTenantId(), identityProviderId),
+                () -> super.loadIdentityProviderGraph(identityProviderId));
+    }
+
+    @Override
+    public IdentityProvider loadIdentityProviderGraph(String identityProviderName) throws IdentityProviderException {
+        return readThrough(IdentityProviderCache.IndexKey.ofName(getTenantId(), identityProviderName),
+                () -> super.loadIdentityProviderGraph(identityProviderName));
+    }
+
+    /**
+     * {@inheritDoc}
+     * The Identity Providers held are served from memory, and only the others are loaded from the database.
+     */
+    @Override
+    public Map<Integer, IdentityProvider> getIdentityProviders(Collection<Integer> identityProviderIds)
+            throws IdentityProviderException {
+        int tenantId = getTenantId();
+        return readAllThrough(identityProviderIds,
+                identityProviderId -> IdentityProviderCache.IndexKey.ofId(tenantId, identityProviderId),
+                super::getIdentityProviders);
+    }
+
+    /**
+     * {@inheritDoc}
+     * The Identity Providers held are served from memory, and only the others are loaded from the database.
+     */
+    @Override
+    public Map<String, IdentityProvider> getIdentityProvidersByName(Collection<String> identityProviderNames)
+            throws IdentityProviderException {
+        int tenantId = getTenantId();
+        return readAllThrough(identityProviderNames,
+                identityProviderName -> IdentityProviderCache.IndexKey.ofName(tenantId, identityProviderName),
+                super::getIdentityProvidersByName);
+    }
+
+    @Override
+    public IdentityProvider getIdentityProviderByHomeRealmId(String homeRealmId) throws IdentityProviderException {
+        return readThrough(IdentityProviderCache.IndexKey.ofHomeRealmId(getTenantId(), homeRealmId),
+                () -> super.getIdentityProviderByHomeRealmId(homeRealmId));
+    }
+
+    @Override
+    public IdentityProvider getIdPByAuthenticatorProperty(String key, String value) throws IdentityProviderException {
+        return readThrough(IdentityProviderCache.IndexKey.ofAuthenticatorProperty(getTenantId(), key, value),
+                () -> super.getIdPByAuthenticatorProperty(key, value));
+    }
+
+    @Override
+    public int createIdentityProvider(IdentityProvider identityProvider) throws IdentityProviderException {
+        int identityProviderId = 0;
+        try {
+            identityProviderId = super.createIdentityProvider(identityProvider);
+            return identityProviderId;
+        } finally {
+            if (identityProviderId != 0) {
+                cache.invalidate(IdentityProviderCache.IndexKey.ofId(getTenantId(), identityProviderId));
+            }
+            invalidateKeys(identityProvider.getIdPMetadata(), identityProvider.getAuthenticationConfig());
+        }
+    }
+
+    @Override
+    public void updateIdentityProvider(IdentityProvider identityProvider) throws IdentityProviderException {
+        try {
+            super.updateIdentityProvider(identityProvider);
+        } finally {
+            cache.invalidate(identityProvider.getIdPMetadata().getId());
+            invalidateKeys(identityProvider.getIdPMetadata(), identityProvider.getAuthenticationConfig());
+        }
+    }
+
+    @Override
+    public void updateIdentityProviderMetaData(int identityProviderId, IdPMetadata idPMetadata)
+            throws IdentityProviderException {
+        try {
+            super.updateIdentityProviderMetaData(identityProviderId, idPMetadata);
+        } finally {
+            cache.invalidate(identityProviderId);
+            invalidateKeys(idPMetadata, null);
+        }
+    }
+
+    @Override
+    public void updateIdPAuthenticationConfig(int identityProviderId, int version,
+            AuthenticationConfig authenticationConfig) throws IdentityProviderException {
+        try {
+            super.updateIdPAuthenticationConfig(identityProviderId, version, authenticationConfig);
+        } finally {
+            cache.invalidate(identityProviderId);
+            invalidateKeys(null, authenticationConfig);
+        }
+    }
+
+    @Override
+    public void updateIdPProvisioningConfig(int identityProviderId, int version,
+            ProvisioningConfig provisioningConfig) throws IdentityProviderException {
+        try {
+            super.updateIdPProvisioningConfig(identityProviderId, version, provisioningConfig);
+        } finally {
+            cache.invalidate(identityProviderId);
+        }
+    }
+
+    @Override
+    public void deleteIdentityProvider(int identityProviderId) throws IdentityProviderException {
+        try {
+            super.deleteIdentityProvider(identityProviderId);
+        } finally {
+            cache.invalidate(identityProviderId);
+        }
+    }
+
+    @Override
+    public void deleteIdentityProvider(String identityProviderName) throws IdentityProviderException {
+        try {
+            super.deleteIdentityProvider(identityProviderName);
+        } finally {
+            cache.invalidate(IdentityProviderCache.IndexKey.ofName(getTenantId(), identityProviderName));
+        }
+    }
+
+    @Override
+    public void enableIdentityProvider(int identityProviderId) throws IdentityProviderException {
+        try {
+            super.enableIdentityProvider(identityProviderId);
+        } finally {
+            cache.invalidate(identityProviderId);
+        }
+    }
+
+    @Override
+    public void disableIdentityProvider(int identityProviderId) throws IdentityProviderException {
+        try {
+            super.disableIdentityProvider(identityProviderId);
+        } finally {
+            cache.invalidate(identityProviderId);
+        }
+    }
+
+    @Override
+    public void enableIdentityProvider(String identityProviderName) throws IdentityProviderException {
+        try {
+            super.enableIdentityProvider(identityProviderName);
+        } finally {
+            cache.invalidate(IdentityProviderCache.IndexKey.ofName(getTenantId(), identityProviderName));
+        }
+    }
+
+    @Override
+    public void disableIdentityProvider(String identityProviderName) throws IdentityProviderException {
+        try {
+            super.disableIdentityProvider(identityProviderName);
+        } finally {
+            cache.invalidate(IdentityProviderCache.IndexKey.ofName(getTenantId(), identityProviderName));
+        }
+    }
+
+    @Override
+    public int deleteIdentityProviders(Collection<Integer> identityProviderIds) throws IdentityProviderException {
+        try {
+            return super.deleteIdentityProviders(identityProviderIds);
+        } finally {
+            identityProviderIds.forEach(cache::invalidate);
+        }
+    }
+
+    @Override
+    public int enableIdentityProviders(Collection<Integer> identityProviderIds) throws IdentityProviderException {
+        try {
+            return super.enableIdentityProviders(identityProviderIds);
+        } finally {
+            identityProviderIds.forEach(cache::invalidate);
+        }
+    }
+
+    @Override
+    public int disableIdentityProviders(Collection<Integer> identityProviderIds) throws IdentityProviderException {
+        try {
+            return super.disableIdentityProviders(identityProviderIds);
+        } finally {
+            identityProviderIds.forEach(cache::invalidate);
+        }
+    }
+
+    @Override
+    public int purgeDeletedIdentityProvider(int identityProviderId, int batchSize) throws IdentityProviderException {
+        try {
+            return super.purgeDeletedIdentityProvider(identityProviderId, batchSize);
+        } finally {
+            cache.invalidate(identityProviderId);
+        }
+    }
+
+    /**
+     * Returns the Identity Provider held for the key, or loads it from the database and adds it, unless the key is
+     * remembered to match no Identity Provider. A load finding no Identity Provider is remembered as a miss. While a
+     * key is being loaded, the other lookups of the key wait for that load, which is repeated if the key or the
+     * Identity Provider loaded was invalidated meanwhile. An Identity Provider due to be refreshed is returned as held,
+     * and reloaded in the background.
+     */
+    private IdentityProvider readThrough(IdentityProviderCache.IndexKey key, GraphLoader loader)
+            throws IdentityProviderException {
+        IdentityProvider identityProvider = getHeld(key);
+        if (identityProvider != null || cache.isMissing(key)) {
+            return identityProvider;
+        }
+
+        CompletableFuture<IdentityProvider> load = new CompletableFuture<>();
+        CompletableFuture<IdentityProvider> ongoingLoad = cache.startLoad(key, load);
+        if (ongoingLoad != null) {
+            return awaitLoad(ongoingLoad);
+        }
+        try {
+            long generation;
+            do {
+                generation = cache.generation();
+                identityProvider = loader.load();
+            } while (cache.isInvalidatedSince(generation, key, identityProvider));
+            if (identityProvider == null) {
+                cache.putMiss(generation, key);
+            } else {
+                identityProvider = cache.put(generation, getTenantId(), identityProvider, key);
+            }
+            load.complete(identityProvider);
+            return identityProvider;
+        } catch (IdentityProviderException | RuntimeException e) {
+            load.completeExceptionally(e);
+            throw e;
+        } finally {
+            cache.endLoad(key, load);
+        }
+    }
+
+    /**
+     * Returns the Identity Providers held for the given keys, and loads the others from the database with a single
+     * bulk load, skipping the keys remembered to match no Identity Provider. The Identity Providers loaded are added,
+     * and the keys not found are remembered as misses. The bulk load does not wait for the loads of single keys in
+     * progress.
+     */
+    private <K> Map<K, IdentityProvider> readAllThrough(Collection<K> keys,
+            Function<K, IdentityProviderCache.IndexKey> indexKey, BulkGraphLoader<K> loader)
+            throws IdentityProviderException {
+        Map<K, IdentityProvider> identityProviders = new HashMap<>();
+        List<K> missingKeys = new ArrayList<>();
+        for (K key : new LinkedHashSet<>(keys)) {
+            IdentityProviderCache.IndexKey cacheKey = indexKey.apply(key);
+            IdentityProvider identityProvider = getHeld(cacheKey);
+            if (identityProvider != null) {
+                identityProviders.put(key, identityProvider);
+            } else if (!cache.isMissing(cacheKey)) {
+                missingKeys.add(key);
+            }
+        }
+        if (missingKeys.isEmpty()) {
+            return identityProviders;
+        }
+
+        long generation = cache.generation();
+        Map<K, IdentityProvider> loaded = loader.load(missingKeys);
+        int tenantId = getTenantId();
+        for (K key : missingKeys) {
+            IdentityProvider identityProvider = loaded.get(key);
+            if (identityProvider == null) {
+                cache.putMiss(generation, indexKey.apply(key));
+            } else {
+                identityProviders.put(key, cache.put(generation, tenantId, identityProvider, indexKey.apply(key)));
+            }
+        }
+        return identityProviders;
+    }
+
+    /**
+     * Returns the Identity Provider held for the key, if any, reloading it in the background when due to be
+     * refreshed.
+     */
+    private IdentityProvider getHeld(IdentityProviderCache.IndexKey key) {
+        IdentityProviderCache.Entry entry = cache.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (cache.startRefresh(entry)) {
+            refreshAsync(entry);
+        }
+        return entry.getIdentityProvider();
+    }
+
+    private void refreshAsync(IdentityProviderCache.Entry entry) {
+        int identityProviderId = entry.getIdentityProvider().getIdPMetadata().getId();
+        long generation = cache.generation();
+        try {
+            getJdbcTemplate().getAsyncExecutor().execute(() -> {
+                try {
+                    if (!cache.refresh(generation, entry, super.loadIdentityProviderGraph(identityProviderId))) {
+                        cache.refreshFailed(entry);
+                    }
+                } catch (IdentityProviderException | RuntimeException e) {
+                    log.warn("Error occurred refreshing the Identity provider with id: " + identityProviderId, e);
+                    cache.refreshFailed(entry);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            if (log.isDebugEnabled()) {
+                log.debug("Refresh of the Identity provider with id: " + identityProviderId + " rejected", e);
+            }
+            cache.refreshFailed(entry);
+        }
+    }
+
+    private IdentityProvider awaitLoad(CompletableFuture<IdentityProvider> load) throws IdentityProviderException {
+        try {
+            return load.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IdentityProviderException("Interrupted while waiting for the Identity provider to be loaded", e);
+        } catch (ExecutionException e) {
+            throw new IdentityProviderException("Error occurred loading the Identity provider", e.getCause());
+        }
+    }
+
+    /**
+     * Invalidates the keys of the name, home realm identifier and authenticator properties being written, which may
+     * now resolve to the Identity Provider written instead of the one they point to.
+     */
+    private void invalidateKeys(IdPMetadata idPMetadata, AuthenticationConfig authenticationConfig) {
+        int tenantId = getTenantId();
+        if (idPMetadata != null) {
+            cache.invalidate(IdentityProviderCache.IndexKey.ofName(tenantId, idPMetadata.getName()));
+            if (idPMetadata.getHomeRealmId() != null) {
+                cache.invalidate(IdentityProviderCache.IndexKey.ofHomeRealmId(tenantId, idPMetadata.getHomeRealmId()));
+            }
+        }
+        if (authenticationConfig != null) {
+            for (AuthenticatorConfig authenticator : authenticationConfig.getAuthenticators()) {
+                authenticator.getProperties().forEach((key, value) -> cache.invalidate(
+                        IdentityProviderCache.IndexKey.ofAuthenticatorProperty(tenantId, key, String.valueOf(value))));
+            }
+        }
+    }
+
+    /**
+     * Loads an Identity Provider graph from the database.
+     */
+    @FunctionalInterface
+    private interface GraphLoader {
+
+        IdentityProvider load() throws IdentityProviderException;
+    }
+
+    private interface BulkGraphLoader<K> {
+
+        Map<K, IdentityProvider> load(Collection<K> keys) throws IdentityProviderException;
+    }
 }
@@ -0,0 +1,481 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.provider.internal.dao;
+
+import org.wso2.carbon.identity.provider.model.AuthenticationConfig;
+import org.wso2.carbon.identity.provider.model.IdentityProvider;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In memory store of the Identity Provider graphs read through {@link CacheBackedIdPDAO}.
+ * Each Identity Provider is held once, in a canonical entry keyed by its ID. The secondary indexes by name, home realm
+ * identifier and authenticator property map their keys to that ID, and every entry records the keys pointing to it,
+ * so that an entry and all its keys are always removed together.
+ * <p>
+ * Once an entry passes the refresh ahead point of its time to live, the lookups that read it mark it to be reloaded
+ * in the background, and keep being served the entry until the reload replaces it. An entry which could not be
+ * reloaded is still served for a grace period after its time to live, and is dropped only then.
+ * <p>
+ * The keys found to match no Identity Provider are remembered for a short time in a bounded map of misses, so that
+ * the repeated lookups of names, IDs and properties that do not exist are not sent to the database. The invalidation
+ * of a key removes its miss as well.
+ * <p>
+ * The loads in progress are tracked by key, so that the concurrent lookups of a key missing in the store wait for a
+ * single load from the database instead of running one each.
+ * <p>
+ * Reads are lock free. Additions and removals are serialized. Every invalidation increments a generation, and records
+ * it against the Identity Provider and the key invalidated, so that a graph or a miss loaded from the database before
+ * the invalidation is not added after it. The loads of other Identity Providers and keys are not affected. Only a
+ * bounded number of invalidations is recorded; past it, the records are dropped and all the loads started before are
+ * treated as invalidated.
+ */
+class IdentityProviderCache {
+
+    // Minimum time between two attempts to reload an entry, so that a failing database is not retried on every lookup
+    private static final long REFRESH_RETRY_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final int MAX_INVALIDATIONS = 1024;
+
+    private final int maxEntries;
+    private final int maxMisses;
+    private final long missTtlNanos;
+    private final Map<Integer, Entry> entries = new ConcurrentHashMap<>();
+    private final Map<IndexKey, Integer> index = new ConcurrentHashMap<>();
+    // Expiry time of the misses, as of System.nanoTime()
+    private final Map<IndexKey, Long> misses = new ConcurrentHashMap<>();
+    private final Map<IndexKey, CompletableFuture<IdentityProvider>> loads = new ConcurrentHashMap<>();
+    private final LongAdder loadCount = new LongAdder();
+    private final LongAdder coalescedLoadCount = new LongAdder();
+    // Generation of the last invalidation of each Identity Provider and key, since the invalidation floor
+    private final Map<Integer, Long> invalidatedIds = new ConcurrentHashMap<>();
+    private final Map<IndexKey, Long> invalidatedKeys = new ConcurrentHashMap<>();
+    private volatile long generation;
+    // Generation below which all the loads are treated as invalidated, once the records of invalidations overflowed
+    private volatile long invalidationFloor;
+    private volatile long ttlNanos;
+    private volatile long refreshAfterNanos;
+    private volatile long staleGraceNanos;
+
+    IdentityProviderCache(int maxEntries, int maxMisses, long missTtlNanos) {
+        this.maxEntries = maxEntries;
+        this.maxMisses = maxMisses;
+        this.missTtlNanos = missTtlNanos;
+    }
+
+    /**
+     * Sets the expiry of the entries. The entries never expire when the time to live is not positive.
+     *
+     * @param ttlNanos             the time after which an entry is stale.
+     * @param refreshAheadFraction the fraction of the time to live after which an entry is reloaded in the background.
+     * @param staleGraceNanos      the time after the time to live during which a stale entry is still served.
+     */
+    void setExpiry(long ttlNanos, double refreshAheadFraction, long staleGraceNanos) {
+        this.refreshAfterNanos = (long) (ttlNanos * Math.min(Math.max(refreshAheadFraction, 0), 1));
+        this.staleGraceNanos = Math.max(staleGraceNanos, 0);
+        this.ttlNanos = ttlNanos;
+    }
+
+    /**
+     * Returns the generation to be passed to {@link #put(long, int, IdentityProvider, IndexKey)} for a graph loaded
+     * after this call.
+     */
+    long generation() {
+        return generation;
+    }
+
+    /**
+     * Returns whether the key looked up, or the Identity Provider loaded for it, was invalidated since the given
+     * generation, in which case the graph or the miss loaded may predate a modification.
+     *
+     * @param loadGeneration   the generation read before the load.
+     * @param lookupKey        the key looked up.
+     * @param identityProvider the graph loaded, or null if the key matched no Identity Provider.
+     */
+    boolean isInvalidatedSince(long loadGeneration, IndexKey lookupKey, IdentityProvider identityProvider) {
+        if (loadGeneration == generation) {
+            return false;
+        }
+        if (isRecordedAfter(invalidatedKeys.get(lookupKey), loadGeneration)) {
+            return true;
+        }
+        if (identityProvider != null && (isRecordedAfter(invalidatedIds.get(identityProvider.getIdPMetadata()
+                .getId()), loadGeneration) || isRecordedAfter(invalidatedKeys.get(IndexKey.ofName(lookupKey.tenantId,
+                identityProvider.getIdPMetadata().getName())), loadGeneration))) {
+            return true;
+        }
+        // The floor is read after the records, as it is raised before they are dropped
+        return loadGeneration < invalidationFloor;
+    }
+
+    /**
+     * Returns the entry of the key, unless it is past the grace period of its time to live.
+     */
+    Entry get(IndexKey key) {
+        Integer identityProviderId = key.type == IndexKey.Type.ID ? key.getIdentityProviderId() : index.get(key);
+        Entry entry = identityProviderId != null ? entries.get(identityProviderId) : null;
+        if (entry == null || entry.tenantId != key.tenantId || isExpired(entry, System.nanoTime())) {
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * Marks the entry as being reloaded, if it is past the refresh ahead point and not being reloaded already.
+     *
+     * @return whether the caller is to reload the entry and pass it to {@link #refresh(long, Entry, IdentityProvider)}.
+     */
+    boolean startRefresh(Entry entry) {
+        if (ttlNanos <= 0) {
+            return false;
+        }
+        long now = System.nanoTime();
+        return now - entry.loadTime >= refreshAfterNanos && now - entry.nextRefreshTime >= 0
+                && entry.refreshing.compareAndSet(false, true);
+    }
+
+    /**
+     * Records that the entry could not be reloaded. It keeps being served until its grace period ends, and is retried
+     * after a short interval.
+     */
+    void refreshFailed(Entry entry) {
+        entry.nextRefreshTime = System.nanoTime() + REFRESH_RETRY_INTERVAL_NANOS;
+        entry.refreshing.set(false);
+    }
+
+    /**
+     * Replaces the entry by the graph reloaded from the database, keeping the keys which still match it. The entry is
+     * removed if the Identity Provider is no longer found. Nothing is changed if the entry was replaced or if the
+     * Identity Provider was invalidated since the given generation.
+     *
+     * @return whether the reloaded graph was applied.
+     */
+    synchronized boolean refresh(long loadGeneration, Entry entry, IdentityProvider identityProvider) {
+        int identityProviderId = entry.identityProvider.getIdPMetadata().getId();
+        if (entries.get(identityProviderId) != entry || isInvalidatedSince(loadGeneration,
+                IndexKey.ofId(entry.tenantId, identityProviderId), identityProvider)) {
+            return false;
+        }
+        if (identityProvider == null) {
+            invalidate(identityProviderId);
+            return true;
+        }
+        Entry refreshedEntry = new Entry(entry.tenantId, identityProvider, System.nanoTime());
+        for (IndexKey key : entry.keys) {
+            if (key.matches(identityProvider)) {
+                refreshedEntry.keys.add(key);
+            } else {
+                index.remove(key, identityProviderId);
+            }
+        }
+        entries.put(identityProviderId, refreshedEntry);
+        addKey(refreshedEntry, IndexKey.ofName(entry.tenantId, identityProvider.getIdPMetadata().getName()));
+        return true;
+    }
+
+    /**
+     * Returns whether the key was found to match no Identity Provider within the time to live of the misses.
+     */
+    boolean isMissing(IndexKey key) {
+        Long expiryTime = misses.get(key);
+        if (expiryTime == null) {
+            return false;
+        }
+        if (expiryTime - System.nanoTime() > 0) {
+            return true;
+        }
+        misses.remove(key, expiryTime);
+        return false;
+    }
+
+    /**
+     * Registers the load of the key, unless another load of the key is in progress.
+     *
+     * @return the load in progress to be waited for, or null if the given load is to be performed by the caller.
+     */
+    CompletableFuture<IdentityProvider> startLoad(IndexKey key, CompletableFuture<IdentityProvider> load) {
+        CompletableFuture<IdentityProvider> ongoingLoad = loads.putIfAbsent(key, load);
+        if (ongoingLoad != null) {
+            coalescedLoadCount.increment();
+        } else {
+            loadCount.increment();
+        }
+        return ongoingLoad;
+    }
+
+    void endLoad(IndexKey key, CompletableFuture<IdentityProvider> load) {
+        loads.remove(key, load);
+    }
+
+    long getLoadCount() {
+        return loadCount.sum();
+    }
+
+    long getCoalescedLoadCount() {
+        return coalescedLoadCount.sum();
+    }
+
+    /**
+     * Remembers that the key matched no Identity Provider. The miss is dropped if the key was invalidated since the
+     * given generation. When the map of misses is full, the expired misses are removed first, and then any other.
+     */
+    synchronized void putMiss(long loadGeneration, IndexKey key) {
+        if (maxMisses <= 0 || isInvalidatedSince(loadGeneration, key, null)) {
+            return;
+        }
+        long now = System.nanoTime();
+        if (misses.size() >= maxMisses) {
+            misses.values().removeIf(expiryTime -> expiryTime - now <= 0);
+            Iterator<IndexKey> keys = misses.keySet().iterator();
+            while (misses.size() >= maxMisses && keys.hasNext()) {
+                keys.next();
+                keys.remove();
+            }
+        }
+        misses.put(key, now + missTtlNanos);
+    }
+
+    /**
+     * Adds a graph loaded from the database, indexed by its ID and name, and by the key it was looked up with. The
+     * graph is dropped if the Identity Provider or the key was invalidated since the given generation, or if the store
+     * is full. An entry
+     * already held for the ID is kept as the canonical one, unless it is past its grace period, as it is reloaded on
+     * its own schedule.
+     *
+     * @return the canonical graph for the ID.
+     */
+    synchronized IdentityProvider put(long loadGeneration, int tenantId, IdentityProvider identityProvider,
+            IndexKey lookupKey) {
+        int identityProviderId = identityProvider.getIdPMetadata().getId();
+        if (isInvalidatedSince(loadGeneration, lookupKey != null ? lookupKey :
+                IndexKey.ofId(tenantId, identityProviderId), identityProvider)) {
+            return identityProvider;
+        }
+        long now = System.nanoTime();
+        Entry entry = entries.get(identityProviderId);
+        if (entry != null && isExpired(entry, now)) {
+            removeEntry(identityProviderId);
+            entry = null;
+        }
+        if (entry == null) {
+            if (entries.size() >= maxEntries) {
+                return identityProvider;
+            }
+            entry = new Entry(tenantId, identityProvider, now);
+            entries.put(identityProviderId, entry);
+            addKey(entry, IndexKey.ofName(tenantId, identityProvider.getIdPMetadata().getName()));
+        }
+        if (lookupKey != null && lookupKey.type != IndexKey.Type.ID) {
+            addKey(entry, lookupKey);
+        }
+        return entry.identityProvider;
+    }
+
+    /**
+     * Removes the entry of the Identity Provider along with all the keys pointing to it. The loads in progress of those
+     * keys are forgotten, so that the lookups that follow do not wait for a load which may have read the Identity
+     * Provider before it was modified.
+     */
+    synchronized void invalidate(int identityProviderId) {
+        recordInvalidation(invalidatedIds, identityProviderId);
+        Entry entry = entries.get(identityProviderId);
+        loads.keySet().removeIf(key -> key.type == IndexKey.Type.ID ?
+                key.getIdentityProviderId() == identityProviderId : entry != null && entry.keys.contains(key));
+        removeEntry(identityProviderId);
+    }
+
+    /**
+     * Removes the key, its miss and its load in progress, along with the entry it points to and all the other keys of
+     * that entry.
+     */
+    synchronized void invalidate(IndexKey key) {
+        recordInvalidation(invalidatedKeys, key);
+        loads.remove(key);
+        misses.remove(key);
+        Integer identityProviderId = key.type == IndexKey.Type.ID ? key.getIdentityProviderId() : index.remove(key);
+        if (identityProviderId != null) {
+            invalidate(identityProviderId);
+        }
+    }
+
+    synchronized void clear() {
+        generation++;
+        raiseInvalidationFloor();
+        loads.clear();
+        entries.clear();
+        index.clear();
+        misses.clear();
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    private boolean isExpired(Entry entry, long now) {
+        return ttlNanos > 0 && now - entry.loadTime >= ttlNanos + staleGraceNanos;
+    }
+
+    private boolean isRecordedAfter(Long invalidation, long loadGeneration) {
+        return invalidation != null && invalidation > loadGeneration;
+    }
+
+    private <K> void recordInvalidation(Map<K, Long> invalidations, K invalidated) {
+        generation++;
+        if (invalidatedIds.size() + invalidatedKeys.size() >= MAX_INVALIDATIONS) {
+            raiseInvalidationFloor();
+        }
+        invalidations.put(invalidated, generation);
+    }
+
+    private void raiseInvalidationFloor() {
+        invalidationFloor = generation;
+        invalidatedIds.clear();
+        invalidatedKeys.clear();
+    }
+
+    private void removeEntry(int identityProviderId) {
+        Entry entry = entries.remove(identityProviderId);
+        if (entry != null) {
+            entry.keys.forEach(key -> index.remove(key, identityProviderId));
+        }
+    }
+
+    private void addKey(Entry entry, IndexKey key) {
+        Integer previousId = index.put(key, entry.identityProvider.getIdPMetadata().getId());
+        if (previousId != null && previousId != entry.identityProvider.getIdPMetadata().getId()) {
+            Entry previousEntry = entries.get(previousId);
+            if (previousEntry != null) {
+                previousEntry.keys.remove(key);
+            }
+        }
+        entry.keys.add(key);
+    }
+
+    /**
+     * Canonical entry of an Identity Provider, with the keys pointing to it and the state of its reload.
+     */
+    static final class Entry {
+
+        private final int tenantId;
+        private final IdentityProvider identityProvider;
+        // Load time of the graph, as of System.nanoTime()
+        private final long loadTime;
+        private final Set<IndexKey> keys = ConcurrentHashMap.newKeySet();
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+        private volatile long nextRefreshTime;
+
+        private Entry(int tenantId, IdentityProvider identityProvider, long loadTime) {
+            this.tenantId = tenantId;
+            this.identityProvider = identityProvider;
+            this.loadTime = loadTime;
+            this.nextRefreshTime = loadTime;
+        }
+
+        IdentityProvider getIdentityProvider() {
+            return identityProvider;
+        }
+    }
+
+    /**
+     * Key of a lookup by ID or of a secondary index, scoped to a tenant.
+     */
+    static final class IndexKey {
+
+        private enum Type {
+            ID, NAME, HOME_REALM_ID, AUTHENTICATOR_PROPERTY
+        }
+
+        private final int tenantId;
+        private final Type type;
+        private final String name;
+        private final String value;
+
+        private IndexKey(int tenantId, Type type, String name, String value) {
+            this.tenantId = tenantId;
+            this.type = type;
+            this.name = name;
+            this.value = value;
+        }
+
+        static IndexKey ofId(int tenantId, int identityProviderId) {
+            return new IndexKey(tenantId, Type.ID, Integer.toString(identityProviderId), null);
+        }
+
+        static IndexKey ofName(int tenantId, String name) {
+            return new IndexKey(tenantId, Type.NAME, name, null);
+        }
+
+        static IndexKey ofHomeRealmId(int tenantId, String homeRealmId) {
+            return new IndexKey(tenantId, Type.HOME_REALM_ID, homeRealmId, null);
+        }
+
+        static IndexKey ofAuthenticatorProperty(int tenantId, String key, String value) {
+            return new IndexKey(tenantId, Type.AUTHENTICATOR_PROPERTY, key, value);
+        }
+
+        private Integer getIdentityProviderId() {
+            return Integer.valueOf(name);
+        }
+
+        /**
+         * Returns whether the key still applies to the given graph of the Identity Provider it pointed to.
+         */
+        private boolean matches(IdentityProvider identityProvider) {
+            switch (type) {
+            case NAME:
+                return name.equals(identityProvider.getIdPMetadata().getName());
+            case HOME_REALM_ID:
+                return name.equals(identityProvider.getIdPMetadata().getHomeRealmId());
+            case AUTHENTICATOR_PROPERTY:
+                AuthenticationConfig authenticationConfig = identityProvider.getAuthenticationConfig();
+                return authenticationConfig != null && authenticationConfig.getAuthenticators().stream()
+                        .map(authenticator -> authenticator.getProperties().get(name))
+                        .anyMatch(propertyValue -> propertyValue != null
+                                && value.equals(String.valueOf(propertyValue)));
+            default:
+                return true;
+            }
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof IndexKey)) {
+                return false;
+            }
+            IndexKey indexKey = (IndexKey) o;
+            return tenantId == indexKey.tenantId && type == indexKey.type && Objects.equals(name, indexKey.name)
+                    && Objects.equals(value, indexKey.value);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(tenantId, type, name, value);
+        }
+    }
+}
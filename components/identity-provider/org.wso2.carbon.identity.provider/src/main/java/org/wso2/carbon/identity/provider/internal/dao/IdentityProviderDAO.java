@@ -18,54 +18,148 @@
 
 package org.wso2.carbon.identity.provider.internal.dao;
 
+import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.tuple.ImmutablePair;
+import org.apache.commons.lang3.tuple.ImmutableTriple;
 import org.apache.commons.lang3.tuple.Pair;
+import org.apache.commons.lang3.tuple.Triple;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.wso2.carbon.identity.provider.IdentityProviderConflictException;
 import org.wso2.carbon.identity.provider.IdentityProviderException;
 import org.wso2.carbon.identity.provider.dao.DataAccessException;
+import org.wso2.carbon.identity.provider.dao.GroupingResultSetExtractor;
 import org.wso2.carbon.identity.provider.dao.JdbcTemplate;
+import org.wso2.carbon.identity.provider.dao.QueryFilter;
 import org.wso2.carbon.identity.provider.model.AuthenticationConfig;
+import org.wso2.carbon.identity.provider.model.AuthenticatorConfig;
 import org.wso2.carbon.identity.provider.model.FederatedIdentityProvider;
+import org.wso2.carbon.identity.provider.model.IdPListQuery;
+import org.wso2.carbon.identity.provider.model.IdPListResult;
 import org.wso2.carbon.identity.provider.model.IdPMetadata;
 import org.wso2.carbon.identity.provider.model.IdentityProvider;
+import org.wso2.carbon.identity.provider.model.ProvisionerConfig;
 import org.wso2.carbon.identity.provider.model.ProvisioningConfig;
 import org.wso2.carbon.identity.provider.model.ResidentIdentityProvider;
+import org.wso2.carbon.identity.provider.util.IdentityProviderConstants;
+import org.wso2.carbon.identity.provider.util.IdentityProviderUtil;
 
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Data Access Object to the data storage to retrieve and store identity provider and related configurations.
+ * Every query is scoped to the tenant of the DAO, which is the super tenant unless set otherwise, and is served by
+ * an index leading with TENANT_ID.
  */
 public class IdentityProviderDAO {
 
     private static final Logger log = LoggerFactory.getLogger(IdentityProviderDAO.class);
+    private static final String PROPERTY_TYPE_STRING = "STRING";
 
     private JdbcTemplate jdbcTemplate;
+    private int tenantId = IdentityProviderConstants.SUPER_TENANT_ID;
+    private boolean softDelete;
 
     public void setJdbcTemplate(JdbcTemplate jdbcTemplate) {
         this.jdbcTemplate = jdbcTemplate;
     }
 
+    protected JdbcTemplate getJdbcTemplate() {
+        return jdbcTemplate;
+    }
+
+    public void setTenantId(int tenantId) {
+        this.tenantId = tenantId;
+    }
+
+    public int getTenantId() {
+        return tenantId;
+    }
+
+    /**
+     * Sets whether deletes only mark the identity providers as deleted, leaving the removal of their rows to
+     * {@link #purgeDeletedIdentityProvider(int, int)}. A soft deleted identity provider is hidden from all the reads
+     * and writes at once, but its name stays reserved within the tenant until it is purged.
+     *
+     * @param softDelete whether the soft delete mode is enabled.
+     */
+    public void setSoftDelete(boolean softDelete) {
+        this.softDelete = softDelete;
+    }
+
+    public boolean isSoftDelete() {
+        return softDelete;
+    }
+
+    /**
+     * Creates a DAO accessing the identity providers of the given tenant, sharing the JDBC template of this one.
+     *
+     * @param tenantId the ID of the tenant.
+     * @return the DAO scoped to the tenant.
+     */
+    public IdentityProviderDAO forTenant(int tenantId) {
+        IdentityProviderDAO identityProviderDAO = newInstance();
+        identityProviderDAO.setJdbcTemplate(jdbcTemplate);
+        identityProviderDAO.setTenantId(tenantId);
+        identityProviderDAO.setSoftDelete(softDelete);
+        return identityProviderDAO;
+    }
+
     /**
-     * Adds an identity provider to the persistent store.
+     * Creates the DAO returned by {@link #forTenant(int)}, before the settings of this one are copied to it.
+     */
+    protected IdentityProviderDAO newInstance() {
+        return new IdentityProviderDAO();
+    }
+
+    /**
+     * Adds an identity provider, along with its authenticators, provisioners and their properties, to the
+     * persistent store. All the sections are written in a single transaction.
      *
      * @param identityProvider The IdP to be added.
      * @return the ID of the newly inserted Identity provider.
      * @throws IdentityProviderException when any database level exception occurs.
      */
     public int createIdentityProvider(IdentityProvider identityProvider) throws IdentityProviderException {
-        final String INSERT_IDP_SQL = "INSERT INTO IDP (NAME, DISPLAY_NAME, DESCRIPTION) " + "VALUES(?,?,?)";
+        final String INSERT_IDP_SQL = "INSERT INTO IDP (TENANT_ID, NAME, DISPLAY_NAME, DESCRIPTION, HOME_REALM_ID, "
+                + "IS_FEDERATION_HUB, IS_ENABLED) VALUES(?,?,?,?,?,?,?)";
 
         int insertedId = 0;
         try {
-            insertedId = this.jdbcTemplate.executeInsert(INSERT_IDP_SQL, (preparedStatement) -> {
-                IdPMetadata idPMetadata = identityProvider.getIdPMetadata();
-                preparedStatement.setString(1, idPMetadata.getName());
-                preparedStatement.setString(2, idPMetadata.getDisplayLabel());
-                preparedStatement.setString(3, idPMetadata.getDescription());
-
-            }, identityProvider, true);
+            insertedId = this.jdbcTemplate.inTransaction(() -> {
+                int idpId = this.jdbcTemplate.executeInsert(INSERT_IDP_SQL, (preparedStatement) -> {
+                    IdPMetadata idPMetadata = identityProvider.getIdPMetadata();
+                    preparedStatement.setInt(1, tenantId);
+                    preparedStatement.setString(2, idPMetadata.getName());
+                    preparedStatement.setString(3, idPMetadata.getDisplayLabel());
+                    preparedStatement.setString(4, idPMetadata.getDescription());
+                    preparedStatement.setString(5, idPMetadata.getHomeRealmId());
+                    preparedStatement.setString(6, toFlagValue(idPMetadata.isFederationHub()));
+                    preparedStatement.setString(7, toFlagValue(identityProvider.isEnabled()));
+                }, identityProvider, true);
+                if (identityProvider.getAuthenticationConfig() != null) {
+                    addAuthenticators(idpId, identityProvider.getAuthenticationConfig().getAuthenticators());
+                }
+                if (identityProvider.getProvisioningConfig() != null) {
+                    addProvisioners(idpId, identityProvider.getProvisioningConfig().getProvisioners());
+                }
+                return idpId;
+            });
         } catch (DataAccessException e) {
             throw new IdentityProviderException(
                     "Error occurred in inserting new Identity Provider with name " + identityProvider.getIdPMetadata()
@@ -83,12 +177,13 @@ public class IdentityProviderDAO {
      */
     public List<Pair<Integer, String>> listAllIdentityProviders() throws IdentityProviderException {
 
-        final String GET_ALL_IDP_SQL = "SELECT ID, NAME FROM IDP";
+        final String GET_ALL_IDP_SQL = "SELECT ID, NAME FROM IDP WHERE TENANT_ID=? AND IS_DELETED='0'";
 
         List<Pair<Integer, String>> idpList = null;
         try {
             idpList = this.jdbcTemplate.executeQuery(GET_ALL_IDP_SQL,
-                    (resultSet, rowNumber) -> ImmutablePair.of(resultSet.getInt(1), resultSet.getString(2)));
+                    (resultSet, rowNumber) -> ImmutablePair.of(resultSet.getInt(1), resultSet.getString(2)),
+                    (preparedStatement -> preparedStatement.setInt(1, tenantId)));
         } catch (DataAccessException e) {
             throw new IdentityProviderException("Error occurred in listing all the Identity providers ", e);
         }
@@ -96,6 +191,26 @@ public class IdentityProviderDAO {
         return idpList;
     }
 
+    /**
+     * Streams the ID and name of all identity providers, reading them from the database as the stream is consumed.
+     * The returned stream holds a database connection until it is closed, hence needs to be closed by the caller.
+     *
+     * @return stream of Pair of {ID, Name} of identity provider
+     * @throws IdentityProviderException
+     */
+    public Stream<Pair<Integer, String>> streamAllIdentityProviders() throws IdentityProviderException {
+
+        final String GET_ALL_IDP_SQL = "SELECT ID, NAME FROM IDP WHERE TENANT_ID=? AND IS_DELETED='0'";
+
+        try {
+            return this.jdbcTemplate.streamQuery(GET_ALL_IDP_SQL,
+                    (resultSet, rowNumber) -> ImmutablePair.of(resultSet.getInt(1), resultSet.getString(2)),
+                    (preparedStatement -> preparedStatement.setInt(1, tenantId)));
+        } catch (DataAccessException e) {
+            throw new IdentityProviderException("Error occurred in streaming all the Identity providers ", e);
+        }
+    }
+
     /**
      * Lists the ID and name of all identity providers.
      *
@@ -104,13 +219,16 @@ public class IdentityProviderDAO {
      */
     public List<Pair<Integer, String>> listEnabledIdentityProviders() throws IdentityProviderException {
 
-        final String GET_ALL_IDP_SQL = "SELECT ID, NAME FROM IDP WHERE IS_ENABLED=?";
+        final String GET_ALL_IDP_SQL = "SELECT ID, NAME FROM IDP WHERE TENANT_ID=? AND IS_DELETED='0' AND IS_ENABLED=?";
 
         List<Pair<Integer, String>> idpList = null;
         try {
             idpList = this.jdbcTemplate.executeQuery(GET_ALL_IDP_SQL,
                     (resultSet, rowNumber) -> ImmutablePair.of(resultSet.getInt(1), resultSet.getString(2)),
-                    (preparedStatement -> preparedStatement.setBoolean(1, true)));
+                    (preparedStatement -> {
+                        preparedStatement.setInt(1, tenantId);
+                        preparedStatement.setString(2, IdentityProviderConstants.IS_TRUE_VALUE);
+                    }));
         } catch (DataAccessException e) {
             throw new IdentityProviderException("Error occurred in listing 'Enabled' the Identity providers ", e);
         }
@@ -118,9 +236,81 @@ public class IdentityProviderDAO {
         return idpList;
     }
 
+    /**
+     * Lists a page of identity providers matching the filters of the given query, ordered by ID.
+     * The page starts after the ID given as the cursor of the query, hence the IDP primary key index is used to seek
+     * directly to the page of the tenant instead of skipping over the preceding rows. The name prefix filter is backed
+     * by the unique (TENANT_ID, NAME) index, and the enabled and federation hub filters by indexes on the tenant and
+     * those flags together with ID.
+     *
+     * @param idPListQuery the cursor, page size and filters.
+     * @return the page, carrying the metadata and enabled state of each identity provider.
+     * @throws IdentityProviderException when any database level exception occurs.
+     */
+    public IdPListResult listIdentityProviders(IdPListQuery idPListQuery) throws IdentityProviderException {
+
+        final String LIST_IDP_SQL = "SELECT ID, NAME, DISPLAY_NAME, DESCRIPTION, IS_FEDERATION_HUB, IS_ENABLED, "
+                + "HOME_REALM_ID, VERSION FROM IDP WHERE TENANT_ID=? AND IS_DELETED='0' AND ID > ?";
+        final String COUNT_IDP_SQL = "SELECT COUNT(*) FROM IDP WHERE TENANT_ID=? AND IS_DELETED='0'";
+
+        List<String> filterValues = new ArrayList<>();
+        String filterCondition = buildFilterCondition(idPListQuery, filterValues);
+
+        int limit = idPListQuery.getLimit();
+        List<IdentityProvider> identityProviders;
+        int totalCount = IdPListResult.TOTAL_COUNT_NOT_REQUESTED;
+        try {
+            // One row beyond the limit is fetched to find out whether there is a next page. The rows are capped through
+            // the statement rather than a LIMIT clause, which Oracle and SQL Server do not accept.
+            identityProviders = this.jdbcTemplate.executeQuery(LIST_IDP_SQL + filterCondition + " ORDER BY ID",
+                    columnIndex -> {
+                        int id = columnIndex.indexOf("ID");
+                        int name = columnIndex.indexOf("NAME");
+                        int displayName = columnIndex.indexOf("DISPLAY_NAME");
+                        int description = columnIndex.indexOf("DESCRIPTION");
+                        int isFederationHub = columnIndex.indexOf("IS_FEDERATION_HUB");
+                        int isEnabled = columnIndex.indexOf("IS_ENABLED");
+                        int homeRealmId = columnIndex.indexOf("HOME_REALM_ID");
+                        int version = columnIndex.indexOf("VERSION");
+                        return (resultSet, rowNumber) -> FederatedIdentityProvider
+                                .newBuilder(resultSet.getInt(id), resultSet.getString(name))
+                                .setDisplayLabel(resultSet.getString(displayName))
+                                .setDescription(resultSet.getString(description))
+                                .setIsFederationHub(resultSet.getBoolean(isFederationHub))
+                                .setEnabled(resultSet.getBoolean(isEnabled))
+                                .setHomeRealmId(resultSet.getString(homeRealmId))
+                                .setVersion(resultSet.getInt(version))
+                                .build();
+                    }, preparedStatement -> {
+                        preparedStatement.setInt(1, tenantId);
+                        preparedStatement.setInt(2, idPListQuery.getAfterId());
+                        bindFilterValues(preparedStatement, 3, filterValues);
+                        preparedStatement.setMaxRows(limit + 1);
+                    });
+            if (idPListQuery.isIncludeTotalCount()) {
+                totalCount = this.jdbcTemplate.fetchSingleRecord(COUNT_IDP_SQL + filterCondition,
+                        (resultSet, rowNumber) -> resultSet.getInt(1),
+                        preparedStatement -> {
+                            preparedStatement.setInt(1, tenantId);
+                            bindFilterValues(preparedStatement, 2, filterValues);
+                        });
+            }
+        } catch (DataAccessException e) {
+            throw new IdentityProviderException("Error occurred in listing a page of Identity providers after ID: "
+                    + idPListQuery.getAfterId(), e);
+        }
+
+        boolean hasMore = identityProviders.size() > limit;
+        if (hasMore) {
+            identityProviders = identityProviders.subList(0, limit);
+        }
+        return new IdPListResult(identityProviders, hasMore, totalCount);
+    }
+
     public IdentityProvider getIdentityProvider(int identityProviderId) throws IdentityProviderException {
         final String GET_ALL_IDP_SQL = "SELECT ID, NAME, DISPLAY_NAME, DESCRIPTION, "
-                + "IS_FEDERATION_HUB, IS_LOCAL_CLAIM_DIALECT, IS_ENABLED, ID FROM IDP WHERE ID=?";
+                + "IS_FEDERATION_HUB, IS_LOCAL_CLAIM_DIALECT, IS_ENABLED, ID FROM IDP WHERE ID=? AND TENANT_ID=? "
+                + "AND IS_DELETED='0'";
 
         IdentityProvider identityProvider = null;
         try {
@@ -130,6 +320,7 @@ public class IdentityProviderDAO {
                 return identityProviderBuilder.build();
             }, (preparedStatement) -> {
                 preparedStatement.setInt(1, identityProviderId);
+                preparedStatement.setInt(2, tenantId);
             });
         } catch (DataAccessException e) {
             throw new IdentityProviderException(
@@ -141,21 +332,32 @@ public class IdentityProviderDAO {
 
     public IdentityProvider getIdentityProvider(String identityProviderName) throws IdentityProviderException {
         final String GET_ALL_IDP_SQL = "SELECT ID, NAME, DISPLAY_NAME, DESCRIPTION, "
-                + "IS_FEDERATION_HUB, IS_LOCAL_CLAIM_DIALECT, IS_ENABLED, HOME_REALM_ID FROM IDP WHERE NAME=?";
+                + "IS_FEDERATION_HUB, IS_LOCAL_CLAIM_DIALECT, IS_ENABLED, HOME_REALM_ID FROM IDP "
+                + "WHERE TENANT_ID=? AND NAME=? AND IS_DELETED='0'";
 
         IdentityProvider identityProvider = null;
         try {
-            identityProvider = this.jdbcTemplate.fetchSingleRecord(GET_ALL_IDP_SQL, (resultSet, rowNumber) -> {
-                IdentityProvider.IdentityProviderBuilder identityProviderBuilder = FederatedIdentityProvider
-                        .newBuilder(resultSet.getInt("ID"), resultSet.getString("NAME"))
-                        .setDisplayLabel(resultSet.getString("DISPLAY_NAME"))
-                        .setDescription(resultSet.getString("DESCRIPTION"))
-                        .setIsFederationHub(resultSet.getBoolean("IS_FEDERATION_HUB"))
-                        .setEnabled(resultSet.getBoolean("IS_ENABLED"))
-                        .setHomeRealmId(resultSet.getString("HOME_REALM_ID"));
-                return identityProviderBuilder.build();
+            identityProvider = this.jdbcTemplate.fetchSingleRecord(GET_ALL_IDP_SQL, columnIndex -> {
+                int id = columnIndex.indexOf("ID");
+                int name = columnIndex.indexOf("NAME");
+                int displayName = columnIndex.indexOf("DISPLAY_NAME");
+                int description = columnIndex.indexOf("DESCRIPTION");
+                int isFederationHub = columnIndex.indexOf("IS_FEDERATION_HUB");
+                int isEnabled = columnIndex.indexOf("IS_ENABLED");
+                int homeRealmId = columnIndex.indexOf("HOME_REALM_ID");
+                return (resultSet, rowNumber) -> {
+                    IdentityProvider.IdentityProviderBuilder<?> identityProviderBuilder = FederatedIdentityProvider
+                            .newBuilder(resultSet.getInt(id), resultSet.getString(name))
+                            .setDisplayLabel(resultSet.getString(displayName))
+                            .setDescription(resultSet.getString(description))
+                            .setIsFederationHub(resultSet.getBoolean(isFederationHub))
+                            .setEnabled(resultSet.getBoolean(isEnabled))
+                            .setHomeRealmId(resultSet.getString(homeRealmId));
+                    return identityProviderBuilder.build();
+                };
             }, (preparedStatement) -> {
-                preparedStatement.setString(1, identityProviderName);
+                preparedStatement.setInt(1, tenantId);
+                preparedStatement.setString(2, identityProviderName);
             });
         } catch (DataAccessException e) {
             throw new IdentityProviderException(
@@ -165,15 +367,123 @@ public class IdentityProviderDAO {
         return identityProvider;
     }
 
+    /**
+     * Loads an identity provider along with its authenticators, provisioners and their properties.
+     * Two set based queries are used regardless of the number of authenticators, provisioners and properties.
+     *
+     * @param identityProviderId the ID of the IdP.
+     * @return the IdP, or null when there is no IdP with the given ID.
+     * @throws IdentityProviderException when any database level exception occurs.
+     */
+    public IdentityProvider loadIdentityProviderGraph(int identityProviderId) throws IdentityProviderException {
+        try {
+            return loadIdentityProviderGraphs("IDP.ID=?",
+                    (preparedStatement) -> preparedStatement.setInt(2, identityProviderId)).get(identityProviderId);
+        } catch (DataAccessException e) {
+            throw new IdentityProviderException(
+                    "Error occurred loading the Identity provider by the given ID: " + identityProviderId, e);
+        }
+    }
+
+    /**
+     * Loads an identity provider along with its authenticators, provisioners and their properties.
+     * Two set based queries are used regardless of the number of authenticators, provisioners and properties.
+     *
+     * @param identityProviderName the name of the IdP.
+     * @return the IdP, or null when there is no IdP with the given name.
+     * @throws IdentityProviderException when any database level exception occurs.
+     */
+    public IdentityProvider loadIdentityProviderGraph(String identityProviderName) throws IdentityProviderException {
+        try {
+            Map<Integer, IdentityProvider> identityProviders = loadIdentityProviderGraphs("IDP.NAME=?",
+                    (preparedStatement) -> preparedStatement.setString(2, identityProviderName));
+            return identityProviders.isEmpty() ? null : identityProviders.values().iterator().next();
+        } catch (DataAccessException e) {
+            throw new IdentityProviderException(
+                    "Error occurred loading the Identity provider by the given Name: " + identityProviderName, e);
+        }
+    }
+
+    /**
+     * Loads the identity provider of the tenant which has the given home realm identifier, along with its
+     * authenticators, provisioners and their properties. The lookup is served by the (TENANT_ID, HOME_REALM_ID) index.
+     *
+     * @param homeRealmId the home realm identifier sent by the service providers.
+     * @return the IdP, or null when no IdP of the tenant has the home realm identifier. When several IdPs have it, the
+     * one with the lowest ID.
+     * @throws IdentityProviderException when any database level exception occurs.
+     */
+    public IdentityProvider getIdentityProviderByHomeRealmId(String homeRealmId) throws IdentityProviderException {
+        try {
+            Map<Integer, IdentityProvider> identityProviders = loadIdentityProviderGraphs("IDP.HOME_REALM_ID=?",
+                    (preparedStatement) -> preparedStatement.setString(2, homeRealmId));
+            return identityProviders.isEmpty() ? null :
+                    identityProviders.get(Collections.min(identityProviders.keySet()));
+        } catch (DataAccessException e) {
+            throw new IdentityProviderException(
+                    "Error occurred loading the Identity provider by the given home realm: " + homeRealmId, e);
+        }
+    }
+
+    /**
+     * Loads the identity providers with the given IDs, along with their authenticators, provisioners and properties.
+     * The IDs are looked up with IN lists of the size the database accepts, using two queries per IN list.
+     *
+     * @param identityProviderIds the IDs of the IdPs.
+     * @return the IdPs found, keyed by their ID.
+     * @throws IdentityProviderException when any database level exception occurs.
+     */
+    public Map<Integer, IdentityProvider> getIdentityProviders(Collection<Integer> identityProviderIds)
+            throws IdentityProviderException {
+        Map<Integer, IdentityProvider> identityProviders = new HashMap<>();
+        try {
+            for (List<Integer> chunk : partition(identityProviderIds)) {
+                identityProviders.putAll(loadIdentityProviderGraphs("IDP.ID IN (" + inList(chunk.size()) + ")",
+                        (preparedStatement) -> bindInList(preparedStatement, 2, chunk)));
+            }
+        } catch (DataAccessException e) {
+            throw new IdentityProviderException("Error occurred loading the Identity providers by ID", e);
+        }
+        return identityProviders;
+    }
+
+    /**
+     * Loads the identity providers with the given names, along with their authenticators, provisioners and
+     * properties. The names are looked up with IN lists of the size the database accepts, using two queries per IN
+     * list.
+     *
+     * @param identityProviderNames the names of the IdPs.
+     * @return the IdPs found, keyed by their name.
+     * @throws IdentityProviderException when any database level exception occurs.
+     */
+    public Map<String, IdentityProvider> getIdentityProvidersByName(Collection<String> identityProviderNames)
+            throws IdentityProviderException {
+        Map<String, IdentityProvider> identityProviders = new HashMap<>();
+        try {
+            for (List<String> chunk : partition(identityProviderNames)) {
+                loadIdentityProviderGraphs("IDP.NAME IN (" + inList(chunk.size()) + ")",
+                        (preparedStatement) -> bindInList(preparedStatement, 2, chunk)).values().forEach(
+                        identityProvider -> identityProviders.put(identityProvider.getIdPMetadata().getName(),
+                                identityProvider));
+            }
+        } catch (DataAccessException e) {
+            throw new IdentityProviderException("Error occurred loading the Identity providers by name", e);
+        }
+        return identityProviders;
+    }
+
     public List<IdentityProvider> listIdentityProviderByName(String identityProviderName) {
         return null;
     }
 
     public void deleteIdentityProvider(int identityProviderId) throws IdentityProviderException {
-        final String DELETE_IDP_SQL = "DELETE FROM IDP WHERE ID=?";
+        final String DELETE_IDP_SQL = "DELETE FROM IDP WHERE ID=? AND TENANT_ID=?";
+        final String SOFT_DELETE_IDP_SQL = "UPDATE IDP SET IS_DELETED='1', VERSION=VERSION+1 "
+                + "WHERE ID=? AND TENANT_ID=? AND IS_DELETED='0'";
         try {
-            this.jdbcTemplate.executeUpdate(DELETE_IDP_SQL, preparedStatement -> {
+            this.jdbcTemplate.executeUpdate(softDelete ? SOFT_DELETE_IDP_SQL : DELETE_IDP_SQL, preparedStatement -> {
                 preparedStatement.setInt(1, identityProviderId);
+                preparedStatement.setInt(2, tenantId);
             });
         } catch (DataAccessException e) {
             throw new IdentityProviderException(
@@ -182,10 +492,13 @@ public class IdentityProviderDAO {
     }
 
     public void deleteIdentityProvider(String identityProviderName) throws IdentityProviderException {
-        final String DELETE_IDP_SQL = "DELETE FROM IDP WHERE NAME=?";
+        final String DELETE_IDP_SQL = "DELETE FROM IDP WHERE TENANT_ID=? AND NAME=?";
+        final String SOFT_DELETE_IDP_SQL = "UPDATE IDP SET IS_DELETED='1', VERSION=VERSION+1 "
+                + "WHERE TENANT_ID=? AND NAME=? AND IS_DELETED='0'";
         try {
-            this.jdbcTemplate.executeUpdate(DELETE_IDP_SQL, (preparedStatement -> {
-                preparedStatement.setString(1, identityProviderName);
+            this.jdbcTemplate.executeUpdate(softDelete ? SOFT_DELETE_IDP_SQL : DELETE_IDP_SQL, (preparedStatement -> {
+                preparedStatement.setInt(1, tenantId);
+                preparedStatement.setString(2, identityProviderName);
             }));
         } catch (DataAccessException e) {
             throw new IdentityProviderException(
@@ -194,11 +507,13 @@ public class IdentityProviderDAO {
     }
 
     public void enableIdentityProvider(int identityProviderId) throws IdentityProviderException {
-        final String ENABLE_IDP_SQL = "UPDATE IDP SET IS_ENABLED=? WHERE ID=?";
+        final String ENABLE_IDP_SQL = "UPDATE IDP SET IS_ENABLED=?, VERSION=VERSION+1 WHERE ID=? AND TENANT_ID=? "
+                + "AND IS_DELETED='0'";
         try {
             this.jdbcTemplate.executeUpdate(ENABLE_IDP_SQL, preparedStatement -> {
                 preparedStatement.setString(1, "1");
                 preparedStatement.setInt(2, identityProviderId);
+                preparedStatement.setInt(3, tenantId);
             });
         } catch (DataAccessException e) {
             throw new IdentityProviderException(
@@ -207,11 +522,13 @@ public class IdentityProviderDAO {
     }
 
     public void disableIdentityProvider(int identityProviderId) throws IdentityProviderException {
-        final String DISABLE_IDP_SQL = "UPDATE IDP SET IS_ENABLED=? WHERE ID=?";
+        final String DISABLE_IDP_SQL = "UPDATE IDP SET IS_ENABLED=?, VERSION=VERSION+1 WHERE ID=? AND TENANT_ID=? "
+                + "AND IS_DELETED='0'";
         try {
             this.jdbcTemplate.executeUpdate(DISABLE_IDP_SQL, preparedStatement -> {
                 preparedStatement.setString(1, "0");
                 preparedStatement.setInt(2, identityProviderId);
+                preparedStatement.setInt(3, tenantId);
             });
         } catch (DataAccessException e) {
             throw new IdentityProviderException(
@@ -221,11 +538,13 @@ public class IdentityProviderDAO {
     }
 
     public void enableIdentityProvider(String identityProviderName) throws IdentityProviderException {
-        final String ENABLE_IDP_SQL = "UPDATE IDP SET IS_ENABLED=? WHERE ID=?";
+        final String ENABLE_IDP_SQL = "UPDATE IDP SET IS_ENABLED=?, VERSION=VERSION+1 WHERE TENANT_ID=? AND NAME=? "
+                + "AND IS_DELETED='0'";
         try {
             this.jdbcTemplate.executeUpdate(ENABLE_IDP_SQL, preparedStatement -> {
                 preparedStatement.setString(1, "1");
-                preparedStatement.setString(1, identityProviderName);
+                preparedStatement.setInt(2, tenantId);
+                preparedStatement.setString(3, identityProviderName);
             });
         } catch (DataAccessException e) {
             throw new IdentityProviderException(
@@ -234,11 +553,13 @@ public class IdentityProviderDAO {
     }
 
     public void disableIdentityProvider(String identityProviderName) throws IdentityProviderException {
-        final String DISABLE_IDP_SQL = "UPDATE IDP SET IS_ENABLED=? WHERE ID=?";
+        final String DISABLE_IDP_SQL = "UPDATE IDP SET IS_ENABLED=?, VERSION=VERSION+1 WHERE TENANT_ID=? AND NAME=? "
+                + "AND IS_DELETED='0'";
         try {
             this.jdbcTemplate.executeUpdate(DISABLE_IDP_SQL, preparedStatement -> {
                 preparedStatement.setString(1, "0");
-                preparedStatement.setString(1, identityProviderName);
+                preparedStatement.setInt(2, tenantId);
+                preparedStatement.setString(3, identityProviderName);
             });
         } catch (DataAccessException e) {
             throw new IdentityProviderException(
@@ -247,14 +568,195 @@ public class IdentityProviderDAO {
 
     }
 
+    /**
+     * Returns the IDs of the identity providers of the tenant matching the name prefix, enabled and federation hub
+     * filters of the query. The cursor and the page size of the query are not applied.
+     *
+     * @param filter the filters to be matched.
+     * @return the IDs of the matching identity providers in ascending order.
+     * @throws IdentityProviderException when any database level exception occurs.
+     */
+    public List<Integer> getIdentityProviderIds(IdPListQuery filter) throws IdentityProviderException {
+        final String GET_IDP_IDS_SQL = "SELECT ID FROM IDP WHERE TENANT_ID=? AND IS_DELETED='0'";
+
+        List<String> filterValues = new ArrayList<>();
+        String filterCondition = buildFilterCondition(filter, filterValues);
+        try {
+            return this.jdbcTemplate.executeQuery(GET_IDP_IDS_SQL + filterCondition + " ORDER BY ID",
+                    (resultSet, rowNumber) -> resultSet.getInt(1),
+                    preparedStatement -> {
+                        preparedStatement.setInt(1, tenantId);
+                        bindFilterValues(preparedStatement, 2, filterValues);
+                    });
+        } catch (DataAccessException e) {
+            throw new IdentityProviderException("Error occurred in listing the IDs of the matching Identity providers",
+                    e);
+        }
+    }
+
+    /**
+     * Deletes the identity providers of the given IDs in a single transaction, issuing one statement for each chunk of
+     * IDs instead of one per identity provider.
+     *
+     * @param identityProviderIds the IDs of the identity providers to be deleted.
+     * @return the number of identity providers deleted.
+     * @throws IdentityProviderException when any database level exception occurs.
+     */
+    public int deleteIdentityProviders(Collection<Integer> identityProviderIds) throws IdentityProviderException {
+        final String DELETE_IDPS_SQL = "DELETE FROM IDP WHERE TENANT_ID=? AND ID IN ";
+        final String SOFT_DELETE_IDPS_SQL = "UPDATE IDP SET IS_DELETED='1', VERSION=VERSION+1 WHERE TENANT_ID=? "
+                + "AND IS_DELETED='0' AND ID IN ";
+
+        try {
+            return updateInChunks(softDelete ? SOFT_DELETE_IDPS_SQL : DELETE_IDPS_SQL, identityProviderIds, null);
+        } catch (DataAccessException e) {
+            throw new IdentityProviderException("Error occurred deleting the Identity providers by the given IDs", e);
+        }
+    }
+
+    /**
+     * Enables the identity providers of the given IDs in a single transaction, issuing one statement for each chunk of
+     * IDs instead of one per identity provider.
+     *
+     * @param identityProviderIds the IDs of the identity providers to be enabled.
+     * @return the number of identity providers updated.
+     * @throws IdentityProviderException when any database level exception occurs.
+     */
+    public int enableIdentityProviders(Collection<Integer> identityProviderIds) throws IdentityProviderException {
+        final String ENABLE_IDPS_SQL = "UPDATE IDP SET IS_ENABLED=?, VERSION=VERSION+1 WHERE TENANT_ID=? "
+                + "AND IS_DELETED='0' AND ID IN ";
+
+        try {
+            return updateInChunks(ENABLE_IDPS_SQL, identityProviderIds, IdentityProviderConstants.IS_TRUE_VALUE);
+        } catch (DataAccessException e) {
+            throw new IdentityProviderException("Error occurred \"Enabling\" the Identity providers by the given IDs",
+                    e);
+        }
+    }
+
+    /**
+     * Disables the identity providers of the given IDs in a single transaction, issuing one statement for each chunk
+     * of IDs instead of one per identity provider.
+     *
+     * @param identityProviderIds the IDs of the identity providers to be disabled.
+     * @return the number of identity providers updated.
+     * @throws IdentityProviderException when any database level exception occurs.
+     */
+    public int disableIdentityProviders(Collection<Integer> identityProviderIds) throws IdentityProviderException {
+        final String DISABLE_IDPS_SQL = "UPDATE IDP SET IS_ENABLED=?, VERSION=VERSION+1 WHERE TENANT_ID=? "
+                + "AND IS_DELETED='0' AND ID IN ";
+
+        try {
+            return updateInChunks(DISABLE_IDPS_SQL, identityProviderIds, IdentityProviderConstants.IS_FALSE_VALUE);
+        } catch (DataAccessException e) {
+            throw new IdentityProviderException("Error occurred \"Disabling\" the Identity providers by the given IDs",
+                    e);
+        }
+    }
+
+    /**
+     * Lists the tenant and ID of the enabled identity providers of all the tenants, the most recently created first.
+     * The (IS_ENABLED, IS_DELETED, ID, TENANT_ID) index is read backwards, hence only the rows returned are read, with
+     * no sort.
+     *
+     * @param limit the maximum number of identity providers to be returned.
+     * @return list of Pair of {Tenant ID, ID} of identity provider
+     * @throws IdentityProviderException when any database level exception occurs.
+     */
+    public List<Pair<Integer, Integer>> listEnabledIdentityProviderIds(int limit) throws IdentityProviderException {
+        final String GET_ENABLED_IDP_IDS_SQL = "SELECT TENANT_ID, ID FROM IDP WHERE IS_DELETED='0' AND IS_ENABLED=? "
+                + "ORDER BY ID DESC";
+
+        try {
+            return this.jdbcTemplate.executeQuery(GET_ENABLED_IDP_IDS_SQL,
+                    (resultSet, rowNumber) -> ImmutablePair.of(resultSet.getInt(1), resultSet.getInt(2)),
+                    preparedStatement -> {
+                        preparedStatement.setString(1, IdentityProviderConstants.IS_TRUE_VALUE);
+                        preparedStatement.setMaxRows(limit);
+                    });
+        } catch (DataAccessException e) {
+            throw new IdentityProviderException("Error occurred in listing the enabled Identity providers", e);
+        }
+    }
+
+    /**
+     * Lists the IDs of the soft deleted identity providers of all the tenants, which are yet to be purged.
+     *
+     * @param limit the maximum number of IDs to be returned.
+     * @return the IDs in ascending order.
+     * @throws IdentityProviderException when any database level exception occurs.
+     */
+    public List<Integer> listDeletedIdentityProviderIds(int limit) throws IdentityProviderException {
+        final String GET_DELETED_IDP_IDS_SQL = "SELECT ID FROM IDP WHERE IS_DELETED='1' ORDER BY ID";
+
+        try {
+            return this.jdbcTemplate.executeQuery(GET_DELETED_IDP_IDS_SQL,
+                    (resultSet, rowNumber) -> resultSet.getInt(1),
+                    preparedStatement -> preparedStatement.setMaxRows(limit));
+        } catch (DataAccessException e) {
+            throw new IdentityProviderException("Error occurred in listing the deleted Identity providers", e);
+        }
+    }
+
+    /**
+     * Removes a batch of the rows of a soft deleted identity provider. The rows of the largest child tables are removed
+     * first, at most the given number at a time, so that no statement holds locks on a large number of rows. The
+     * identity provider row itself is removed once only its authenticators and provisioning configs remain, which
+     * then go with it through the cascading foreign keys.
+     *
+     * @param identityProviderId the ID of the soft deleted identity provider, in any tenant.
+     * @param batchSize          the maximum number of child rows to be removed.
+     * @return the number of rows removed, which is 0 once the identity provider is fully purged.
+     * @throws IdentityProviderException when any database level exception occurs.
+     */
+    public int purgeDeletedIdentityProvider(int identityProviderId, int batchSize) throws IdentityProviderException {
+        final String GET_PROVISIONING_ENTITY_IDS_SQL = "SELECT ID FROM IDP_PROVISIONING_ENTITY "
+                + "WHERE PROVISIONING_CONFIG_ID IN (SELECT IDP_PROVISIONING_CONFIG.ID FROM IDP_PROVISIONING_CONFIG "
+                + "INNER JOIN IDP ON IDP.ID = IDP_PROVISIONING_CONFIG.IDP_ID WHERE IDP.ID=? AND IDP.IS_DELETED='1')";
+        final String DELETE_PROVISIONING_ENTITIES_SQL = "DELETE FROM IDP_PROVISIONING_ENTITY WHERE ID IN ";
+        final String GET_PROV_CONFIG_PROPERTY_IDS_SQL = "SELECT ID FROM IDP_PROV_CONFIG_PROPERTY "
+                + "WHERE PROVISIONING_CONFIG_ID IN (SELECT IDP_PROVISIONING_CONFIG.ID FROM IDP_PROVISIONING_CONFIG "
+                + "INNER JOIN IDP ON IDP.ID = IDP_PROVISIONING_CONFIG.IDP_ID WHERE IDP.ID=? AND IDP.IS_DELETED='1')";
+        final String DELETE_PROV_CONFIG_PROPERTIES_SQL = "DELETE FROM IDP_PROV_CONFIG_PROPERTY WHERE ID IN ";
+        final String GET_AUTHENTICATOR_PROPERTY_IDS_SQL = "SELECT ID FROM IDP_AUTHENTICATOR_PROPERTY "
+                + "WHERE AUTHENTICATOR_ID IN (SELECT IDP_AUTHENTICATOR.ID FROM IDP_AUTHENTICATOR "
+                + "INNER JOIN IDP ON IDP.ID = IDP_AUTHENTICATOR.IDP_ID WHERE IDP.ID=? AND IDP.IS_DELETED='1')";
+        final String DELETE_AUTHENTICATOR_PROPERTIES_SQL = "DELETE FROM IDP_AUTHENTICATOR_PROPERTY WHERE ID IN ";
+        final String DELETE_IDP_SQL = "DELETE FROM IDP WHERE ID=? AND IS_DELETED='1'";
+
+        try {
+            int purgedRows = purgeChildRows(GET_PROVISIONING_ENTITY_IDS_SQL, DELETE_PROVISIONING_ENTITIES_SQL,
+                    identityProviderId, batchSize);
+            if (purgedRows == 0) {
+                purgedRows = purgeChildRows(GET_PROV_CONFIG_PROPERTY_IDS_SQL, DELETE_PROV_CONFIG_PROPERTIES_SQL,
+                        identityProviderId, batchSize);
+            }
+            if (purgedRows == 0) {
+                purgedRows = purgeChildRows(GET_AUTHENTICATOR_PROPERTY_IDS_SQL, DELETE_AUTHENTICATOR_PROPERTIES_SQL,
+                        identityProviderId, batchSize);
+            }
+            if (purgedRows == 0) {
+                purgedRows = this.jdbcTemplate.executeUpdate(DELETE_IDP_SQL,
+                        preparedStatement -> preparedStatement.setInt(1, identityProviderId));
+            }
+            return purgedRows;
+        } catch (DataAccessException e) {
+            throw new IdentityProviderException(
+                    "Error occurred purging the deleted Identity provider by the given ID: " + identityProviderId, e);
+        }
+    }
+
     public String getIdPNameById(int idpId) throws IdentityProviderException {
-        final String GET_IDP_NAME_BY_ID_SQL = "SELECT NAME FROM IDP WHERE ID=?";
+        final String GET_IDP_NAME_BY_ID_SQL = "SELECT NAME FROM IDP WHERE ID=? AND TENANT_ID=? AND IS_DELETED='0'";
 
         String identityProviderName = null;
         try {
             identityProviderName = this.jdbcTemplate
                     .fetchSingleRecord(GET_IDP_NAME_BY_ID_SQL, (resultSet, rowNumber) -> resultSet.getString("NAME"),
-                            (preparedStatement -> preparedStatement.setInt(1, idpId)));
+                            (preparedStatement -> {
+                                preparedStatement.setInt(1, idpId);
+                                preparedStatement.setInt(2, tenantId);
+                            }));
         } catch (DataAccessException e) {
             throw new IdentityProviderException("Error retrieving the Identity provider Name by the given ID: " + idpId,
                     e);
@@ -265,98 +767,823 @@ public class IdentityProviderDAO {
     }
 
     public int getIdPIdByName(String idpName) throws IdentityProviderException {
-        final String GET_IDP_ID_BY_NAME_SQL = "SELECT ID FROM IDP WHERE NAME=?";
+        final String GET_IDP_ID_BY_NAME_SQL = "SELECT ID FROM IDP WHERE TENANT_ID=? AND NAME=? AND IS_DELETED='0'";
 
-        int identityProviderId = 0;
+        Integer identityProviderId;
         try {
             identityProviderId = this.jdbcTemplate
                     .fetchSingleRecord(GET_IDP_ID_BY_NAME_SQL, (resultSet, rowNumber) -> resultSet.getInt("Id"),
-                            (preparedStatement -> preparedStatement.setString(1, idpName)));
+                            (preparedStatement -> {
+                                preparedStatement.setInt(1, tenantId);
+                                preparedStatement.setString(2, idpName);
+                            }));
         } catch (DataAccessException e) {
             throw new IdentityProviderException(
                     "Error retrieving the Identity provider ID by the given Name: " + idpName, e);
         }
 
-        return identityProviderId;
+        return identityProviderId != null ? identityProviderId : 0;
+    }
+
+    /**
+     * Updates the stored identity provider to match the given one, which is identified by the ID of its metadata.
+     * The update is applied only when the stored identity provider is still at the version given in the metadata, and
+     * increments the version. No lock is held between reading the identity provider and writing it back, instead a
+     * concurrent modification in between is reported as a conflict.
+     * The given identity provider is compared with the stored one, and only the rows which differ are inserted,
+     * updated or deleted, in batches within a single transaction. Retained authenticators and provisioners keep
+     * their rows, hence the rows referring to them (e.g. provisioned entities) are not affected.
+     * An authentication or provisioning config given as null is left unchanged, e.g. that of an identity provider
+     * built with metadata only, whereas an empty one removes all the stored authenticators or provisioners.
+     *
+     * @param identityProvider the updated identity provider.
+     * @throws IdentityProviderConflictException when the IdP has been modified since the version of the metadata.
+     * @throws IdentityProviderException when there is no identity provider with the ID, or when any database level
+     * exception occurs.
+     */
+    public void updateIdentityProvider(IdentityProvider identityProvider) throws IdentityProviderException {
+        final String UPDATE_IDP_SQL = "UPDATE IDP SET NAME=?, DISPLAY_NAME=?, DESCRIPTION=?, HOME_REALM_ID=?, "
+                + "IS_FEDERATION_HUB=?, IS_ENABLED=?, VERSION=VERSION+1 WHERE ID=? AND TENANT_ID=? AND VERSION=? "
+                + "AND IS_DELETED='0'";
+
+        IdPMetadata idPMetadata = identityProvider.getIdPMetadata();
+        int identityProviderId = idPMetadata.getId();
+        UpdateOutcome outcome;
+        try {
+            outcome = this.jdbcTemplate.inTransaction(() -> {
+                // The versioned update of the IDP row comes first, so that the children are compared and written
+                // only when no one else has modified the identity provider.
+                int updateCount = this.jdbcTemplate.executeUpdate(UPDATE_IDP_SQL, preparedStatement -> {
+                    preparedStatement.setString(1, idPMetadata.getName());
+                    preparedStatement.setString(2, idPMetadata.getDisplayLabel());
+                    preparedStatement.setString(3, idPMetadata.getDescription());
+                    preparedStatement.setString(4, idPMetadata.getHomeRealmId());
+                    preparedStatement.setString(5, toFlagValue(idPMetadata.isFederationHub()));
+                    preparedStatement.setString(6, toFlagValue(identityProvider.isEnabled()));
+                    preparedStatement.setInt(7, identityProviderId);
+                    preparedStatement.setInt(8, tenantId);
+                    preparedStatement.setInt(9, idPMetadata.getVersion());
+                });
+                if (updateCount == 0) {
+                    return identityProviderExists(identityProviderId) ? UpdateOutcome.CONFLICT :
+                            UpdateOutcome.NOT_FOUND;
+                }
+
+                if (identityProvider.getAuthenticationConfig() != null) {
+                    updateAuthenticationConfig(identityProviderId, identityProvider.getAuthenticationConfig());
+                }
+                if (identityProvider.getProvisioningConfig() != null) {
+                    updateProvisioningConfig(identityProviderId, identityProvider.getProvisioningConfig());
+                }
+                return UpdateOutcome.UPDATED;
+            });
+        } catch (DataAccessException e) {
+            throw new IdentityProviderException(
+                    "Error occurred updating the Identity provider by the given ID: " + identityProviderId, e);
+        }
+        checkUpdateOutcome(outcome, identityProviderId, idPMetadata.getVersion());
     }
 
+    /**
+     * Updates the metadata of an identity provider, provided that it is still at the version the metadata was read
+     * from. The version is incremented with the update.
+     *
+     * @param identityProviderId the ID of the IdP.
+     * @param idPMetadata the updated metadata, carrying the version it was read from.
+     * @throws IdentityProviderConflictException when the IdP has been modified since the version of the metadata.
+     * @throws IdentityProviderException when any database level exception occurs.
+     */
     public void updateIdentityProviderMetaData(int identityProviderId, IdPMetadata idPMetadata)
             throws IdentityProviderException {
         final String UPDATE_IDP_METADATA_SQL = "UPDATE IDP SET NAME=? , DISPLAY_NAME=? , DESCRIPTION=? , "
-                + "HOME_REALM_ID=? , IS_FEDERATION_HUB=? WHERE ID=?";
+                + "HOME_REALM_ID=? , IS_FEDERATION_HUB=? , VERSION=VERSION+1 WHERE ID=? AND TENANT_ID=? AND VERSION=? "
+                + "AND IS_DELETED='0'";
 
+        boolean conflicted;
         try {
-            this.jdbcTemplate.executeUpdate(UPDATE_IDP_METADATA_SQL, preparedStatement -> {
-                preparedStatement.setString(1, idPMetadata.getName());
-                preparedStatement.setString(2, idPMetadata.getDisplayLabel());
-                preparedStatement.setString(3, idPMetadata.getDescription());
-                preparedStatement.setString(4, idPMetadata.getHomeRealmId());
-                preparedStatement.setString(5, idPMetadata.isFederationHub() ? "1" : "0");
-                preparedStatement.setInt(6, identityProviderId);
+            conflicted = this.jdbcTemplate.inTransaction(() -> {
+                int updateCount = this.jdbcTemplate.executeUpdate(UPDATE_IDP_METADATA_SQL, preparedStatement -> {
+                    preparedStatement.setString(1, idPMetadata.getName());
+                    preparedStatement.setString(2, idPMetadata.getDisplayLabel());
+                    preparedStatement.setString(3, idPMetadata.getDescription());
+                    preparedStatement.setString(4, idPMetadata.getHomeRealmId());
+                    preparedStatement.setString(5, toFlagValue(idPMetadata.isFederationHub()));
+                    preparedStatement.setInt(6, identityProviderId);
+                    preparedStatement.setInt(7, tenantId);
+                    preparedStatement.setInt(8, idPMetadata.getVersion());
+                });
+                return updateCount == 0 && identityProviderExists(identityProviderId);
             });
         } catch (DataAccessException e) {
             throw new IdentityProviderException(
                     "Error occurred updating meta data for the Identity provider by the given Name: " + idPMetadata
                             .getName(), e);
         }
-
+        if (conflicted) {
+            throw new IdentityProviderConflictException(identityProviderId, idPMetadata.getVersion());
+        }
     }
 
-    //ToDo after deciding the deployment model (file based or database based)
-    public void updateupdateIdPAuthenticationConfig(int identityProviderId, AuthenticationConfig authenticationConfig)
-            throws IdentityProviderException {
-//        authenticationConfig.getRequestedClaims();
-//        authenticationConfig.getAuthenticators();
-        final String UPDATE_IDP_METADATA_SQL = "UPDATE IDP SET NAME=? , DISPLAY_NAME=? , DESCRIPTION=? , "
-                + "HOME_REALM_ID=? , IS_FEDERATION_HUB=? WHERE ID=?";
-
+    /**
+     * Replaces the authenticators of an identity provider, provided that it is still at the given version. Only the
+     * rows which differ from the stored ones are written, and the version is incremented with the update.
+     *
+     * @param identityProviderId the ID of the IdP.
+     * @param version the version of the IdP the authentication config was read from.
+     * @param authenticationConfig the updated authentication config.
+     * @throws IdentityProviderConflictException when the IdP has been modified since the given version.
+     * @throws IdentityProviderException when there is no identity provider with the ID, or when any database level
+     * exception occurs.
+     */
+    public void updateIdPAuthenticationConfig(int identityProviderId, int version,
+            AuthenticationConfig authenticationConfig) throws IdentityProviderException {
+        UpdateOutcome outcome;
         try {
-            this.jdbcTemplate.executeUpdate(UPDATE_IDP_METADATA_SQL, preparedStatement -> {
-                preparedStatement.setInt(1, identityProviderId);
+            outcome = this.jdbcTemplate.inTransaction(() -> {
+                UpdateOutcome versionOutcome = incrementVersion(identityProviderId, version);
+                if (versionOutcome == UpdateOutcome.UPDATED) {
+                    updateAuthenticationConfig(identityProviderId, authenticationConfig);
+                }
+                return versionOutcome;
             });
         } catch (DataAccessException e) {
             throw new IdentityProviderException(
-                    "Error occurred updating meta data for the Identity provider by the given ID: "
+                    "Error occurred updating the authentication config of the Identity provider by the given ID: "
                             + identityProviderId, e);
         }
-
+        checkUpdateOutcome(outcome, identityProviderId, version);
     }
 
-    //ToDO after deciding the deployment model (file based or database based)
-    public void updateIdPProvisioningConfig(int identityProviderId, ProvisioningConfig provisioningConfig)
-            throws IdentityProviderException {
-
+    /**
+     * Replaces the outbound provisioners of an identity provider, provided that it is still at the given version.
+     * Only the rows which differ from the stored ones are written, and the version is incremented with the update.
+     *
+     * @param identityProviderId the ID of the IdP.
+     * @param version the version of the IdP the provisioning config was read from.
+     * @param provisioningConfig the updated provisioning config.
+     * @throws IdentityProviderConflictException when the IdP has been modified since the given version.
+     * @throws IdentityProviderException when there is no identity provider with the ID, or when any database level
+     * exception occurs.
+     */
+    public void updateIdPProvisioningConfig(int identityProviderId, int version,
+            ProvisioningConfig provisioningConfig) throws IdentityProviderException {
+        UpdateOutcome outcome;
+        try {
+            outcome = this.jdbcTemplate.inTransaction(() -> {
+                UpdateOutcome versionOutcome = incrementVersion(identityProviderId, version);
+                if (versionOutcome == UpdateOutcome.UPDATED) {
+                    updateProvisioningConfig(identityProviderId, provisioningConfig);
+                }
+                return versionOutcome;
+            });
+        } catch (DataAccessException e) {
+            throw new IdentityProviderException(
+                    "Error occurred updating the provisioning config of the Identity provider by the given ID: "
+                            + identityProviderId, e);
+        }
+        checkUpdateOutcome(outcome, identityProviderId, version);
     }
 
-    //ToDO after deciding the deployment model (file based or database based)
-    public IdentityProvider getIdPByAuthenticatorProperty(String key, String value) throws IdentityProviderException{
-        final String GET_IDP_BY_AUTHENTICATOR_PROPERTY = "SELECT idp.ID, idp.NAME, idp.IS_PRIMARY, " +
-                "idp.HOME_REALM_ID, " +
-                "idp.CERTIFICATE, idp.ALIAS, idp.INBOUND_PROV_ENABLED, idp.INBOUND_PROV_USER_STORE_ID, " +
-                "idp.USER_CLAIM_URI, " +
-                "idp.ROLE_CLAIM_URI, idp.DEFAULT_AUTHENTICATOR_NAME, idp.DEFAULT_PRO_CONNECTOR_NAME, " +
-                "idp.DESCRIPTION, " +
-                "idp.IS_FEDERATION_HUB, idp.IS_LOCAL_CLAIM_DIALECT, idp.PROVISIONING_ROLE, idp.IS_ENABLED, " +
-                "idp.DISPLAY_NAME " +
-                "FROM IDP idp INNER JOIN  IDP_AUTHENTICATOR idp_auth ON idp.ID = idp_auth.IDP_ID INNER JOIN " +
-                "IDP_AUTHENTICATOR_PROPERTY idp_auth_pro ON idp_auth.ID = idp_auth_pro.AUTHENTICATOR_ID " +
-                "WHERE  idp_auth_pro.PROPERTY_KEY =?  AND idp_auth_pro.PROPERTY_VALUE = ? ";
+    /**
+     * Loads the identity provider of the tenant which has an authenticator with the given property value, along with
+     * its authenticators, provisioners and their properties. The (PROPERTY_KEY, VALUE_HASH) index is probed with the
+     * hash of the value, and the full value is compared only on the rows matched.
+     *
+     * @param key the name of the authenticator property.
+     * @param value the value of the authenticator property.
+     * @return the IdP, or null when no IdP of the tenant has the property value. When several IdPs have it, the one
+     * with the lowest ID.
+     * @throws IdentityProviderException when any database level exception occurs.
+     */
+    public IdentityProvider getIdPByAuthenticatorProperty(String key, String value) throws IdentityProviderException {
+        final String AUTHENTICATOR_PROPERTY_CONDITION = "IDP.ID IN (SELECT IDP_AUTHENTICATOR.IDP_ID FROM "
+                + "IDP_AUTHENTICATOR INNER JOIN IDP_AUTHENTICATOR_PROPERTY ON IDP_AUTHENTICATOR.ID = "
+                + "IDP_AUTHENTICATOR_PROPERTY.AUTHENTICATOR_ID WHERE IDP_AUTHENTICATOR_PROPERTY.PROPERTY_KEY=? AND "
+                + "IDP_AUTHENTICATOR_PROPERTY.VALUE_HASH=? AND IDP_AUTHENTICATOR_PROPERTY.PROPERTY_VALUE=?)";
 
-        IdentityProvider identityProvider = null;
         try {
-            identityProvider = this.jdbcTemplate.fetchSingleRecord(GET_IDP_BY_AUTHENTICATOR_PROPERTY, (resultSet, rowNumber) -> {
-                IdentityProvider.IdentityProviderBuilder identityProviderBuilder = ResidentIdentityProvider
-                        .newBuilder(resultSet.getInt("ID"), resultSet.getString("NAME"));
-                return identityProviderBuilder.build();
-            }, (preparedStatement) -> {
-                preparedStatement.setString(1, key);
-                preparedStatement.setString(2, value);
-            });
+            Map<Integer, IdentityProvider> identityProviders = loadIdentityProviderGraphs(
+                    AUTHENTICATOR_PROPERTY_CONDITION, (preparedStatement) -> {
+                        preparedStatement.setString(2, key);
+                        preparedStatement.setString(3, IdentityProviderUtil.hashPropertyValue(value));
+                        preparedStatement.setString(4, value);
+                    });
+            return identityProviders.isEmpty() ? null :
+                    identityProviders.get(Collections.min(identityProviders.keySet()));
         } catch (DataAccessException e) {
             throw new IdentityProviderException(
                     "Error occurred retrieving the Identity provider by key: " + key + " value:" + value, e);
         }
+    }
 
-        return identityProvider;
+    /**
+     * Fills the value hash of the authenticator properties of all the tenants which were stored before the hash was
+     * introduced, so that {@link #getIdPByAuthenticatorProperty(String, String)} finds them. The rows are read in the
+     * order of their IDs and updated in batches; a row updated concurrently keeps the hash written with its value.
+     *
+     * @param batchSize the number of rows updated per batch.
+     * @return the number of properties hashed.
+     * @throws IdentityProviderException when any database level exception occurs.
+     */
+    public int backfillAuthenticatorPropertyHashes(int batchSize) throws IdentityProviderException {
+        final String GET_UNHASHED_PROPERTIES_SQL = "SELECT ID, PROPERTY_VALUE FROM IDP_AUTHENTICATOR_PROPERTY "
+                + "WHERE ID>? AND VALUE_HASH IS NULL AND PROPERTY_VALUE IS NOT NULL ORDER BY ID";
+        final String UPDATE_VALUE_HASH_SQL = "UPDATE IDP_AUTHENTICATOR_PROPERTY SET VALUE_HASH=? WHERE ID=? "
+                + "AND PROPERTY_VALUE=? AND VALUE_HASH IS NULL";
+
+        int updatedRows = 0;
+        int lastId = 0;
+        try {
+            List<Pair<Integer, String>> properties;
+            do {
+                int fromId = lastId;
+                properties = this.jdbcTemplate.executeQuery(GET_UNHASHED_PROPERTIES_SQL,
+                        (resultSet, rowNumber) -> ImmutablePair.of(resultSet.getInt(1), resultSet.getString(2)),
+                        preparedStatement -> {
+                            preparedStatement.setInt(1, fromId);
+                            preparedStatement.setMaxRows(batchSize);
+                        });
+                if (properties.isEmpty()) {
+                    break;
+                }
+                this.jdbcTemplate.executeBatch(UPDATE_VALUE_HASH_SQL, properties, (preparedStatement, property) -> {
+                    preparedStatement.setString(1, IdentityProviderUtil.hashPropertyValue(property.getRight()));
+                    preparedStatement.setInt(2, property.getLeft());
+                    preparedStatement.setString(3, property.getRight());
+                }, false);
+                updatedRows += properties.size();
+                lastId = properties.get(properties.size() - 1).getLeft();
+            } while (properties.size() == batchSize);
+        } catch (DataAccessException e) {
+            throw new IdentityProviderException("Error occurred filling the value hashes of authenticator properties",
+                    e);
+        }
+        return updatedRows;
+    }
+
+    /**
+     * Inserts the authenticators of an identity provider and their properties, using one batch per table.
+     */
+    private void addAuthenticators(int identityProviderId, Collection<AuthenticatorConfig> authenticators)
+            throws DataAccessException {
+        final String INSERT_IDP_AUTHENTICATOR_SQL = "INSERT INTO IDP_AUTHENTICATOR (IDP_ID, NAME, IS_ENABLED) "
+                + "VALUES (?,?,?)";
+        final String GET_IDP_AUTHENTICATOR_IDS_SQL = "SELECT ID, NAME FROM IDP_AUTHENTICATOR WHERE IDP_ID=?";
+        final String INSERT_IDP_AUTHENTICATOR_PROPERTY_SQL = "INSERT INTO IDP_AUTHENTICATOR_PROPERTY "
+                + "(AUTHENTICATOR_ID, PROPERTY_KEY, PROPERTY_VALUE, VALUE_HASH) VALUES (?,?,?,?)";
+
+        if (authenticators.isEmpty()) {
+            return;
+        }
+        this.jdbcTemplate.executeBatch(INSERT_IDP_AUTHENTICATOR_SQL, authenticators,
+                (preparedStatement, authenticator) -> {
+                    preparedStatement.setInt(1, identityProviderId);
+                    preparedStatement.setString(2, authenticator.getName());
+                    preparedStatement.setString(3, authenticator.isEnabled() ?
+                            IdentityProviderConstants.IS_TRUE_VALUE : IdentityProviderConstants.IS_FALSE_VALUE);
+                }, false);
+
+        Map<String, Integer> authenticatorIds = getChildIds(GET_IDP_AUTHENTICATOR_IDS_SQL, identityProviderId);
+        List<Triple<Integer, String, Object>> properties = new ArrayList<>();
+        for (AuthenticatorConfig authenticator : authenticators) {
+            int authenticatorId = authenticatorIds.get(authenticator.getName());
+            authenticator.getProperties().forEach(
+                    (key, value) -> properties.add(ImmutableTriple.of(authenticatorId, key, value)));
+        }
+        this.jdbcTemplate.executeBatch(INSERT_IDP_AUTHENTICATOR_PROPERTY_SQL, properties,
+                (preparedStatement, property) -> {
+                    preparedStatement.setInt(1, property.getLeft());
+                    preparedStatement.setString(2, property.getMiddle());
+                    String value = Objects.toString(property.getRight(), null);
+                    preparedStatement.setString(3, value);
+                    preparedStatement.setString(4, IdentityProviderUtil.hashPropertyValue(value));
+                }, false);
+    }
+
+    /**
+     * Inserts the outbound provisioners of an identity provider and their properties, using one batch per table.
+     */
+    private void addProvisioners(int identityProviderId, Collection<ProvisionerConfig> provisioners)
+            throws DataAccessException {
+        final String INSERT_IDP_PROVISIONING_CONFIG_SQL = "INSERT INTO IDP_PROVISIONING_CONFIG "
+                + "(IDP_ID, PROVISIONING_CONNECTOR_TYPE, IS_ENABLED) VALUES (?,?,?)";
+        final String GET_IDP_PROVISIONING_CONFIG_IDS_SQL = "SELECT ID, PROVISIONING_CONNECTOR_TYPE "
+                + "FROM IDP_PROVISIONING_CONFIG WHERE IDP_ID=?";
+        final String INSERT_IDP_PROV_CONFIG_PROPERTY_SQL = "INSERT INTO IDP_PROV_CONFIG_PROPERTY "
+                + "(PROVISIONING_CONFIG_ID, PROPERTY_KEY, PROPERTY_VALUE, PROPERTY_TYPE) VALUES (?,?,?,?)";
+
+        if (provisioners.isEmpty()) {
+            return;
+        }
+        this.jdbcTemplate.executeBatch(INSERT_IDP_PROVISIONING_CONFIG_SQL, provisioners,
+                (preparedStatement, provisioner) -> {
+                    preparedStatement.setInt(1, identityProviderId);
+                    preparedStatement.setString(2, provisioner.getName());
+                    preparedStatement.setString(3, provisioner.isEnabled() ?
+                            IdentityProviderConstants.IS_TRUE_VALUE : IdentityProviderConstants.IS_FALSE_VALUE);
+                }, false);
+
+        Map<String, Integer> provisionerIds = getChildIds(GET_IDP_PROVISIONING_CONFIG_IDS_SQL, identityProviderId);
+        List<Triple<Integer, String, Object>> properties = new ArrayList<>();
+        for (ProvisionerConfig provisioner : provisioners) {
+            int provisionerId = provisionerIds.get(provisioner.getName());
+            provisioner.getProperties().forEach(
+                    (key, value) -> properties.add(ImmutableTriple.of(provisionerId, key, value)));
+        }
+        this.jdbcTemplate.executeBatch(INSERT_IDP_PROV_CONFIG_PROPERTY_SQL, properties,
+                (preparedStatement, property) -> {
+                    preparedStatement.setInt(1, property.getLeft());
+                    preparedStatement.setString(2, property.getMiddle());
+                    preparedStatement.setString(3, Objects.toString(property.getRight(), null));
+                    preparedStatement.setString(4, PROPERTY_TYPE_STRING);
+                }, false);
+    }
+
+    /**
+     * Reads the IdP rows of the tenant matching the given condition joined with their authenticators and the
+     * properties, followed by the provisioners of the IdPs found joined with their properties.
+     * The tenant is bound as the first parameter, hence the filter binds the parameters of the condition from 2.
+     */
+    private Map<Integer, IdentityProvider> loadIdentityProviderGraphs(String idpCondition, QueryFilter idpFilter)
+            throws DataAccessException {
+        final String GET_IDP_WITH_AUTHENTICATORS_SQL = "SELECT IDP.ID, IDP.NAME, IDP.DISPLAY_NAME, IDP.DESCRIPTION, "
+                + "IDP.IS_FEDERATION_HUB, IDP.IS_ENABLED, IDP.HOME_REALM_ID, IDP.VERSION, "
+                + "IDP_AUTHENTICATOR.ID AS AUTHENTICATOR_ID, IDP_AUTHENTICATOR.NAME AS AUTHENTICATOR_NAME, "
+                + "IDP_AUTHENTICATOR.IS_ENABLED AS AUTHENTICATOR_ENABLED, "
+                + "IDP_AUTHENTICATOR_PROPERTY.PROPERTY_KEY, IDP_AUTHENTICATOR_PROPERTY.PROPERTY_VALUE FROM IDP "
+                + "LEFT JOIN IDP_AUTHENTICATOR ON IDP.ID = IDP_AUTHENTICATOR.IDP_ID "
+                + "LEFT JOIN IDP_AUTHENTICATOR_PROPERTY ON IDP_AUTHENTICATOR.ID = "
+                + "IDP_AUTHENTICATOR_PROPERTY.AUTHENTICATOR_ID WHERE IDP.TENANT_ID=? AND IDP.IS_DELETED='0' AND ";
+        final String GET_IDP_PROVISIONERS_SQL = "SELECT IDP_PROVISIONING_CONFIG.IDP_ID, IDP_PROVISIONING_CONFIG.ID, "
+                + "IDP_PROVISIONING_CONFIG.PROVISIONING_CONNECTOR_TYPE, IDP_PROVISIONING_CONFIG.IS_ENABLED, "
+                + "IDP_PROV_CONFIG_PROPERTY.PROPERTY_KEY, IDP_PROV_CONFIG_PROPERTY.PROPERTY_VALUE "
+                + "FROM IDP_PROVISIONING_CONFIG LEFT JOIN IDP_PROV_CONFIG_PROPERTY ON IDP_PROVISIONING_CONFIG.ID = "
+                + "IDP_PROV_CONFIG_PROPERTY.PROVISIONING_CONFIG_ID WHERE IDP_PROVISIONING_CONFIG.IDP_ID IN ";
+
+        Map<Integer, IdentityProviderGraph> graphs = this.jdbcTemplate.query(
+                GET_IDP_WITH_AUTHENTICATORS_SQL + idpCondition,
+                new GroupingResultSetExtractor<>((resultSet, rowNumber) -> resultSet.getInt("ID"),
+                        (resultSet, rowNumber) -> new IdentityProviderGraph(
+                                FederatedIdentityProvider.newBuilder(resultSet.getInt("ID"),
+                                        resultSet.getString("NAME"))
+                                        .setDisplayLabel(resultSet.getString("DISPLAY_NAME"))
+                                        .setDescription(resultSet.getString("DESCRIPTION"))
+                                        .setIsFederationHub(resultSet.getBoolean("IS_FEDERATION_HUB"))
+                                        .setEnabled(resultSet.getBoolean("IS_ENABLED"))
+                                        .setHomeRealmId(resultSet.getString("HOME_REALM_ID"))
+                                        .setVersion(resultSet.getInt("VERSION"))),
+                        GroupingResultSetExtractor.groupChildren(IdentityProviderGraph::getAuthenticators,
+                                (resultSet, rowNumber) -> getNullableInt(resultSet, "AUTHENTICATOR_ID"),
+                                (resultSet, rowNumber) -> new AuthenticatorConfig.AuthenticatorConfigBuilder(
+                                        resultSet.getString("AUTHENTICATOR_NAME"))
+                                        .setEnabled(resultSet.getBoolean("AUTHENTICATOR_ENABLED")),
+                                (authenticator, resultSet, rowNumber) -> {
+                                    String key = resultSet.getString("PROPERTY_KEY");
+                                    if (key != null) {
+                                        authenticator.addProperty(key, resultSet.getString("PROPERTY_VALUE"));
+                                    }
+                                })), (preparedStatement) -> {
+                    preparedStatement.setInt(1, tenantId);
+                    idpFilter.filter(preparedStatement);
+                });
+        if (graphs.isEmpty()) {
+            return Collections.emptyMap();
+        }
+
+        List<Integer> identityProviderIds = new ArrayList<>(graphs.keySet());
+        this.jdbcTemplate.query(GET_IDP_PROVISIONERS_SQL + "(" + inList(identityProviderIds.size()) + ")",
+                new GroupingResultSetExtractor<>((resultSet, rowNumber) -> resultSet.getInt("IDP_ID"),
+                        (resultSet, rowNumber) -> graphs.get(resultSet.getInt("IDP_ID")),
+                        GroupingResultSetExtractor.groupChildren(IdentityProviderGraph::getProvisioners,
+                                (resultSet, rowNumber) -> resultSet.getInt("ID"),
+                                (resultSet, rowNumber) -> new ProvisionerConfig.ProvisionerConfigBuilder(
+                                        resultSet.getString("PROVISIONING_CONNECTOR_TYPE"))
+                                        .setEnabled(resultSet.getBoolean("IS_ENABLED")),
+                                (provisioner, resultSet, rowNumber) -> {
+                                    String key = resultSet.getString("PROPERTY_KEY");
+                                    if (key != null) {
+                                        provisioner.addProperty(key, resultSet.getString("PROPERTY_VALUE"));
+                                    }
+                                })),
+                (preparedStatement) -> bindInList(preparedStatement, 1, identityProviderIds));
+
+        Map<Integer, IdentityProvider> identityProviders = new LinkedHashMap<>();
+        graphs.forEach((identityProviderId, graph) -> identityProviders.put(identityProviderId, graph.build()));
+        return identityProviders;
+    }
+
+    /**
+     * Splits the distinct values into chunks no longer than the IN lists accepted by the database. The chunk size is a
+     * power of two, so that the padding of {@link #inList(int)} stays within the limit.
+     */
+    private <T> List<List<T>> partition(Collection<T> values) throws DataAccessException {
+        List<T> distinctValues = new ArrayList<>(new LinkedHashSet<>(values));
+        int chunkSize = Integer.highestOneBit(this.jdbcTemplate.getMaxInListSize());
+        List<List<T>> chunks = new ArrayList<>();
+        for (int i = 0; i < distinctValues.size(); i += chunkSize) {
+            chunks.add(distinctValues.subList(i, Math.min(i + chunkSize, distinctValues.size())));
+        }
+        return chunks;
+    }
+
+    /**
+     * Returns the placeholders of an IN list holding the given number of values. The list is padded to the next power
+     * of two, so that only a few distinct statements are prepared and cached for the IN lists of any length.
+     */
+    private String inList(int size) {
+        return String.join(",", Collections.nCopies(inListSize(size), "?"));
+    }
+
+    private int inListSize(int size) {
+        return size <= 1 ? 1 : Integer.highestOneBit(size - 1) << 1;
+    }
+
+    /**
+     * Binds the values to the placeholders created by {@link #inList(int)}, repeating the last value in the padding.
+     */
+    private void bindInList(PreparedStatement preparedStatement, int firstIndex, List<?> values) throws SQLException {
+        int size = inListSize(values.size());
+        for (int i = 0; i < size; i++) {
+            preparedStatement.setObject(firstIndex + i, values.get(Math.min(i, values.size() - 1)));
+        }
+    }
+
+    /**
+     * Runs the statement once for each chunk of the IDs within one transaction. The statement takes the optional
+     * leading value, then the tenant ID, and ends with the IN keyword to which the list of IDs is appended.
+     *
+     * @return the total number of rows affected.
+     */
+    private int updateInChunks(String query, Collection<Integer> identityProviderIds, String leadingValue)
+            throws DataAccessException {
+        if (identityProviderIds.isEmpty()) {
+            return 0;
+        }
+        return this.jdbcTemplate.inTransaction(() -> {
+            int affectedRows = 0;
+            for (List<Integer> chunk : partition(identityProviderIds)) {
+                affectedRows += this.jdbcTemplate.executeUpdate(query + "(" + inList(chunk.size()) + ")",
+                        preparedStatement -> {
+                            int parameterIndex = 1;
+                            if (leadingValue != null) {
+                                preparedStatement.setString(parameterIndex++, leadingValue);
+                            }
+                            preparedStatement.setInt(parameterIndex++, tenantId);
+                            bindInList(preparedStatement, parameterIndex, chunk);
+                        });
+            }
+            return affectedRows;
+        });
+    }
+
+    /**
+     * Removes up to the given number of child rows, selected by the query on the ID of the identity provider, through
+     * a single delete by their primary keys. The number of rows selected is capped by the maximum rows of the
+     * statement, so that the query needs no dialect specific row limit.
+     */
+    private int purgeChildRows(String selectQuery, String deleteQuery, int identityProviderId, int batchSize)
+            throws DataAccessException {
+        List<Integer> childIds = this.jdbcTemplate.executeQuery(selectQuery,
+                (resultSet, rowNumber) -> resultSet.getInt(1),
+                preparedStatement -> {
+                    preparedStatement.setInt(1, identityProviderId);
+                    preparedStatement.setMaxRows(batchSize);
+                });
+        int purgedRows = 0;
+        for (List<Integer> chunk : partition(childIds)) {
+            purgedRows += this.jdbcTemplate.executeUpdate(deleteQuery + "(" + inList(chunk.size()) + ")",
+                    preparedStatement -> bindInList(preparedStatement, 1, chunk));
+        }
+        return purgedRows;
+    }
+
+    private Integer getNullableInt(ResultSet resultSet, String column) throws SQLException {
+        int value = resultSet.getInt(column);
+        return resultSet.wasNull() ? null : value;
+    }
+
+    /**
+     * Loads the stored authenticators or provisioners of an identity provider along with their properties, keyed by
+     * name. The query needs to return ID, NAME, IS_ENABLED, PROPERTY_ID, PROPERTY_KEY and PROPERTY_VALUE columns.
+     */
+    private Map<String, StoredChild> getStoredChildren(String query, int identityProviderId)
+            throws DataAccessException {
+        return this.jdbcTemplate.query(query,
+                new GroupingResultSetExtractor<String, StoredChild>(
+                        (resultSet, rowNumber) -> resultSet.getString("NAME"),
+                        (resultSet, rowNumber) -> new StoredChild(resultSet.getInt("ID"),
+                                resultSet.getBoolean("IS_ENABLED")),
+                        (storedChild, resultSet, rowNumber) -> {
+                            Integer propertyId = getNullableInt(resultSet, "PROPERTY_ID");
+                            if (propertyId != null) {
+                                storedChild.properties.put(resultSet.getString("PROPERTY_KEY"),
+                                        ImmutablePair.of(propertyId, resultSet.getString("PROPERTY_VALUE")));
+                            }
+                        }),
+                (preparedStatement) -> preparedStatement.setInt(1, identityProviderId));
+    }
+
+    /**
+     * Compares the stored children of an identity provider with the given ones, which are keyed by name and carry
+     * their enabled state and properties.
+     */
+    private ChildDiff diffChildren(Map<String, StoredChild> storedChildren,
+            Map<String, Pair<Boolean, Map<String, Object>>> children) {
+        ChildDiff diff = new ChildDiff();
+        storedChildren.forEach((name, storedChild) -> {
+            if (!children.containsKey(name)) {
+                diff.removedChildIds.add(storedChild.id);
+            }
+        });
+        children.forEach((name, child) -> {
+            StoredChild storedChild = storedChildren.get(name);
+            if (storedChild == null) {
+                diff.addedChildren.add(name);
+                return;
+            }
+            if (storedChild.enabled != child.getLeft()) {
+                diff.toggledChildren.add(ImmutablePair.of(storedChild.id, child.getLeft()));
+            }
+            storedChild.properties.forEach((key, storedProperty) -> {
+                if (!child.getRight().containsKey(key)) {
+                    diff.removedPropertyIds.add(storedProperty.getLeft());
+                }
+            });
+            child.getRight().forEach((key, value) -> {
+                Pair<Integer, String> storedProperty = storedChild.properties.get(key);
+                String stringValue = Objects.toString(value, null);
+                if (storedProperty == null) {
+                    diff.addedProperties.add(ImmutableTriple.of(storedChild.id, key, stringValue));
+                } else if (!Objects.equals(stringValue, storedProperty.getRight())) {
+                    diff.updatedProperties.add(ImmutablePair.of(storedProperty.getLeft(), stringValue));
+                }
+            });
+        });
+        return diff;
+    }
+
+    /**
+     * Increments the version of an identity provider, provided that it is still at the given version.
+     */
+    private UpdateOutcome incrementVersion(int identityProviderId, int version) throws DataAccessException {
+        final String UPDATE_IDP_VERSION_SQL = "UPDATE IDP SET VERSION=VERSION+1 WHERE ID=? AND TENANT_ID=? "
+                + "AND VERSION=? AND IS_DELETED='0'";
+
+        int updateCount = this.jdbcTemplate.executeUpdate(UPDATE_IDP_VERSION_SQL, preparedStatement -> {
+            preparedStatement.setInt(1, identityProviderId);
+            preparedStatement.setInt(2, tenantId);
+            preparedStatement.setInt(3, version);
+        });
+        if (updateCount == 0) {
+            return identityProviderExists(identityProviderId) ? UpdateOutcome.CONFLICT : UpdateOutcome.NOT_FOUND;
+        }
+        return UpdateOutcome.UPDATED;
+    }
+
+    private void checkUpdateOutcome(UpdateOutcome outcome, int identityProviderId, int version)
+            throws IdentityProviderException {
+        if (outcome == UpdateOutcome.CONFLICT) {
+            throw new IdentityProviderConflictException(identityProviderId, version);
+        } else if (outcome == UpdateOutcome.NOT_FOUND) {
+            throw new IdentityProviderException("No Identity provider found by the given ID: " + identityProviderId);
+        }
+    }
+
+    /**
+     * Compares the stored authenticators of an identity provider with the given ones, and writes the difference.
+     */
+    private void updateAuthenticationConfig(int identityProviderId, AuthenticationConfig authenticationConfig)
+            throws DataAccessException {
+        final String GET_STORED_AUTHENTICATORS_SQL = "SELECT IDP_AUTHENTICATOR.ID, IDP_AUTHENTICATOR.NAME, "
+                + "IDP_AUTHENTICATOR.IS_ENABLED, IDP_AUTHENTICATOR_PROPERTY.ID AS PROPERTY_ID, "
+                + "IDP_AUTHENTICATOR_PROPERTY.PROPERTY_KEY, IDP_AUTHENTICATOR_PROPERTY.PROPERTY_VALUE "
+                + "FROM IDP_AUTHENTICATOR LEFT JOIN IDP_AUTHENTICATOR_PROPERTY ON IDP_AUTHENTICATOR.ID = "
+                + "IDP_AUTHENTICATOR_PROPERTY.AUTHENTICATOR_ID WHERE IDP_AUTHENTICATOR.IDP_ID=?";
+
+        Collection<AuthenticatorConfig> authenticators = authenticationConfig.getAuthenticators();
+        ChildDiff authenticatorDiff = diffChildren(getStoredChildren(GET_STORED_AUTHENTICATORS_SQL, identityProviderId),
+                authenticators.stream().collect(Collectors.toMap(AuthenticatorConfig::getName,
+                        authenticator -> ImmutablePair.of(authenticator.isEnabled(), authenticator.getProperties()),
+                        (first, second) -> second, LinkedHashMap::new)));
+        updateAuthenticators(identityProviderId, authenticatorDiff, authenticators.stream()
+                .filter(authenticator -> authenticatorDiff.addedChildren.contains(authenticator.getName()))
+                .collect(Collectors.toList()));
+    }
+
+    /**
+     * Compares the stored provisioners of an identity provider with the given ones, and writes the difference.
+     */
+    private void updateProvisioningConfig(int identityProviderId, ProvisioningConfig provisioningConfig)
+            throws DataAccessException {
+        final String GET_STORED_PROVISIONERS_SQL = "SELECT IDP_PROVISIONING_CONFIG.ID, "
+                + "IDP_PROVISIONING_CONFIG.PROVISIONING_CONNECTOR_TYPE AS NAME, IDP_PROVISIONING_CONFIG.IS_ENABLED, "
+                + "IDP_PROV_CONFIG_PROPERTY.ID AS PROPERTY_ID, IDP_PROV_CONFIG_PROPERTY.PROPERTY_KEY, "
+                + "IDP_PROV_CONFIG_PROPERTY.PROPERTY_VALUE FROM IDP_PROVISIONING_CONFIG "
+                + "LEFT JOIN IDP_PROV_CONFIG_PROPERTY ON IDP_PROVISIONING_CONFIG.ID = "
+                + "IDP_PROV_CONFIG_PROPERTY.PROVISIONING_CONFIG_ID WHERE IDP_PROVISIONING_CONFIG.IDP_ID=?";
+
+        Collection<ProvisionerConfig> provisioners = provisioningConfig.getProvisioners();
+        ChildDiff provisionerDiff = diffChildren(getStoredChildren(GET_STORED_PROVISIONERS_SQL, identityProviderId),
+                provisioners.stream().collect(Collectors.toMap(ProvisionerConfig::getName,
+                        provisioner -> ImmutablePair.of(provisioner.isEnabled(), provisioner.getProperties()),
+                        (first, second) -> second, LinkedHashMap::new)));
+        updateProvisioners(identityProviderId, provisionerDiff, provisioners.stream()
+                .filter(provisioner -> provisionerDiff.addedChildren.contains(provisioner.getName()))
+                .collect(Collectors.toList()));
+    }
+
+    private void updateAuthenticators(int identityProviderId, ChildDiff diff,
+            Collection<AuthenticatorConfig> addedAuthenticators) throws DataAccessException {
+        final String DELETE_IDP_AUTHENTICATOR_SQL = "DELETE FROM IDP_AUTHENTICATOR WHERE ID=?";
+        final String UPDATE_IDP_AUTHENTICATOR_SQL = "UPDATE IDP_AUTHENTICATOR SET IS_ENABLED=? WHERE ID=?";
+        final String DELETE_IDP_AUTHENTICATOR_PROPERTY_SQL = "DELETE FROM IDP_AUTHENTICATOR_PROPERTY WHERE ID=?";
+        final String UPDATE_IDP_AUTHENTICATOR_PROPERTY_SQL = "UPDATE IDP_AUTHENTICATOR_PROPERTY "
+                + "SET PROPERTY_VALUE=?, VALUE_HASH=? WHERE ID=?";
+        final String INSERT_IDP_AUTHENTICATOR_PROPERTY_SQL = "INSERT INTO IDP_AUTHENTICATOR_PROPERTY "
+                + "(AUTHENTICATOR_ID, PROPERTY_KEY, PROPERTY_VALUE, VALUE_HASH) VALUES (?,?,?,?)";
+
+        this.jdbcTemplate.executeBatch(DELETE_IDP_AUTHENTICATOR_SQL, diff.removedChildIds,
+                (preparedStatement, id) -> preparedStatement.setInt(1, id), false);
+        this.jdbcTemplate.executeBatch(UPDATE_IDP_AUTHENTICATOR_SQL, diff.toggledChildren,
+                (preparedStatement, authenticator) -> {
+                    preparedStatement.setString(1, toFlagValue(authenticator.getRight()));
+                    preparedStatement.setInt(2, authenticator.getLeft());
+                }, false);
+        this.jdbcTemplate.executeBatch(DELETE_IDP_AUTHENTICATOR_PROPERTY_SQL, diff.removedPropertyIds,
+                (preparedStatement, id) -> preparedStatement.setInt(1, id), false);
+        this.jdbcTemplate.executeBatch(UPDATE_IDP_AUTHENTICATOR_PROPERTY_SQL, diff.updatedProperties,
+                (preparedStatement, property) -> {
+                    preparedStatement.setString(1, property.getRight());
+                    preparedStatement.setString(2, IdentityProviderUtil.hashPropertyValue(property.getRight()));
+                    preparedStatement.setInt(3, property.getLeft());
+                }, false);
+        this.jdbcTemplate.executeBatch(INSERT_IDP_AUTHENTICATOR_PROPERTY_SQL, diff.addedProperties,
+                (preparedStatement, property) -> {
+                    preparedStatement.setInt(1, property.getLeft());
+                    preparedStatement.setString(2, property.getMiddle());
+                    preparedStatement.setString(3, property.getRight());
+                    preparedStatement.setString(4, IdentityProviderUtil.hashPropertyValue(property.getRight()));
+                }, false);
+        addAuthenticators(identityProviderId, addedAuthenticators);
+    }
+
+    private void updateProvisioners(int identityProviderId, ChildDiff diff,
+            Collection<ProvisionerConfig> addedProvisioners) throws DataAccessException {
+        final String DELETE_IDP_PROVISIONING_CONFIG_SQL = "DELETE FROM IDP_PROVISIONING_CONFIG WHERE ID=?";
+        final String UPDATE_IDP_PROVISIONING_CONFIG_SQL = "UPDATE IDP_PROVISIONING_CONFIG SET IS_ENABLED=? "
+                + "WHERE ID=?";
+        final String DELETE_IDP_PROV_CONFIG_PROPERTY_SQL = "DELETE FROM IDP_PROV_CONFIG_PROPERTY WHERE ID=?";
+        final String UPDATE_IDP_PROV_CONFIG_PROPERTY_SQL = "UPDATE IDP_PROV_CONFIG_PROPERTY SET PROPERTY_VALUE=? "
+                + "WHERE ID=?";
+        final String INSERT_IDP_PROV_CONFIG_PROPERTY_SQL = "INSERT INTO IDP_PROV_CONFIG_PROPERTY "
+                + "(PROVISIONING_CONFIG_ID, PROPERTY_KEY, PROPERTY_VALUE, PROPERTY_TYPE) VALUES (?,?,?,?)";
+
+        this.jdbcTemplate.executeBatch(DELETE_IDP_PROVISIONING_CONFIG_SQL, diff.removedChildIds,
+                (preparedStatement, id) -> preparedStatement.setInt(1, id), false);
+        this.jdbcTemplate.executeBatch(UPDATE_IDP_PROVISIONING_CONFIG_SQL, diff.toggledChildren,
+                (preparedStatement, provisioner) -> {
+                    preparedStatement.setString(1, toFlagValue(provisioner.getRight()));
+                    preparedStatement.setInt(2, provisioner.getLeft());
+                }, false);
+        this.jdbcTemplate.executeBatch(DELETE_IDP_PROV_CONFIG_PROPERTY_SQL, diff.removedPropertyIds,
+                (preparedStatement, id) -> preparedStatement.setInt(1, id), false);
+        this.jdbcTemplate.executeBatch(UPDATE_IDP_PROV_CONFIG_PROPERTY_SQL, diff.updatedProperties,
+                (preparedStatement, property) -> {
+                    preparedStatement.setString(1, property.getRight());
+                    preparedStatement.setInt(2, property.getLeft());
+                }, false);
+        this.jdbcTemplate.executeBatch(INSERT_IDP_PROV_CONFIG_PROPERTY_SQL, diff.addedProperties,
+                (preparedStatement, property) -> {
+                    preparedStatement.setInt(1, property.getLeft());
+                    preparedStatement.setString(2, property.getMiddle());
+                    preparedStatement.setString(3, property.getRight());
+                    preparedStatement.setString(4, PROPERTY_TYPE_STRING);
+                }, false);
+        addProvisioners(identityProviderId, addedProvisioners);
+    }
+
+    private boolean identityProviderExists(int identityProviderId) throws DataAccessException {
+        final String GET_IDP_VERSION_SQL = "SELECT VERSION FROM IDP WHERE ID=? AND TENANT_ID=? AND IS_DELETED='0'";
+
+        return this.jdbcTemplate.fetchSingleRecord(GET_IDP_VERSION_SQL, (resultSet, rowNumber) -> resultSet.getInt(1),
+                (preparedStatement) -> {
+                    preparedStatement.setInt(1, identityProviderId);
+                    preparedStatement.setInt(2, tenantId);
+                }) != null;
+    }
+
+    /**
+     * Maps the names of the child rows of an identity provider to their generated IDs.
+     */
+    private Map<String, Integer> getChildIds(String query, int identityProviderId) throws DataAccessException {
+        List<Pair<String, Integer>> childIds = this.jdbcTemplate.executeQuery(query,
+                (resultSet, rowNumber) -> ImmutablePair.of(resultSet.getString(2), resultSet.getInt(1)),
+                (preparedStatement) -> preparedStatement.setInt(1, identityProviderId));
+        return childIds.stream().collect(Collectors.toMap(Pair::getLeft, Pair::getRight));
+    }
+
+    /**
+     * Builds the conditions for the name prefix, enabled and federation hub filters of the query, collecting the values
+     * to be bound in the order of their placeholders.
+     */
+    private String buildFilterCondition(IdPListQuery idPListQuery, List<String> filterValues) {
+        StringBuilder filterCondition = new StringBuilder();
+        if (StringUtils.isNotEmpty(idPListQuery.getNamePrefix())) {
+            filterCondition.append(" AND NAME LIKE ? ESCAPE '!'");
+            filterValues.add(escapeLikePattern(idPListQuery.getNamePrefix()) + "%");
+        }
+        if (idPListQuery.getEnabled() != null) {
+            filterCondition.append(" AND IS_ENABLED = ?");
+            filterValues.add(toFlagValue(idPListQuery.getEnabled()));
+        }
+        if (idPListQuery.getFederationHub() != null) {
+            filterCondition.append(" AND IS_FEDERATION_HUB = ?");
+            filterValues.add(toFlagValue(idPListQuery.getFederationHub()));
+        }
+        return filterCondition.toString();
+    }
+
+    private String escapeLikePattern(String value) {
+        return value.replace("!", "!!").replace("%", "!%").replace("_", "!_");
+    }
+
+    private String toFlagValue(boolean flag) {
+        return flag ? IdentityProviderConstants.IS_TRUE_VALUE : IdentityProviderConstants.IS_FALSE_VALUE;
+    }
+
+    private int bindFilterValues(PreparedStatement preparedStatement, int firstIndex, List<String> values)
+            throws SQLException {
+        int parameterIndex = firstIndex;
+        for (String value : values) {
+            preparedStatement.setString(parameterIndex++, value);
+        }
+        return parameterIndex;
+    }
+
+    /**
+     * Result of a versioned update of an identity provider.
+     */
+    private enum UpdateOutcome {
+        UPDATED, CONFLICT, NOT_FOUND
+    }
+
+    /**
+     * Stored authenticator or provisioner of an identity provider, with its properties keyed by property key.
+     */
+    private static class StoredChild {
+
+        private final int id;
+        private final boolean enabled;
+        private final Map<String, Pair<Integer, String>> properties = new HashMap<>();
+
+        StoredChild(int id, boolean enabled) {
+            this.id = id;
+            this.enabled = enabled;
+        }
+    }
+
+    /**
+     * Row level changes of the authenticators or provisioners of an identity provider.
+     */
+    private static class ChildDiff {
+
+        private final Set<String> addedChildren = new HashSet<>();
+        private final List<Integer> removedChildIds = new ArrayList<>();
+        private final List<Pair<Integer, Boolean>> toggledChildren = new ArrayList<>();
+        private final List<Triple<Integer, String, String>> addedProperties = new ArrayList<>();
+        private final List<Pair<Integer, String>> updatedProperties = new ArrayList<>();
+        private final List<Integer> removedPropertyIds = new ArrayList<>();
+    }
+
+    /**
+     * The identity provider builder and the child builders collected while reading the rows of an IdP.
+     */
+    private static class IdentityProviderGraph {
+
+        private final IdentityProvider.IdentityProviderBuilder<?> identityProviderBuilder;
+        private final Map<Integer, AuthenticatorConfig.AuthenticatorConfigBuilder> authenticators =
+                new LinkedHashMap<>();
+        private final Map<Integer, ProvisionerConfig.ProvisionerConfigBuilder> provisioners = new LinkedHashMap<>();
+
+        IdentityProviderGraph(IdentityProvider.IdentityProviderBuilder<?> identityProviderBuilder) {
+            this.identityProviderBuilder = identityProviderBuilder;
+        }
+
+        Map<Integer, AuthenticatorConfig.AuthenticatorConfigBuilder> getAuthenticators() {
+            return authenticators;
+        }
+
+        Map<Integer, ProvisionerConfig.ProvisionerConfigBuilder> getProvisioners() {
+            return provisioners;
+        }
+
+        IdentityProvider build() {
+            // Set even when empty, so that a loaded identity provider always carries both configs.
+            identityProviderBuilder.setAuthenticators(authenticators.values().stream()
+                    .map(AuthenticatorConfig.AuthenticatorConfigBuilder::build).collect(Collectors.toList()));
+            identityProviderBuilder.setProvisioners(provisioners.values().stream()
+                    .map(ProvisionerConfig.ProvisionerConfigBuilder::build).collect(Collectors.toList()));
+            return identityProviderBuilder.build();
+        }
     }
 }
@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.provider.internal.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.wso2.carbon.identity.provider.IdentityProviderException;
+import org.wso2.carbon.identity.provider.internal.dao.IdentityProviderDAO;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Background task removing the rows of the soft deleted Identity Providers of all the tenants.
+ * The rows are removed in small batches, each in its own short transaction, and the batches are paced so that no more
+ * than the configured number of rows is removed per second. This keeps the purge of an Identity Provider with large
+ * provisioning entity tables from holding locks or saturating the database for long.
+ */
+public class DeletedIdentityProviderPurger implements Runnable {
+
+    private static final Logger log = LoggerFactory.getLogger(DeletedIdentityProviderPurger.class);
+
+    private final IdentityProviderDAO identityProviderDAO;
+    private final int batchSize;
+    private final int maxRowsPerSecond;
+
+    public DeletedIdentityProviderPurger(IdentityProviderDAO identityProviderDAO, int batchSize,
+            int maxRowsPerSecond) {
+        if (batchSize <= 0 || maxRowsPerSecond <= 0) {
+            throw new IllegalArgumentException("Batch size and rows per second must be positive");
+        }
+        this.identityProviderDAO = identityProviderDAO;
+        this.batchSize = batchSize;
+        this.maxRowsPerSecond = maxRowsPerSecond;
+    }
+
+    @Override
+    public void run() {
+        try {
+            int purgedRows = purge();
+            if (purgedRows > 0 && log.isDebugEnabled()) {
+                log.debug("Purged " + purgedRows + " rows of deleted Identity providers");
+            }
+        } catch (IdentityProviderException e) {
+            log.error("Error occurred in purging the deleted Identity providers", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Purges all the soft deleted Identity Providers found.
+     *
+     * @return the number of rows removed.
+     * @throws IdentityProviderException when any database level exception occurs.
+     * @throws InterruptedException when interrupted while waiting for the rate limit.
+     */
+    public int purge() throws IdentityProviderException, InterruptedException {
+        long startTime = System.nanoTime();
+        int purgedRows = 0;
+        List<Integer> identityProviderIds;
+        while (!(identityProviderIds = identityProviderDAO.listDeletedIdentityProviderIds(batchSize)).isEmpty()) {
+            for (int identityProviderId : identityProviderIds) {
+                int batchRows;
+                do {
+                    batchRows = identityProviderDAO.purgeDeletedIdentityProvider(identityProviderId, batchSize);
+                    purgedRows += batchRows;
+                    throttle(startTime, purgedRows);
+                } while (batchRows > 0);
+            }
+        }
+        return purgedRows;
+    }
+
+    /**
+     * Waits until the rows removed so far are within the rate allowed since the start of the purge.
+     */
+    private void throttle(long startTime, int purgedRows) throws InterruptedException {
+        long allowedAfterNanos = TimeUnit.SECONDS.toNanos(purgedRows) / maxRowsPerSecond;
+        long waitNanos = startTime + allowedAfterNanos - System.nanoTime();
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+}
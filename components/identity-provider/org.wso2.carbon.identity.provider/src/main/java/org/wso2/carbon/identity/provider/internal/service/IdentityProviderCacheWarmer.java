@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.provider.internal.service;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.wso2.carbon.identity.provider.IdentityProviderException;
+import org.wso2.carbon.identity.provider.internal.dao.CacheBackedIdPDAO;
+import org.wso2.carbon.identity.provider.internal.dao.IdentityProviderDAO;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Preloads the enabled Identity Providers of all the tenants into the in memory store of a {@link CacheBackedIdPDAO},
+ * so that the first logins after a restart do not all load them from the database at once.
+ * The most recently created Identity Providers are loaded first, in batches of a tenant, by a fixed number of threads.
+ * The warm-up gives up on the batches not loaded within its time budget, which are then loaded on their first lookup.
+ */
+public class IdentityProviderCacheWarmer {
+
+    private static final Logger log = LoggerFactory.getLogger(IdentityProviderCacheWarmer.class);
+
+    private final CacheBackedIdPDAO identityProviderDAO;
+    private final int parallelism;
+    private final int batchSize;
+    private final int maxIdentityProviders;
+    private final long timeBudgetMillis;
+
+    /**
+     * @param identityProviderDAO  the DAO whose store is loaded.
+     * @param parallelism          the number of batches loaded at once.
+     * @param batchSize            the number of Identity Providers loaded by a batch.
+     * @param maxIdentityProviders the maximum number of Identity Providers loaded.
+     * @param timeBudgetMillis     the time after which the warm-up gives up.
+     */
+    public IdentityProviderCacheWarmer(CacheBackedIdPDAO identityProviderDAO, int parallelism, int batchSize,
+            int maxIdentityProviders, long timeBudgetMillis) {
+        if (parallelism <= 0 || batchSize <= 0 || maxIdentityProviders <= 0 || timeBudgetMillis <= 0) {
+            throw new IllegalArgumentException("Parallelism, batch size, Identity provider count and time budget "
+                    + "must be positive");
+        }
+        this.identityProviderDAO = identityProviderDAO;
+        this.parallelism = parallelism;
+        this.batchSize = batchSize;
+        this.maxIdentityProviders = maxIdentityProviders;
+        this.timeBudgetMillis = timeBudgetMillis;
+    }
+
+    /**
+     * Loads the enabled Identity Providers, until all are loaded or the time budget is spent. The batches failing to
+     * load are logged and skipped.
+     *
+     * @return the number of Identity Providers loaded.
+     * @throws IdentityProviderException when the Identity Providers could not be listed.
+     * @throws InterruptedException when interrupted while waiting for the batches.
+     */
+    public int warmUp() throws IdentityProviderException, InterruptedException {
+        long startTime = System.nanoTime();
+        List<IdentityProviderBatch> batches = partition(
+                identityProviderDAO.listEnabledIdentityProviderIds(maxIdentityProviders));
+        AtomicInteger loaded = new AtomicInteger();
+        AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService executorService = Executors.newFixedThreadPool(Math.min(parallelism,
+                Math.max(batches.size(), 1)), runnable -> {
+                    Thread thread = new Thread(runnable, "identity-provider-warm-up-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        try {
+            for (IdentityProviderBatch batch : batches) {
+                executorService.execute(() -> {
+                    try {
+                        loaded.addAndGet(batch.load(identityProviderDAO));
+                    } catch (IdentityProviderException e) {
+                        log.warn("Error occurred in preloading the Identity providers of tenant: " + batch.tenantId,
+                                e);
+                    }
+                });
+            }
+            executorService.shutdown();
+            long remainingNanos = startTime + TimeUnit.MILLISECONDS.toNanos(timeBudgetMillis) - System.nanoTime();
+            if (!executorService.awaitTermination(remainingNanos, TimeUnit.NANOSECONDS)) {
+                log.warn("Identity provider cache warm-up timed out after " + timeBudgetMillis + " ms, having loaded "
+                        + loaded.get() + " Identity providers");
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Preloaded " + loaded.get() + " Identity providers in "
+                    + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime) + " ms");
+        }
+        return loaded.get();
+    }
+
+    /**
+     * Splits the Identity Providers, in the order listed, into batches of a single tenant.
+     */
+    private List<IdentityProviderBatch> partition(List<Pair<Integer, Integer>> identityProviders) {
+        List<IdentityProviderBatch> batches = new ArrayList<>();
+        Map<Integer, IdentityProviderBatch> openBatches = new HashMap<>();
+        for (Pair<Integer, Integer> identityProvider : identityProviders) {
+            int tenantId = identityProvider.getLeft();
+            IdentityProviderBatch batch = openBatches.get(tenantId);
+            if (batch == null) {
+                batch = new IdentityProviderBatch(tenantId);
+                batches.add(batch);
+                openBatches.put(tenantId, batch);
+            }
+            batch.identityProviderIds.add(identityProvider.getRight());
+            if (batch.identityProviderIds.size() == batchSize) {
+                openBatches.remove(tenantId);
+            }
+        }
+        return batches;
+    }
+
+    /**
+     * Identity Providers of a tenant loaded together.
+     */
+    private static class IdentityProviderBatch {
+
+        private final int tenantId;
+        private final List<Integer> identityProviderIds = new ArrayList<>();
+
+        IdentityProviderBatch(int tenantId) {
+            this.tenantId = tenantId;
+        }
+
+        int load(CacheBackedIdPDAO identityProviderDAO) throws IdentityProviderException {
+            IdentityProviderDAO tenantIdentityProviderDAO = tenantId == identityProviderDAO.getTenantId() ?
+                    identityProviderDAO : identityProviderDAO.forTenant(tenantId);
+            return ((CacheBackedIdPDAO) tenantIdentityProviderDAO).preload(identityProviderIds);
+        }
+    }
+}
@@ -22,16 +22,26 @@ import org.apache.commons.lang3.tuple.Pair;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.wso2.carbon.identity.provider.IdentityProviderException;
+import org.wso2.carbon.identity.provider.IdentityProviderInterceptor;
 import org.wso2.carbon.identity.provider.IdentityProviderService;
+import org.wso2.carbon.identity.provider.dao.UncheckedDataAccessException;
 import org.wso2.carbon.identity.provider.model.AuthenticationConfig;
+import org.wso2.carbon.identity.provider.model.IdPListQuery;
+import org.wso2.carbon.identity.provider.model.IdPListResult;
 import org.wso2.carbon.identity.provider.model.IdPMetadata;
 import org.wso2.carbon.identity.provider.model.IdentityProvider;
 import org.wso2.carbon.identity.provider.model.ProvisioningConfig;
 import org.wso2.carbon.identity.provider.internal.dao.IdentityProviderDAO;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Default implementation of Identity Provider Service.
@@ -41,17 +51,35 @@ public class IdentityProviderServiceImpl implements IdentityProviderService {
     private static final Logger log = LoggerFactory.getLogger(IdentityProviderServiceImpl.class);
 
     private IdentityProviderDAO identityProviderDAO;
+    private final List<IdentityProviderInterceptor> interceptors = new CopyOnWriteArrayList<>();
 
     public void setIdentityProviderDAO(IdentityProviderDAO identityProviderDAO) {
         this.identityProviderDAO = identityProviderDAO;
     }
 
+    public void addInterceptor(IdentityProviderInterceptor interceptor) {
+        interceptors.add(interceptor);
+    }
+
+    public void removeInterceptor(IdentityProviderInterceptor interceptor) {
+        interceptors.remove(interceptor);
+    }
+
     @Override
     public List<String> listIdentityProviders() throws IdentityProviderException {
-        List<Pair<Integer, String>> identityProviderList = identityProviderDAO.listAllIdentityProviders();
-        return identityProviderList.stream()
-                .map(pair -> pair.getRight())
-                .collect(Collectors.toList());
+        List<String> identityProviderNames = new ArrayList<>();
+        forEachIdentityProvider(identityProviderNames::add);
+        return identityProviderNames;
+    }
+
+    @Override
+    public void forEachIdentityProvider(Consumer<String> consumer) throws IdentityProviderException {
+        try (Stream<Pair<Integer, String>> identityProviders = identityProviderDAO.streamAllIdentityProviders()) {
+            identityProviders.forEach(pair -> consumer.accept(pair.getRight()));
+        } catch (UncheckedDataAccessException e) {
+            throw new IdentityProviderException("Error occurred in listing all the Identity providers ",
+                    e.getCause());
+        }
     }
 
     @Override
@@ -62,6 +90,11 @@ public class IdentityProviderServiceImpl implements IdentityProviderService {
                 .collect(Collectors.toList());
     }
 
+    @Override
+    public IdPListResult listIdentityProviders(IdPListQuery idPListQuery) throws IdentityProviderException {
+        return identityProviderDAO.listIdentityProviders(idPListQuery);
+    }
+
     @Override
     public int createIdentityProvider(IdentityProvider identityProvider) throws IdentityProviderException {
         return identityProviderDAO.createIdentityProvider(identityProvider);
@@ -69,27 +102,36 @@ public class IdentityProviderServiceImpl implements IdentityProviderService {
 
     @Override
     public IdentityProvider getIdentityProvider(int identityProviderId) throws IdentityProviderException {
-        return identityProviderDAO.getIdentityProvider(identityProviderId);
+        return identityProviderDAO.loadIdentityProviderGraph(identityProviderId);
     }
 
     @Override
     public IdentityProvider getIdentityProvider(String idPName) throws IdentityProviderException {
-        List<IdentityProvider> identityProviderList = identityProviderDAO.listIdentityProviderByName(idPName);
-
-        if (identityProviderList.size() > 0) {
-            if (identityProviderList.size() > 1) {
-                if (log.isDebugEnabled()) {
-                    log.debug("There was {} number of IDP match for the IDP name : {}. Returning the first one",
-                            identityProviderList.size(), idPName);
-                }
-            }
-            return identityProviderList.get(0);
-        } else {
-            if (log.isDebugEnabled()) {
-                log.debug("Could not find an IDP with name : " + idPName);
-            }
+        IdentityProvider identityProvider = identityProviderDAO.loadIdentityProviderGraph(idPName);
+        if (identityProvider == null && log.isDebugEnabled()) {
+            log.debug("Could not find an IDP with name : " + idPName);
         }
-        return null;
+        return identityProvider;
+    }
+
+    @Override
+    public IdentityProvider getIdentityProviderByHomeRealmId(int tenantId, String homeRealmId)
+            throws IdentityProviderException {
+        IdentityProviderDAO tenantIdentityProviderDAO = tenantId == identityProviderDAO.getTenantId() ?
+                identityProviderDAO : identityProviderDAO.forTenant(tenantId);
+        return tenantIdentityProviderDAO.getIdentityProviderByHomeRealmId(homeRealmId);
+    }
+
+    @Override
+    public Map<Integer, IdentityProvider> getIdentityProviders(Collection<Integer> identityProviderIds)
+            throws IdentityProviderException {
+        return identityProviderDAO.getIdentityProviders(identityProviderIds);
+    }
+
+    @Override
+    public Map<String, IdentityProvider> getIdentityProvidersByName(Collection<String> idPNames)
+            throws IdentityProviderException {
+        return identityProviderDAO.getIdentityProvidersByName(idPNames);
     }
 
     @Override
@@ -109,45 +151,120 @@ public class IdentityProviderServiceImpl implements IdentityProviderService {
 
     @Override
     public void updateIdentityProvider(IdentityProvider identityProvider) throws IdentityProviderException {
-
+        identityProviderDAO.updateIdentityProvider(identityProvider);
     }
 
     @Override
     public void deleteIdentityProvider(int identityProviderId) throws IdentityProviderException {
+        for (IdentityProviderInterceptor interceptor : interceptors) {
+            interceptor.preDeleteIdentityProvider(identityProviderId);
+        }
         identityProviderDAO.deleteIdentityProvider(identityProviderId);
-
+        for (IdentityProviderInterceptor interceptor : interceptors) {
+            interceptor.postDeleteIdentityProvider(identityProviderId);
+        }
     }
 
     @Override
     public void enableIdentityProvider(int identityProviderId) throws IdentityProviderException {
+        for (IdentityProviderInterceptor interceptor : interceptors) {
+            interceptor.preEnableIdentityProvider(identityProviderId);
+        }
         identityProviderDAO.enableIdentityProvider(identityProviderId);
-
+        for (IdentityProviderInterceptor interceptor : interceptors) {
+            interceptor.postEnableIdentityProvider(identityProviderId);
+        }
     }
 
     @Override
     public void disableIdentityProvider(int identityProviderId) throws IdentityProviderException {
+        for (IdentityProviderInterceptor interceptor : interceptors) {
+            interceptor.preDisableIdentityProvider(identityProviderId);
+        }
         identityProviderDAO.disableIdentityProvider(identityProviderId);
+        for (IdentityProviderInterceptor interceptor : interceptors) {
+            interceptor.postDisableIdentityProvider(identityProviderId);
+        }
+    }
 
+    @Override
+    public int deleteIdentityProviders(Collection<Integer> identityProviderIds) throws IdentityProviderException {
+        if (identityProviderIds.isEmpty()) {
+            return 0;
+        }
+        Collection<Integer> batch = Collections.unmodifiableCollection(identityProviderIds);
+        for (IdentityProviderInterceptor interceptor : interceptors) {
+            interceptor.preDeleteIdentityProviders(batch);
+        }
+        int deleted = identityProviderDAO.deleteIdentityProviders(batch);
+        for (IdentityProviderInterceptor interceptor : interceptors) {
+            interceptor.postDeleteIdentityProviders(batch);
+        }
+        return deleted;
     }
 
     @Override
-    public void updateIdPMetadata(int identityProviderId, IdPMetadata metadata) throws IdentityProviderException {
-        identityProviderDAO.updateIdentityProviderMetaData(identityProviderId, metadata);
+    public int deleteIdentityProviders(IdPListQuery filter) throws IdentityProviderException {
+        return deleteIdentityProviders(identityProviderDAO.getIdentityProviderIds(filter));
+    }
 
+    @Override
+    public int enableIdentityProviders(Collection<Integer> identityProviderIds) throws IdentityProviderException {
+        if (identityProviderIds.isEmpty()) {
+            return 0;
+        }
+        Collection<Integer> batch = Collections.unmodifiableCollection(identityProviderIds);
+        for (IdentityProviderInterceptor interceptor : interceptors) {
+            interceptor.preEnableIdentityProviders(batch);
+        }
+        int updated = identityProviderDAO.enableIdentityProviders(batch);
+        for (IdentityProviderInterceptor interceptor : interceptors) {
+            interceptor.postEnableIdentityProviders(batch);
+        }
+        return updated;
     }
 
     @Override
-    public void updateIdPAuthenticationConfig(int identityProviderId, AuthenticationConfig authenticationConfig)
-            throws IdentityProviderException {
-        identityProviderDAO.updateupdateIdPAuthenticationConfig(identityProviderId, authenticationConfig);
+    public int enableIdentityProviders(IdPListQuery filter) throws IdentityProviderException {
+        return enableIdentityProviders(identityProviderDAO.getIdentityProviderIds(filter));
+    }
 
+    @Override
+    public int disableIdentityProviders(Collection<Integer> identityProviderIds) throws IdentityProviderException {
+        if (identityProviderIds.isEmpty()) {
+            return 0;
+        }
+        Collection<Integer> batch = Collections.unmodifiableCollection(identityProviderIds);
+        for (IdentityProviderInterceptor interceptor : interceptors) {
+            interceptor.preDisableIdentityProviders(batch);
+        }
+        int updated = identityProviderDAO.disableIdentityProviders(batch);
+        for (IdentityProviderInterceptor interceptor : interceptors) {
+            interceptor.postDisableIdentityProviders(batch);
+        }
+        return updated;
     }
 
     @Override
-    public void updateIdPProvisioningConfig(int identityProviderId, ProvisioningConfig provisioningConfig)
-            throws IdentityProviderException {
-        identityProviderDAO.updateIdPProvisioningConfig(identityProviderId, provisioningConfig);
+    public int disableIdentityProviders(IdPListQuery filter) throws IdentityProviderException {
+        return disableIdentityProviders(identityProviderDAO.getIdentityProviderIds(filter));
+    }
+
+    @Override
+    public void updateIdPMetadata(int identityProviderId, IdPMetadata metadata) throws IdentityProviderException {
+        identityProviderDAO.updateIdentityProviderMetaData(identityProviderId, metadata);
+    }
 
+    @Override
+    public void updateIdPAuthenticationConfig(int identityProviderId, int version,
+            AuthenticationConfig authenticationConfig) throws IdentityProviderException {
+        identityProviderDAO.updateIdPAuthenticationConfig(identityProviderId, version, authenticationConfig);
+    }
+
+    @Override
+    public void updateIdPProvisioningConfig(int identityProviderId, int version,
+            ProvisioningConfig provisioningConfig) throws IdentityProviderException {
+        identityProviderDAO.updateIdPProvisioningConfig(identityProviderId, version, provisioningConfig);
     }
 
     @Override
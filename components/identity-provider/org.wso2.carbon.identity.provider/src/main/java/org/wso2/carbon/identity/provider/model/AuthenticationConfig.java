@@ -40,7 +40,7 @@ public class AuthenticationConfig implements Serializable {
     }
 
     public Collection<AuthenticatorConfig> getAuthenticators() {
-        return authenticators;
+        return Collections.unmodifiableCollection(authenticators);
     }
 
     static class AuthenticationConfigBuilder {
@@ -38,6 +38,7 @@ public class AuthenticatorConfig implements Serializable {
 
     protected AuthenticatorConfig(AuthenticatorConfigBuilder builder) {
         this.name = builder.name;
+        this.isEnabled = builder.isEnabled;
         this.properties = builder.properties;
     }
 
@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2016 WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.provider.model;
+
+import java.io.Serializable;
+
+/**
+ * Criteria of a single page when listing identity providers.
+ * Pages are addressed by the ID of the last identity provider of the previous page (keyset pagination), so that
+ * fetching a page costs the same regardless of how deep into the listing it is.
+ */
+public class IdPListQuery implements Serializable {
+
+    private static final long serialVersionUID = 3410587263329457741L;
+
+    public static final int DEFAULT_LIMIT = 100;
+
+    private final int afterId;
+    private final int limit;
+    private final String namePrefix;
+    private final Boolean enabled;
+    private final Boolean federationHub;
+    private final boolean includeTotalCount;
+
+    private IdPListQuery(IdPListQueryBuilder builder) {
+        this.afterId = builder.afterId;
+        this.limit = builder.limit;
+        this.namePrefix = builder.namePrefix;
+        this.enabled = builder.enabled;
+        this.federationHub = builder.federationHub;
+        this.includeTotalCount = builder.includeTotalCount;
+    }
+
+    public int getAfterId() {
+        return afterId;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public String getNamePrefix() {
+        return namePrefix;
+    }
+
+    /**
+     * @return the required enabled state, or null when identity providers are not filtered on it.
+     */
+    public Boolean getEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return the required federation hub state, or null when identity providers are not filtered on it.
+     */
+    public Boolean getFederationHub() {
+        return federationHub;
+    }
+
+    public boolean isIncludeTotalCount() {
+        return includeTotalCount;
+    }
+
+    public static IdPListQueryBuilder newBuilder() {
+        return new IdPListQueryBuilder();
+    }
+
+    /**
+     * Builds the criteria of a page of identity providers.
+     */
+    public static class IdPListQueryBuilder {
+
+        private int afterId;
+        private int limit = DEFAULT_LIMIT;
+        private String namePrefix;
+        private Boolean enabled;
+        private Boolean federationHub;
+        private boolean includeTotalCount;
+
+        /**
+         * Sets the cursor of the page, i.e. the ID of the last identity provider of the previous page.
+         * The first page is fetched with the default of 0.
+         */
+        public IdPListQueryBuilder setAfterId(int afterId) {
+            this.afterId = afterId;
+            return this;
+        }
+
+        public IdPListQueryBuilder setLimit(int limit) {
+            if (limit <= 0) {
+                throw new IllegalArgumentException("Page limit must be positive: " + limit);
+            }
+            this.limit = limit;
+            return this;
+        }
+
+        public IdPListQueryBuilder setNamePrefix(String namePrefix) {
+            this.namePrefix = namePrefix;
+            return this;
+        }
+
+        public IdPListQueryBuilder setEnabled(Boolean enabled) {
+            this.enabled = enabled;
+            return this;
+        }
+
+        public IdPListQueryBuilder setFederationHub(Boolean federationHub) {
+            this.federationHub = federationHub;
+            return this;
+        }
+
+        /**
+         * Requests the number of identity providers matching the filters, across all pages. Counting needs an
+         * additional query that visits every matching row, hence is off by default.
+         */
+        public IdPListQueryBuilder setIncludeTotalCount(boolean includeTotalCount) {
+            this.includeTotalCount = includeTotalCount;
+            return this;
+        }
+
+        public IdPListQuery build() {
+            return new IdPListQuery(this);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2016 WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.provider.model;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A page of identity providers returned for an {@link IdPListQuery}.
+ */
+public class IdPListResult implements Serializable {
+
+    private static final long serialVersionUID = -1894212468837905526L;
+
+    public static final int TOTAL_COUNT_NOT_REQUESTED = -1;
+
+    private final List<IdentityProvider> identityProviders;
+    private final boolean hasMore;
+    private final int totalCount;
+
+    public IdPListResult(List<IdentityProvider> identityProviders, boolean hasMore, int totalCount) {
+        this.identityProviders = Collections.unmodifiableList(identityProviders);
+        this.hasMore = hasMore;
+        this.totalCount = totalCount;
+    }
+
+    /**
+     * @return the identity providers of the page in the order of their IDs, carrying their metadata and enabled
+     * state only.
+     */
+    public List<IdentityProvider> getIdentityProviders() {
+        return identityProviders;
+    }
+
+    public boolean hasMore() {
+        return hasMore;
+    }
+
+    /**
+     * @return the cursor to be passed as {@link IdPListQuery.IdPListQueryBuilder#setAfterId(int)} to fetch the next
+     * page. Only meaningful when {@link #hasMore()} is true.
+     */
+    public int getNextAfterId() {
+        return identityProviders.isEmpty() ? 0 :
+                identityProviders.get(identityProviders.size() - 1).getIdPMetadata().getId();
+    }
+
+    /**
+     * @return the number of identity providers matching the filters across all pages, or
+     * {@link #TOTAL_COUNT_NOT_REQUESTED} when the count was not requested.
+     */
+    public int getTotalCount() {
+        return totalCount;
+    }
+}
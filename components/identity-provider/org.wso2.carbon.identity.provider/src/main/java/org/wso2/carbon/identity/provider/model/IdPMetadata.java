@@ -49,6 +49,8 @@ public class IdPMetadata implements Serializable {
     private Boolean isFederationHub;
     private ClaimConfig claimConfig;
     private RoleConfig roleConfig;
+    //Version of the stored IDP this metadata was read from, checked when the IDP is written back
+    private int version;
 
     private IdPMetadata(IdPMetadataBuilder builder) {
         this.id = builder.id;
@@ -60,6 +62,7 @@ public class IdPMetadata implements Serializable {
         this.isFederationHub = builder.isFederationHub;
         this.claimConfig = (builder.claimConfigBuilder == null) ? null : builder.claimConfigBuilder.build();
         this.roleConfig = builder.roleConfigBuilder.build();
+        this.version = builder.version;
     }
 
     public int getId() {
@@ -98,6 +101,10 @@ public class IdPMetadata implements Serializable {
         return isFederationHub;
     }
 
+    public int getVersion() {
+        return version;
+    }
+
 
     static IdPMetadataBuilder newBuilder(int identityProviderId, String name) {
         return new IdPMetadataBuilder(identityProviderId, name);
@@ -116,7 +123,8 @@ public class IdPMetadata implements Serializable {
         private ClaimConfig.ClaimConfigBuilder claimConfigBuilder;
         private RoleConfig.RoleConfigBuilder roleConfigBuilder = new RoleConfig.RoleConfigBuilder();
         private String homeRealmId;
-        private Boolean isFederationHub;
+        private Boolean isFederationHub = false;
+        private int version;
 
         public IdPMetadataBuilder(int id, String name) {
             this.id = id;
@@ -163,6 +171,11 @@ public class IdPMetadata implements Serializable {
             return this;
         }
 
+        public IdPMetadataBuilder setVersion(int version) {
+            this.version = version;
+            return this;
+        }
+
         public IdPMetadataBuilder addCert(String alias, String thumbPrint) {
             if (StringUtils.isNotBlank(alias) && StringUtils.isNotBlank(thumbPrint)) {
                 this.certMap.put(alias, thumbPrint);
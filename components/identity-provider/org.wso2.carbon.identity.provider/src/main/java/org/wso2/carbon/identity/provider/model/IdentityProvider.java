@@ -87,8 +87,9 @@ public abstract class IdentityProvider implements Serializable {
 
         private boolean enabled = true;
         private IdPMetadata.IdPMetadataBuilder idPMetadataBuilder;
-        private ProvisioningConfig.ProvisioningConfigBuilder provisioningConfigBuilder =
-                new ProvisioningConfig.ProvisioningConfigBuilder();
+        // Left null until an authentication or provisioning detail is given, so that a metadata only identity
+        // provider carries no config which would replace the stored one.
+        private ProvisioningConfig.ProvisioningConfigBuilder provisioningConfigBuilder;
         private AuthenticationConfig.AuthenticationConfigBuilder authenticationConfigBuilder;
         private Map<String,Object> properties = new HashMap<>();
 
@@ -130,6 +131,11 @@ public abstract class IdentityProvider implements Serializable {
             return this;
         }
 
+        public IdentityProviderBuilder<T> setVersion(int version) {
+            this.idPMetadataBuilder.setVersion(version);
+            return this;
+        }
+
         public IdentityProviderBuilder addCert(String alias, String thumbPrint) {
             this.idPMetadataBuilder.addCert(alias, thumbPrint);
             return this;
@@ -161,77 +167,77 @@ public abstract class IdentityProvider implements Serializable {
         }
 
         public IdentityProviderBuilder setProvisioningClaims(Collection<ProvisioningClaim> provisioningClaims) {
-            this.provisioningConfigBuilder.setProvisioningClaims(provisioningClaims);
+            provisioningConfigBuilder().setProvisioningClaims(provisioningClaims);
             return this;
         }
 
         public IdentityProviderBuilder addProvisionClaim(ProvisioningClaim provisioningClaim) {
-            this.provisioningConfigBuilder.addProvisionClaim(provisioningClaim);
+            provisioningConfigBuilder().addProvisionClaim(provisioningClaim);
             return this;
         }
 
         public IdentityProviderBuilder addProvisioningClaims(Collection<ProvisioningClaim> provisioningClaims) {
-            this.provisioningConfigBuilder.addProvisioningClaims(provisioningClaims);
+            provisioningConfigBuilder().addProvisioningClaims(provisioningClaims);
             return this;
         }
 
         public IdentityProviderBuilder setProvisioningIdPs(Collection<String> provisioningIdPs) {
-            this.provisioningConfigBuilder.setProvisioningIdP(provisioningIdPs);
+            provisioningConfigBuilder().setProvisioningIdP(provisioningIdPs);
             return this;
         }
 
         public IdentityProviderBuilder addProvisioningIdP(String provisioningIdP) {
-            this.provisioningConfigBuilder.addProvisioningIdP(provisioningIdP);
+            provisioningConfigBuilder().addProvisioningIdP(provisioningIdP);
             return this;
         }
 
         public IdentityProviderBuilder addProvisioningIdPs(Collection<String> provisioningIdPs) {
-            this.provisioningConfigBuilder.addProvisioningIdPs(provisioningIdPs);
+            provisioningConfigBuilder().addProvisioningIdPs(provisioningIdPs);
             return this;
         }
 
         public IdentityProviderBuilder setProvisioners(Collection<ProvisionerConfig> provisioners) {
-            this.provisioningConfigBuilder.setProvisioners(provisioners);
+            provisioningConfigBuilder().setProvisioners(provisioners);
             return this;
         }
 
         public IdentityProviderBuilder addProvisioner(ProvisionerConfig provisioner) {
-            this.provisioningConfigBuilder.addProvisioner(provisioner);
+            provisioningConfigBuilder().addProvisioner(provisioner);
             return this;
         }
 
         public IdentityProviderBuilder addProvisioners(Collection<ProvisionerConfig> provisioners) {
-            this.provisioningConfigBuilder.addProvisioners(provisioners);
+            provisioningConfigBuilder().addProvisioners(provisioners);
             return this;
         }
 
         public IdentityProviderBuilder setRequestedClaims(Collection<String> requestedClaims) {
-            this.authenticationConfigBuilder.setRequestedClaims(requestedClaims);
+            authenticationConfigBuilder().setRequestedClaims(requestedClaims);
             return this;
         }
 
         public IdentityProviderBuilder addRequestedClaim(String requestedClaim) {
-            this.authenticationConfigBuilder.addRequestedClaim(requestedClaim);
+            authenticationConfigBuilder().addRequestedClaim(requestedClaim);
             return this;
         }
 
         public IdentityProviderBuilder addRequestedClaims(Collection<String> requestedClaims) {
-            this.authenticationConfigBuilder.addRequestedClaims(requestedClaims);
+            authenticationConfigBuilder().addRequestedClaims(requestedClaims);
             return this;
         }
 
         public IdentityProviderBuilder setAuthenticators(Collection<AuthenticatorConfig> authenticators) {
-            this.authenticationConfigBuilder.setAuthenticators(authenticators);
+            authenticationConfigBuilder().setAuthenticators(authenticators);
             return this;
         }
 
         public IdentityProviderBuilder addAuthenticator(AuthenticatorConfig authenticator) {
-            this.authenticationConfigBuilder.addAuthenticator(authenticator);
+            authenticationConfigBuilder().addAuthenticator(authenticator);
             return this;
         }
 
         public IdentityProviderBuilder addAuthenticators(Collection<AuthenticatorConfig> authenticators) {
-            this.authenticationConfigBuilder.addAuthenticators(authenticators);
+            authenticationConfigBuilder().addAuthenticators(authenticators);
             return this;
         }
 
@@ -258,5 +264,19 @@ public abstract class IdentityProvider implements Serializable {
         }
 
         public abstract T build() ;
+
+        private ProvisioningConfig.ProvisioningConfigBuilder provisioningConfigBuilder() {
+            if (provisioningConfigBuilder == null) {
+                provisioningConfigBuilder = new ProvisioningConfig.ProvisioningConfigBuilder();
+            }
+            return provisioningConfigBuilder;
+        }
+
+        private AuthenticationConfig.AuthenticationConfigBuilder authenticationConfigBuilder() {
+            if (authenticationConfigBuilder == null) {
+                authenticationConfigBuilder = new AuthenticationConfig.AuthenticationConfigBuilder();
+            }
+            return authenticationConfigBuilder;
+        }
     }
 }
@@ -39,6 +39,7 @@ public class ProvisionerConfig implements Serializable {
 
     private ProvisionerConfig(ProvisionerConfigBuilder builder) {
         this.name = builder.name;
+        this.isEnabled = builder.isEnabled;
         this.properties = builder.properties;
     }
 
@@ -57,7 +58,7 @@ public class ProvisionerConfig implements Serializable {
     /**
      * Builds the configuration of a provisioning connector.
      */
-    public class ProvisionerConfigBuilder {
+    public static class ProvisionerConfigBuilder {
 
         protected String name;
         protected boolean isEnabled;
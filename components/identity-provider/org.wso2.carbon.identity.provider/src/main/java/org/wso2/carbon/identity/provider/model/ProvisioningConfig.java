@@ -21,6 +21,7 @@ package org.wso2.carbon.identity.provider.model;
 import org.apache.commons.collections.CollectionUtils;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 
 public class ProvisioningConfig {
@@ -39,11 +40,11 @@ public class ProvisioningConfig {
     }
 
     public Collection<ProvisioningClaim> getProvisioningClaims() {
-        return provisioningClaims;
+        return Collections.unmodifiableCollection(provisioningClaims);
     }
 
     public Collection<String> getProvisioningRoles() {
-        return provisioningRoles;
+        return Collections.unmodifiableCollection(provisioningRoles);
     }
 
     public JITProvisioningConfig getJitProvisioningConfig() {
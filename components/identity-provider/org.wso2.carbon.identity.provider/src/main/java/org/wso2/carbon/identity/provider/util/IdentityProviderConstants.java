@@ -27,7 +27,57 @@ public class IdentityProviderConstants {
     public static final String MULTI_VALUED_PROPERTY_CHARACTER = ".";
     public static final String IS_TRUE_VALUE = "1";
     public static final String IS_FALSE_VALUE = "0";
+    public static final int SUPER_TENANT_ID = -1234;
     public static final String MULTI_VALUED_PROPERT_IDENTIFIER_PATTERN = ".*\\" + MULTI_VALUED_PROPERTY_CHARACTER +
             "[0-9]+";
 
+    // System properties tuning the JDBC access of the identity provider components
+    public static final String ASYNC_MAX_CONCURRENCY_PROPERTY = "identity.provider.jdbc.async.maxConcurrency";
+    public static final int DEFAULT_ASYNC_MAX_CONCURRENCY = 10;
+    public static final String ASYNC_QUEUE_CAPACITY_PROPERTY = "identity.provider.jdbc.async.queueCapacity";
+    public static final int DEFAULT_ASYNC_QUEUE_CAPACITY = 100;
+    public static final String ASYNC_VIRTUAL_THREADS_PROPERTY = "identity.provider.jdbc.async.virtualThreads";
+    public static final String SLOW_QUERY_THRESHOLD_PROPERTY = "identity.provider.jdbc.slowQueryThresholdMillis";
+    public static final long DEFAULT_SLOW_QUERY_THRESHOLD_MILLIS = 1000;
+    public static final String QUERY_TIMEOUT_PROPERTY = "identity.provider.jdbc.queryTimeoutSeconds";
+    public static final int DEFAULT_QUERY_TIMEOUT_SECONDS = 30;
+    public static final String REPLICA_DATA_SOURCES_PROPERTY = "identity.provider.jdbc.replicaDataSources";
+    public static final String REPLICA_SELECTION_PROPERTY = "identity.provider.jdbc.replicaSelection";
+    public static final String READ_YOUR_WRITES_WINDOW_PROPERTY = "identity.provider.jdbc.readYourWritesWindowMillis";
+    public static final long DEFAULT_READ_YOUR_WRITES_WINDOW_MILLIS = 2000;
+
+    // System properties of the soft delete of identity providers and the background purge of their rows
+    public static final String SOFT_DELETE_PROPERTY = "identity.provider.softDelete";
+    public static final String PURGE_INTERVAL_PROPERTY = "identity.provider.purge.intervalSeconds";
+    public static final long DEFAULT_PURGE_INTERVAL_SECONDS = 60;
+    public static final String PURGE_BATCH_SIZE_PROPERTY = "identity.provider.purge.batchSize";
+    public static final int DEFAULT_PURGE_BATCH_SIZE = 500;
+    public static final String PURGE_MAX_ROWS_PER_SECOND_PROPERTY = "identity.provider.purge.maxRowsPerSecond";
+    public static final int DEFAULT_PURGE_MAX_ROWS_PER_SECOND = 5000;
+
+    // System property running the one off fill of the authenticator property value hashes of an upgraded schema
+    public static final String VALUE_HASH_BACKFILL_PROPERTY = "identity.provider.valueHash.backfill";
+
+    // System properties of the in memory cache of identity providers
+    public static final String CACHE_ENABLED_PROPERTY = "identity.provider.cache.enabled";
+    public static final String CACHE_MAX_ENTRIES_PROPERTY = "identity.provider.cache.maxEntries";
+    public static final int DEFAULT_CACHE_MAX_ENTRIES = 10000;
+    public static final String CACHE_MAX_MISSES_PROPERTY = "identity.provider.cache.maxMisses";
+    public static final int DEFAULT_CACHE_MAX_MISSES = 10000;
+    public static final String CACHE_MISS_TTL_PROPERTY = "identity.provider.cache.missTtlMillis";
+    public static final long DEFAULT_CACHE_MISS_TTL_MILLIS = 10000;
+    public static final String CACHE_TTL_PROPERTY = "identity.provider.cache.ttlMillis";
+    public static final long DEFAULT_CACHE_TTL_MILLIS = 60000;
+    public static final String CACHE_REFRESH_AHEAD_FRACTION_PROPERTY = "identity.provider.cache.refreshAheadFraction";
+    public static final double DEFAULT_CACHE_REFRESH_AHEAD_FRACTION = 0.8;
+    public static final String CACHE_STALE_GRACE_PROPERTY = "identity.provider.cache.staleGraceMillis";
+    public static final long DEFAULT_CACHE_STALE_GRACE_MILLIS = 60000;
+    public static final String CACHE_WARM_UP_PROPERTY = "identity.provider.cache.warmUp";
+    public static final String CACHE_WARM_UP_PARALLELISM_PROPERTY = "identity.provider.cache.warmUp.parallelism";
+    public static final int DEFAULT_CACHE_WARM_UP_PARALLELISM = 4;
+    public static final String CACHE_WARM_UP_BATCH_SIZE_PROPERTY = "identity.provider.cache.warmUp.batchSize";
+    public static final int DEFAULT_CACHE_WARM_UP_BATCH_SIZE = 100;
+    public static final String CACHE_WARM_UP_TIME_BUDGET_PROPERTY = "identity.provider.cache.warmUp.timeBudgetMillis";
+    public static final long DEFAULT_CACHE_WARM_UP_TIME_BUDGET_MILLIS = 30000;
+
 }
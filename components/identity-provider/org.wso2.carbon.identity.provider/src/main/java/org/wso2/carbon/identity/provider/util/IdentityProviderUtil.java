@@ -18,8 +18,21 @@
 
 package org.wso2.carbon.identity.provider.util;
 
+import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.wso2.carbon.identity.provider.dao.JdbcTemplate;
+import org.wso2.carbon.identity.provider.dao.RoutingJdbcTemplate;
+
+import javax.naming.Context;
+import javax.naming.NamingException;
+import javax.sql.DataSource;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
 
 /**
  * Provides utility functionality required by Identity Provider service.
@@ -28,5 +41,60 @@ public class IdentityProviderUtil {
 
     private static final Logger log = LoggerFactory.getLogger(IdentityProviderUtil.class);
 
+    /**
+     * Creates the JDBC template of the identity provider components, configured from the system properties.
+     * When replica data sources are configured, the read-only calls are routed to them.
+     *
+     * @param context the JNDI context to look up the replica data sources.
+     * @param primaryDataSource the data source used for the writes.
+     * @return the JDBC template.
+     * @throws NamingException when a replica data source cannot be looked up.
+     */
+    public static JdbcTemplate createJdbcTemplate(Context context, DataSource primaryDataSource)
+            throws NamingException {
+        JdbcTemplate jdbcTemplate;
+        String replicaNames = System.getProperty(IdentityProviderConstants.REPLICA_DATA_SOURCES_PROPERTY);
+        if (StringUtils.isNotBlank(replicaNames)) {
+            List<DataSource> replicas = new ArrayList<>();
+            for (String replicaName : StringUtils.split(replicaNames, ',')) {
+                replicas.add((DataSource) context.lookup(replicaName.trim()));
+            }
+            RoutingJdbcTemplate routingJdbcTemplate = new RoutingJdbcTemplate(primaryDataSource, replicas,
+                    RoutingJdbcTemplate.ReplicaSelection.valueOf(System.getProperty(
+                            IdentityProviderConstants.REPLICA_SELECTION_PROPERTY,
+                            RoutingJdbcTemplate.ReplicaSelection.ROUND_ROBIN.name())));
+            routingJdbcTemplate.setReadYourWritesWindow(Long.getLong(
+                    IdentityProviderConstants.READ_YOUR_WRITES_WINDOW_PROPERTY,
+                    IdentityProviderConstants.DEFAULT_READ_YOUR_WRITES_WINDOW_MILLIS));
+            if (log.isDebugEnabled()) {
+                log.debug("Routing the read-only database calls to the replicas: {}", replicaNames);
+            }
+            jdbcTemplate = routingJdbcTemplate;
+        } else {
+            jdbcTemplate = new JdbcTemplate(primaryDataSource);
+        }
+        jdbcTemplate.setQueryTimeout(Integer.getInteger(IdentityProviderConstants.QUERY_TIMEOUT_PROPERTY,
+                IdentityProviderConstants.DEFAULT_QUERY_TIMEOUT_SECONDS));
+        return jdbcTemplate;
+    }
 
+    /**
+     * Hashes a property value into the fixed width form stored along with it, so that properties can be looked up by
+     * value through an index regardless of the length of the value.
+     * The hash only narrows down the candidate rows; the full value still needs to be compared.
+     *
+     * @param value the property value.
+     * @return Base64 encoded SHA-256 digest of the value, or null when the value is null.
+     */
+    public static String hashPropertyValue(String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
+            return Base64.getEncoder().encodeToString(messageDigest.digest(value.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not supported by the platform", e);
+        }
+    }
 }
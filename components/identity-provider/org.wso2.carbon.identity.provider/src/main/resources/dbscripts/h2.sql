@@ -1,6 +1,6 @@
 CREATE TABLE IF NOT EXISTS IDP (
 			ID INTEGER AUTO_INCREMENT,
-			TENANT_ID INTEGER,
+			TENANT_ID INTEGER NOT NULL DEFAULT -1234,
 			NAME VARCHAR(254) NOT NULL,
 			DISPLAY_NAME VARCHAR(255),
 			DESCRIPTION VARCHAR (1024),
@@ -19,8 +19,17 @@ CREATE TABLE IF NOT EXISTS IDP (
  			PROVISIONING_ROLE VARCHAR(128),
  			IS_FEDERATION_HUB CHAR(1) NOT NULL DEFAULT '0',
  			IS_LOCAL_CLAIM_DIALECT CHAR(1) NOT NULL DEFAULT '0',
+ 			VERSION INTEGER NOT NULL DEFAULT 0,
+ 			IS_DELETED CHAR(1) NOT NULL DEFAULT '0',
 			PRIMARY KEY (ID),
-			UNIQUE (NAME));
+			UNIQUE (TENANT_ID, NAME));
+
+CREATE INDEX IF NOT EXISTS IDX_IDP_TENANT ON IDP (TENANT_ID, ID);
+CREATE INDEX IF NOT EXISTS IDX_IDP_TENANT_ENABLED ON IDP (TENANT_ID, IS_ENABLED, ID);
+CREATE INDEX IF NOT EXISTS IDX_IDP_TENANT_FEDERATION_HUB ON IDP (TENANT_ID, IS_FEDERATION_HUB, ID);
+CREATE INDEX IF NOT EXISTS IDX_IDP_TENANT_HOME_REALM ON IDP (TENANT_ID, HOME_REALM_ID);
+CREATE INDEX IF NOT EXISTS IDX_IDP_DELETED ON IDP (IS_DELETED, ID);
+CREATE INDEX IF NOT EXISTS IDX_IDP_ENABLED ON IDP (IS_ENABLED, IS_DELETED, ID, TENANT_ID);
 
 -- CREATE TABLE IF NOT EXISTS IDP_METADATA (
 --       ID INTEGER AUTO_INCREMENT,
@@ -48,11 +57,14 @@ CREATE TABLE IF NOT EXISTS IDP_AUTHENTICATOR_PROPERTY (
             AUTHENTICATOR_ID INTEGER,
             PROPERTY_KEY VARCHAR(255) NOT NULL,
             PROPERTY_VALUE VARCHAR(2047),
+            VALUE_HASH CHAR(44),
             IS_SECRET CHAR (1) DEFAULT '0',
             PRIMARY KEY (ID),
             UNIQUE (AUTHENTICATOR_ID, PROPERTY_KEY),
             FOREIGN KEY (AUTHENTICATOR_ID) REFERENCES IDP_AUTHENTICATOR(ID) ON DELETE CASCADE);
 
+CREATE INDEX IF NOT EXISTS IDX_IDP_AUTH_PROP_VALUE_HASH ON IDP_AUTHENTICATOR_PROPERTY (PROPERTY_KEY, VALUE_HASH);
+
 CREATE TABLE IF NOT EXISTS IDP_PROVISIONING_CONFIG (
             ID INTEGER AUTO_INCREMENT,
             IDP_ID INTEGER,
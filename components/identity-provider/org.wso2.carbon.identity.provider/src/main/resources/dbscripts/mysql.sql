@@ -1,5 +1,6 @@
 CREATE TABLE IF NOT EXISTS IDP (
 			ID INTEGER AUTO_INCREMENT,
+			TENANT_ID INTEGER NOT NULL DEFAULT -1234,
 			NAME VARCHAR(254) NOT NULL,
 			DISPLAY_NAME VARCHAR(255),
 			DESCRIPTION VARCHAR (1024),
@@ -18,8 +19,16 @@ CREATE TABLE IF NOT EXISTS IDP (
  			PROVISIONING_ROLE VARCHAR(128),
  			IS_FEDERATION_HUB CHAR(1) NOT NULL DEFAULT '0',
  			IS_LOCAL_CLAIM_DIALECT CHAR(1) NOT NULL DEFAULT '0',
+ 			VERSION INTEGER NOT NULL DEFAULT 0,
+ 			IS_DELETED CHAR(1) NOT NULL DEFAULT '0',
 			PRIMARY KEY (ID),
-			UNIQUE (NAME)
+			UNIQUE (TENANT_ID, NAME),
+			INDEX IDX_IDP_TENANT (TENANT_ID, ID),
+			INDEX IDX_IDP_TENANT_ENABLED (TENANT_ID, IS_ENABLED, ID),
+			INDEX IDX_IDP_TENANT_FEDERATION_HUB (TENANT_ID, IS_FEDERATION_HUB, ID),
+			INDEX IDX_IDP_TENANT_HOME_REALM (TENANT_ID, HOME_REALM_ID),
+			INDEX IDX_IDP_DELETED (IS_DELETED, ID),
+			INDEX IDX_IDP_ENABLED (IS_ENABLED, IS_DELETED, ID, TENANT_ID)
 )ENGINE INNODB;
 
 -- CREATE TABLE IF NOT EXISTS IDP_METADATA (
@@ -50,9 +59,11 @@ CREATE TABLE IF NOT EXISTS IDP_AUTHENTICATOR_PROPERTY (
             AUTHENTICATOR_ID INTEGER,
             PROPERTY_KEY VARCHAR(255) NOT NULL,
             PROPERTY_VALUE VARCHAR(2047),
+            VALUE_HASH CHAR(44),
             IS_SECRET CHAR (1) DEFAULT '0',
             PRIMARY KEY (ID),
             UNIQUE (AUTHENTICATOR_ID, PROPERTY_KEY),
+            INDEX IDX_IDP_AUTH_PROP_VALUE_HASH (PROPERTY_KEY, VALUE_HASH),
             FOREIGN KEY (AUTHENTICATOR_ID) REFERENCES IDP_AUTHENTICATOR(ID) ON DELETE CASCADE
 )ENGINE INNODB;
 
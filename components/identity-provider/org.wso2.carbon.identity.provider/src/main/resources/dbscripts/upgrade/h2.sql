@@ -0,0 +1,7 @@
+-- Upgrades a schema created before the hash of the authenticator property values was introduced. The hash serves the
+-- lookup of identity providers by authenticator property. H2 cannot compute it, hence the hashes of the stored
+-- properties are filled by starting the server once with -Didentity.provider.valueHash.backfill=true.
+
+ALTER TABLE IDP_AUTHENTICATOR_PROPERTY ADD COLUMN IF NOT EXISTS VALUE_HASH CHAR(44) AFTER PROPERTY_VALUE;
+
+CREATE INDEX IF NOT EXISTS IDX_IDP_AUTH_PROP_VALUE_HASH ON IDP_AUTHENTICATOR_PROPERTY (PROPERTY_KEY, VALUE_HASH);
@@ -0,0 +1,11 @@
+-- Upgrades a schema created before the hash of the authenticator property values was introduced. The hash serves the
+-- lookup of identity providers by authenticator property, and is filled here for the stored properties. It is the
+-- Base64 encoded SHA-256 digest of the UTF-8 bytes of the value, as computed by the server on writes (MySQL 5.6+).
+
+ALTER TABLE IDP_AUTHENTICATOR_PROPERTY
+            ADD VALUE_HASH CHAR(44) AFTER PROPERTY_VALUE,
+            ADD INDEX IDX_IDP_AUTH_PROP_VALUE_HASH (PROPERTY_KEY, VALUE_HASH);
+
+UPDATE IDP_AUTHENTICATOR_PROPERTY
+            SET VALUE_HASH = TO_BASE64(UNHEX(SHA2(CONVERT(PROPERTY_VALUE USING utf8mb4), 256)))
+            WHERE PROPERTY_VALUE IS NOT NULL AND VALUE_HASH IS NULL;
@@ -18,36 +18,71 @@
 
 package org.wso2.carbon.identity.provider.dao;
 
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.tuple.ImmutablePair;
 import org.apache.commons.lang3.tuple.Pair;
 import org.h2.jdbcx.JdbcConnectionPool;
+import org.testng.Reporter;
+import org.testng.SkipException;
 import org.testng.annotations.Test;
+import org.wso2.carbon.identity.provider.IdentityProviderConflictException;
+import org.wso2.carbon.identity.provider.IdentityProviderException;
+import org.wso2.carbon.identity.provider.IdentityProviderInterceptor;
+import org.wso2.carbon.identity.provider.internal.dao.CacheBackedIdPDAO;
 import org.wso2.carbon.identity.provider.internal.dao.IdentityProviderDAO;
+import org.wso2.carbon.identity.provider.internal.service.DeletedIdentityProviderPurger;
+import org.wso2.carbon.identity.provider.internal.service.IdentityProviderCacheWarmer;
+import org.wso2.carbon.identity.provider.internal.service.IdentityProviderServiceImpl;
+import org.wso2.carbon.identity.provider.model.AuthenticatorConfig;
+import org.wso2.carbon.identity.provider.model.FederatedIdentityProvider;
+import org.wso2.carbon.identity.provider.model.IdPListQuery;
+import org.wso2.carbon.identity.provider.model.IdPListResult;
 import org.wso2.carbon.identity.provider.model.IdPMetadata;
 import org.wso2.carbon.identity.provider.model.IdentityProvider;
+import org.wso2.carbon.identity.provider.model.ProvisionerConfig;
 import org.wso2.carbon.identity.provider.model.ResidentIdentityProvider;
+import org.wso2.carbon.identity.provider.util.IdentityProviderConstants;
+import org.wso2.carbon.identity.provider.util.IdentityProviderUtil;
 
 import javax.sql.DataSource;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.lang.reflect.Proxy;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertNotEquals;
 import static org.testng.Assert.assertNotNull;
 import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
 import static org.testng.Assert.assertTrue;
 import static org.testng.Assert.fail;
 
 @Test
 public class IdentityProviderDAOTest {
 
+    private static final String BENCHMARK_PROPERTY = "identity.provider.benchmark";
+
     @Test
     public void testListAllIdentityProviders() throws Exception {
         JdbcTemplate jdbcTemplate = getJdbcTemplate();
@@ -62,6 +97,26 @@ public class IdentityProviderDAOTest {
 
     }
 
+    @Test
+    public void testStreamAllIdentityProviders() throws Exception {
+        JdbcTemplate jdbcTemplate = getJdbcTemplate();
+        IdentityProviderDAO identityProviderDAO = new IdentityProviderDAO();
+        identityProviderDAO.setJdbcTemplate(jdbcTemplate);
+
+        jdbcTemplate.executeUpdate(
+                "INSERT INTO IDP (NAME, DISPLAY_NAME, DESCRIPTION) VALUES ('No Name', 'No Name', 'No Name')");
+        try (Stream<Pair<Integer, String>> identityProviders = identityProviderDAO.streamAllIdentityProviders()) {
+            assertEquals(identityProviders.map(Pair::getRight).collect(Collectors.toList()),
+                    Collections.singletonList("No Name"));
+        }
+
+        IdentityProviderServiceImpl identityProviderService = new IdentityProviderServiceImpl();
+        identityProviderService.setIdentityProviderDAO(identityProviderDAO);
+        List<String> identityProviderNames = new ArrayList<>();
+        identityProviderService.forEachIdentityProvider(identityProviderNames::add);
+        assertEquals(identityProviderNames, Collections.singletonList("No Name"));
+    }
+
     @Test
     public void testListEnabledIdentityProviders() throws Exception {
         JdbcTemplate jdbcTemplate = getJdbcTemplate();
@@ -97,6 +152,1000 @@ public class IdentityProviderDAOTest {
         assertEquals(identityProviderList.size(), 1, "There should be on IdP after adding");
     }
 
+    @Test
+    public void testAddIdentityProviderWithConfigs() throws Exception {
+        JdbcTemplate jdbcTemplate = getJdbcTemplate();
+        IdentityProviderDAO identityProviderDAO = new IdentityProviderDAO();
+        identityProviderDAO.setJdbcTemplate(jdbcTemplate);
+
+        IdentityProvider identityProvider = FederatedIdentityProvider.newBuilder(0, "Test Name")
+                .addAuthenticator(new AuthenticatorConfig.AuthenticatorConfigBuilder("SAMLSSOAuthenticator")
+                        .setEnabled(true)
+                        .addProperty("IdPEntityId", "localhost")
+                        .addProperty("SPEntityId", "carbonServer").build())
+                .addAuthenticator(new AuthenticatorConfig.AuthenticatorConfigBuilder("OpenIDConnectAuthenticator")
+                        .addProperty("ClientId", "client").build())
+                .addProvisioner(new ProvisionerConfig.ProvisionerConfigBuilder("scim")
+                        .addProperty("scim-username", "admin").build())
+                .build();
+
+        int idpId = identityProviderDAO.createIdentityProvider(identityProvider);
+        assertNotEquals(idpId, 0, "New IDP should have non zero ID");
+        assertEquals(countRows(jdbcTemplate, "IDP_AUTHENTICATOR"), 2);
+        assertEquals(countRows(jdbcTemplate, "IDP_AUTHENTICATOR_PROPERTY"), 3);
+        assertEquals(countRows(jdbcTemplate, "IDP_PROVISIONING_CONFIG"), 1);
+        assertEquals(countRows(jdbcTemplate, "IDP_PROV_CONFIG_PROPERTY"), 1);
+    }
+
+    @Test
+    public void testNullPropertyValues() throws Exception {
+        JdbcTemplate jdbcTemplate = getJdbcTemplate();
+        IdentityProviderDAO identityProviderDAO = new IdentityProviderDAO();
+        identityProviderDAO.setJdbcTemplate(jdbcTemplate);
+
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("ClientSecret", null);
+        IdentityProvider identityProvider = FederatedIdentityProvider.newBuilder(0, "Null IdP")
+                .addAuthenticator(new AuthenticatorConfig.AuthenticatorConfigBuilder("OpenIDConnectAuthenticator")
+                        .setProperties(properties).build())
+                .addProvisioner(new ProvisionerConfig.ProvisionerConfigBuilder("scim")
+                        .setProperties(properties).build())
+                .build();
+        int idpId = identityProviderDAO.createIdentityProvider(identityProvider);
+        int propertyId = jdbcTemplate.fetchSingleRecord("SELECT ID FROM IDP_AUTHENTICATOR_PROPERTY "
+                + "WHERE PROPERTY_VALUE IS NULL AND VALUE_HASH IS NULL", (resultSet, rowNumber) -> resultSet.getInt(1),
+                null);
+        assertEquals((int) jdbcTemplate.fetchSingleRecord("SELECT COUNT(*) FROM IDP_PROV_CONFIG_PROPERTY "
+                + "WHERE PROPERTY_VALUE IS NULL", (resultSet, rowNumber) -> resultSet.getInt(1), null), 1);
+        assertNull(identityProviderDAO.getIdPByAuthenticatorProperty("ClientSecret", "null"));
+
+        identityProviderDAO.updateIdentityProvider(FederatedIdentityProvider.newBuilder(idpId, "Null IdP")
+                .addAuthenticator(new AuthenticatorConfig.AuthenticatorConfigBuilder("OpenIDConnectAuthenticator")
+                        .setProperties(properties).build())
+                .addProvisioner(new ProvisionerConfig.ProvisionerConfigBuilder("scim")
+                        .setProperties(properties).build())
+                .build());
+        assertEquals((int) jdbcTemplate.fetchSingleRecord("SELECT ID FROM IDP_AUTHENTICATOR_PROPERTY "
+                + "WHERE PROPERTY_VALUE IS NULL AND VALUE_HASH IS NULL", (resultSet, rowNumber) -> resultSet.getInt(1),
+                null), propertyId, "An unchanged null value must keep its row");
+    }
+
+    @Test
+    public void testLoadIdentityProviderGraph() throws Exception {
+        JdbcTemplate jdbcTemplate = getJdbcTemplate();
+        IdentityProviderDAO identityProviderDAO = new IdentityProviderDAO();
+        identityProviderDAO.setJdbcTemplate(jdbcTemplate);
+
+        IdentityProvider identityProvider = FederatedIdentityProvider.newBuilder(0, "Test Name")
+                .setDisplayLabel("Test Label")
+                .addAuthenticator(new AuthenticatorConfig.AuthenticatorConfigBuilder("SAMLSSOAuthenticator")
+                        .setEnabled(true)
+                        .addProperty("IdPEntityId", "localhost")
+                        .addProperty("SPEntityId", "carbonServer").build())
+                .addAuthenticator(new AuthenticatorConfig.AuthenticatorConfigBuilder("OpenIDConnectAuthenticator")
+                        .build())
+                .addProvisioner(new ProvisionerConfig.ProvisionerConfigBuilder("scim")
+                        .setEnabled(true)
+                        .addProperty("scim-username", "admin")
+                        .addProperty("scim-endpoint", "https://localhost").build())
+                .build();
+        int idpId = identityProviderDAO.createIdentityProvider(identityProvider);
+
+        DefaultQueryMetricsCollector metricsCollector = new DefaultQueryMetricsCollector();
+        jdbcTemplate.setMetricsCollector(metricsCollector);
+        IdentityProvider loaded = identityProviderDAO.loadIdentityProviderGraph("Test Name");
+        assertEquals(metricsCollector.getConnectionStatistics().getCount(), 2,
+                "The IdP should be loaded with a fixed number of queries");
+
+        assertEquals(loaded.getIdPMetadata().getId(), idpId);
+        assertEquals(loaded.getIdPMetadata().getDisplayLabel(), "Test Label");
+        Map<String, AuthenticatorConfig> authenticators = loaded.getAuthenticationConfig().getAuthenticators()
+                .stream().collect(Collectors.toMap(AuthenticatorConfig::getName, authenticator -> authenticator));
+        assertEquals(authenticators.size(), 2);
+        assertTrue(authenticators.get("SAMLSSOAuthenticator").isEnabled());
+        assertEquals(authenticators.get("SAMLSSOAuthenticator").getProperties().get("SPEntityId"), "carbonServer");
+        assertTrue(authenticators.get("OpenIDConnectAuthenticator").getProperties().isEmpty());
+        ProvisionerConfig provisioner = loaded.getProvisioningConfig().getProvisioners().iterator().next();
+        assertEquals(provisioner.getName(), "scim");
+        assertTrue(provisioner.isEnabled());
+        assertEquals(provisioner.getProperties().size(), 2);
+
+        assertEquals(identityProviderDAO.loadIdentityProviderGraph(idpId).getIdPMetadata().getName(), "Test Name");
+        assertNull(identityProviderDAO.loadIdentityProviderGraph("Test Name-Not Exists"));
+    }
+
+    @Test
+    public void testGetIdentityProviders() throws Exception {
+        JdbcTemplate jdbcTemplate = getJdbcTemplate();
+        jdbcTemplate.setMaxInListSize(4);
+        IdentityProviderDAO identityProviderDAO = new IdentityProviderDAO();
+        identityProviderDAO.setJdbcTemplate(jdbcTemplate);
+
+        List<Integer> ids = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            ids.add(identityProviderDAO.createIdentityProvider(FederatedIdentityProvider.newBuilder(0, "IdP " + i)
+                    .addAuthenticator(new AuthenticatorConfig.AuthenticatorConfigBuilder("SAMLSSOAuthenticator")
+                            .addProperty("IdPEntityId", "entity-" + i).build())
+                    .addProvisioner(new ProvisionerConfig.ProvisionerConfigBuilder("scim").build())
+                    .build()));
+            names.add("IdP " + i);
+        }
+        ids.add(-1);
+        names.add("IdP-Not Exists");
+
+        DefaultQueryMetricsCollector metricsCollector = new DefaultQueryMetricsCollector();
+        jdbcTemplate.setMetricsCollector(metricsCollector);
+        Map<Integer, IdentityProvider> byId = identityProviderDAO.getIdentityProviders(ids);
+        assertEquals(byId.size(), 10);
+        assertEquals(metricsCollector.getConnectionStatistics().getCount(), 6,
+                "Two queries are expected for each chunk of 4 IDs");
+        IdentityProvider identityProvider = byId.get(ids.get(3));
+        assertEquals(identityProvider.getIdPMetadata().getName(), "IdP 3");
+        assertEquals(identityProvider.getAuthenticationConfig().getAuthenticators().iterator().next()
+                .getProperties().get("IdPEntityId"), "entity-3");
+        assertEquals(identityProvider.getProvisioningConfig().getProvisioners().size(), 1);
+
+        Map<String, IdentityProvider> byName = identityProviderDAO.getIdentityProvidersByName(names.subList(5, 11));
+        assertEquals(byName.keySet(), new HashSet<>(names.subList(5, 10)));
+        assertTrue(identityProviderDAO.getIdentityProviders(Collections.emptyList()).isEmpty());
+    }
+
+    @Test
+    public void testListIdentityProvidersByPage() throws Exception {
+        JdbcTemplate jdbcTemplate = getJdbcTemplate();
+        IdentityProviderDAO identityProviderDAO = new IdentityProviderDAO();
+        identityProviderDAO.setJdbcTemplate(jdbcTemplate);
+
+        List<Integer> ids = new ArrayList<>();
+        for (int i = 0; i < 7; i++) {
+            ids.add(identityProviderDAO.createIdentityProvider(createIdentityProvider("corp-" + i, "Corp", "")));
+        }
+        identityProviderDAO.createIdentityProvider(createIdentityProvider("cor%p", "Corp", ""));
+        identityProviderDAO.createIdentityProvider(createIdentityProvider("other", "Other", ""));
+        identityProviderDAO.disableIdentityProvider(ids.get(1));
+        identityProviderDAO.disableIdentityProvider(ids.get(3));
+        jdbcTemplate.executeUpdate("UPDATE IDP SET IS_FEDERATION_HUB='1' WHERE ID=?",
+                preparedStatement -> preparedStatement.setInt(1, ids.get(2)));
+
+        List<String> pagedNames = new ArrayList<>();
+        IdPListQuery.IdPListQueryBuilder queryBuilder = IdPListQuery.newBuilder().setNamePrefix("corp-").setLimit(3)
+                .setIncludeTotalCount(true);
+        IdPListResult page;
+        do {
+            page = identityProviderDAO.listIdentityProviders(queryBuilder.build());
+            assertTrue(page.getIdentityProviders().size() <= 3);
+            assertEquals(page.getTotalCount(), 7);
+            page.getIdentityProviders().forEach(idp -> pagedNames.add(idp.getIdPMetadata().getName()));
+            queryBuilder.setAfterId(page.getNextAfterId());
+        } while (page.hasMore());
+        assertEquals(pagedNames, Arrays.asList("corp-0", "corp-1", "corp-2", "corp-3", "corp-4", "corp-5", "corp-6"));
+
+        IdPListResult enabled = identityProviderDAO.listIdentityProviders(IdPListQuery.newBuilder()
+                .setNamePrefix("corp-").setEnabled(true).build());
+        assertEquals(enabled.getIdentityProviders().size(), 5);
+        assertFalse(enabled.hasMore());
+        assertEquals(enabled.getTotalCount(), IdPListResult.TOTAL_COUNT_NOT_REQUESTED);
+
+        IdPListResult federationHubs = identityProviderDAO.listIdentityProviders(IdPListQuery.newBuilder()
+                .setFederationHub(true).setIncludeTotalCount(true).build());
+        assertEquals(federationHubs.getTotalCount(), 1);
+        assertEquals(federationHubs.getIdentityProviders().get(0).getIdPMetadata().getId(), (int) ids.get(2));
+        assertTrue(federationHubs.getIdentityProviders().get(0).getIdPMetadata().isFederationHub());
+
+        IdPListResult wildcard = identityProviderDAO.listIdentityProviders(IdPListQuery.newBuilder()
+                .setNamePrefix("cor%").build());
+        assertEquals(wildcard.getIdentityProviders().size(), 1, "Wildcards in the prefix must be matched literally");
+        assertEquals(wildcard.getIdentityProviders().get(0).getIdPMetadata().getName(), "cor%p");
+    }
+
+    @Test
+    public void testGetIdPByAuthenticatorProperty() throws Exception {
+        JdbcTemplate jdbcTemplate = getJdbcTemplate();
+        IdentityProviderDAO identityProviderDAO = new IdentityProviderDAO();
+        identityProviderDAO.setJdbcTemplate(jdbcTemplate);
+
+        String longIssuer = "https://issuer.example.com/" + StringUtils.repeat("tenant/", 200);
+        int idpId = identityProviderDAO.createIdentityProvider(FederatedIdentityProvider.newBuilder(0, "Issuer IdP")
+                .addAuthenticator(new AuthenticatorConfig.AuthenticatorConfigBuilder("OpenIDConnectAuthenticator")
+                        .addProperty("ClientId", "client-1").addProperty("Issuer", longIssuer).build())
+                .build());
+        identityProviderDAO.createIdentityProvider(FederatedIdentityProvider.newBuilder(0, "Other IdP")
+                .addAuthenticator(new AuthenticatorConfig.AuthenticatorConfigBuilder("OpenIDConnectAuthenticator")
+                        .addProperty("ClientId", "client-2").build())
+                .build());
+
+        assertEquals(identityProviderDAO.getIdPByAuthenticatorProperty("Issuer", longIssuer).getIdPMetadata().getId(),
+                idpId);
+        IdentityProvider identityProvider = identityProviderDAO.getIdPByAuthenticatorProperty("ClientId", "client-1");
+        assertEquals(identityProvider.getIdPMetadata().getName(), "Issuer IdP");
+        assertEquals(identityProvider.getAuthenticationConfig().getAuthenticators().iterator().next().getProperties()
+                .get("Issuer"), longIssuer, "The full graph must be returned, the same as for the other lookups");
+        assertNull(identityProviderDAO.getIdPByAuthenticatorProperty("Issuer", "client-1"));
+        assertNull(identityProviderDAO.getIdPByAuthenticatorProperty("ClientId", "client-3"));
+
+        // A row whose hash matches but whose value does not must not be returned.
+        jdbcTemplate.executeUpdate("UPDATE IDP_AUTHENTICATOR_PROPERTY SET PROPERTY_VALUE=? WHERE PROPERTY_VALUE=?",
+                preparedStatement -> {
+                    preparedStatement.setString(1, "client-x");
+                    preparedStatement.setString(2, "client-2");
+                });
+        jdbcTemplate.executeUpdate("UPDATE IDP_AUTHENTICATOR_PROPERTY SET VALUE_HASH=? WHERE PROPERTY_VALUE=?",
+                preparedStatement -> {
+                    preparedStatement.setString(1, IdentityProviderUtil.hashPropertyValue("client-y"));
+                    preparedStatement.setString(2, "client-x");
+                });
+        assertNull(identityProviderDAO.getIdPByAuthenticatorProperty("ClientId", "client-y"));
+    }
+
+    @Test
+    public void testBackfillAuthenticatorPropertyHashes() throws Exception {
+        JdbcTemplate jdbcTemplate = getJdbcTemplate();
+        IdentityProviderDAO identityProviderDAO = new IdentityProviderDAO();
+        identityProviderDAO.setJdbcTemplate(jdbcTemplate);
+
+        int idpId = identityProviderDAO.createIdentityProvider(FederatedIdentityProvider.newBuilder(0, "Legacy IdP")
+                .addAuthenticator(new AuthenticatorConfig.AuthenticatorConfigBuilder("SAMLSSOAuthenticator")
+                        .addProperty("IdPEntityId", "legacy-entity").addProperty("SPEntityId", "legacy-sp")
+                        .addProperty("NameIDType", "email").build())
+                .build());
+        // Rows stored before the value hash was introduced, in a schema upgraded by the upgrade script.
+        jdbcTemplate.executeUpdate("DROP INDEX IDX_IDP_AUTH_PROP_VALUE_HASH");
+        jdbcTemplate.executeUpdate("ALTER TABLE IDP_AUTHENTICATOR_PROPERTY DROP COLUMN VALUE_HASH");
+        try (InputStream upgradeInputStream = this.getClass().getClassLoader()
+                .getResourceAsStream("dbscripts/upgrade/h2.sql")) {
+            jdbcTemplate.executeUpdate(read(upgradeInputStream));
+        }
+        assertNull(identityProviderDAO.getIdPByAuthenticatorProperty("IdPEntityId", "legacy-entity"));
+
+        assertEquals(identityProviderDAO.backfillAuthenticatorPropertyHashes(2), 3);
+        assertEquals(identityProviderDAO.getIdPByAuthenticatorProperty("IdPEntityId", "legacy-entity")
+                .getIdPMetadata().getId(), idpId);
+        assertEquals(identityProviderDAO.getIdPByAuthenticatorProperty("NameIDType", "email").getIdPMetadata()
+                .getId(), idpId);
+        assertEquals(identityProviderDAO.backfillAuthenticatorPropertyHashes(2), 0);
+    }
+
+    @Test
+    public void testGetIdPByAuthenticatorPropertyBenchmark() throws Exception {
+        if (!Boolean.getBoolean(BENCHMARK_PROPERTY)) {
+            throw new SkipException("Benchmarks run only when " + BENCHMARK_PROPERTY + " is set");
+        }
+        final String UNHASHED_LOOKUP_SQL = "SELECT IDP.ID FROM IDP INNER JOIN IDP_AUTHENTICATOR ON "
+                + "IDP.ID = IDP_AUTHENTICATOR.IDP_ID INNER JOIN IDP_AUTHENTICATOR_PROPERTY ON IDP_AUTHENTICATOR.ID = "
+                + "IDP_AUTHENTICATOR_PROPERTY.AUTHENTICATOR_ID WHERE IDP_AUTHENTICATOR_PROPERTY.PROPERTY_KEY = ? "
+                + "AND IDP_AUTHENTICATOR_PROPERTY.PROPERTY_VALUE = ?";
+        JdbcTemplate jdbcTemplate = getJdbcTemplate();
+        IdentityProviderDAO identityProviderDAO = new IdentityProviderDAO();
+        identityProviderDAO.setJdbcTemplate(jdbcTemplate);
+
+        // 100000 IdPs, each with an authenticator of 10 properties, make up 1M property rows.
+        int idpCount = 100000;
+        List<Integer> authenticatorIds = new ArrayList<>();
+        for (int i = 0; i < idpCount; i++) {
+            authenticatorIds.add(i + 1);
+        }
+        jdbcTemplate.executeBatch("INSERT INTO IDP (ID, NAME) VALUES (?, ?)", authenticatorIds,
+                (preparedStatement, id) -> {
+                    preparedStatement.setInt(1, id);
+                    preparedStatement.setString(2, "idp-" + id);
+                }, false);
+        jdbcTemplate.executeBatch("INSERT INTO IDP_AUTHENTICATOR (ID, IDP_ID, NAME) VALUES (?, ?, ?)",
+                authenticatorIds, (preparedStatement, id) -> {
+                    preparedStatement.setInt(1, id);
+                    preparedStatement.setInt(2, id);
+                    preparedStatement.setString(3, "OpenIDConnectAuthenticator");
+                }, false);
+        List<Pair<Integer, Integer>> properties = new ArrayList<>();
+        for (int id : authenticatorIds) {
+            for (int key = 0; key < 10; key++) {
+                properties.add(ImmutablePair.of(id, key));
+            }
+        }
+        jdbcTemplate.executeBatch("INSERT INTO IDP_AUTHENTICATOR_PROPERTY (AUTHENTICATOR_ID, PROPERTY_KEY, "
+                + "PROPERTY_VALUE, VALUE_HASH) VALUES (?, ?, ?, ?)", properties, (preparedStatement, property) -> {
+                    String value = "https://issuer.example.com/" + property.getLeft() + "/" + property.getRight();
+                    preparedStatement.setInt(1, property.getLeft());
+                    preparedStatement.setString(2,
+                            property.getRight() == 0 ? "ClientId" : "key-" + property.getRight());
+                    preparedStatement.setString(3, value);
+                    preparedStatement.setString(4, IdentityProviderUtil.hashPropertyValue(value));
+                }, false);
+
+        int lookups = 20;
+        long unhashedStart = System.nanoTime();
+        for (int i = 0; i < lookups; i++) {
+            int id = idpCount - i * 997;
+            assertEquals(jdbcTemplate.fetchSingleRecord(UNHASHED_LOOKUP_SQL,
+                    (resultSet, rowNumber) -> resultSet.getInt(1), preparedStatement -> {
+                        preparedStatement.setString(1, "ClientId");
+                        preparedStatement.setString(2, "https://issuer.example.com/" + id + "/0");
+                    }), Integer.valueOf(id));
+        }
+        long hashedStart = System.nanoTime();
+        for (int i = 0; i < lookups; i++) {
+            int id = idpCount - i * 997;
+            assertEquals(identityProviderDAO.getIdPByAuthenticatorProperty("ClientId",
+                    "https://issuer.example.com/" + id + "/0").getIdPMetadata().getId(), id);
+        }
+        long hashedDone = System.nanoTime();
+        Reporter.log("Resolving an IdP among 1M authenticator properties, by value: "
+                + TimeUnit.NANOSECONDS.toMicros((hashedStart - unhashedStart) / lookups) + " us, by value hash: "
+                + TimeUnit.NANOSECONDS.toMicros((hashedDone - hashedStart) / lookups) + " us", true);
+    }
+
+    @Test
+    public void testUpdateIdentityProvider() throws Exception {
+        JdbcTemplate jdbcTemplate = getJdbcTemplate();
+        IdentityProviderDAO identityProviderDAO = new IdentityProviderDAO();
+        identityProviderDAO.setJdbcTemplate(jdbcTemplate);
+
+        int idpId = identityProviderDAO.createIdentityProvider(FederatedIdentityProvider.newBuilder(0, "Update IdP")
+                .setDisplayLabel("Update")
+                .addAuthenticator(new AuthenticatorConfig.AuthenticatorConfigBuilder("SAMLSSOAuthenticator")
+                        .addProperty("IdPEntityId", "entity").addProperty("SSOUrl", "https://sso").build())
+                .addAuthenticator(new AuthenticatorConfig.AuthenticatorConfigBuilder("OpenIDConnectAuthenticator")
+                        .addProperty("ClientId", "client").build())
+                .addProvisioner(new ProvisionerConfig.ProvisionerConfigBuilder("scim")
+                        .addProperty("Endpoint", "https://scim").build())
+                .build());
+        int entityIdPropertyId = jdbcTemplate.fetchSingleRecord(
+                "SELECT ID FROM IDP_AUTHENTICATOR_PROPERTY WHERE PROPERTY_KEY='IdPEntityId'",
+                (resultSet, rowNumber) -> resultSet.getInt(1), null);
+        int provisionerId = jdbcTemplate.fetchSingleRecord("SELECT ID FROM IDP_PROVISIONING_CONFIG",
+                (resultSet, rowNumber) -> resultSet.getInt(1), null);
+
+        identityProviderDAO.updateIdentityProvider(FederatedIdentityProvider.newBuilder(idpId, "Update IdP")
+                .setDisplayLabel("Updated")
+                .addAuthenticator(new AuthenticatorConfig.AuthenticatorConfigBuilder("SAMLSSOAuthenticator")
+                        .setEnabled(false).addProperty("IdPEntityId", "entity").addProperty("SSOUrl", "https://sso2")
+                        .addProperty("LogoutUrl", "https://logout").build())
+                .addAuthenticator(new AuthenticatorConfig.AuthenticatorConfigBuilder("FacebookAuthenticator")
+                        .addProperty("ClientId", "facebook").build())
+                .addProvisioner(new ProvisionerConfig.ProvisionerConfigBuilder("scim")
+                        .addProperty("Endpoint", "https://scim").build())
+                .build());
+
+        IdentityProvider identityProvider = identityProviderDAO.loadIdentityProviderGraph(idpId);
+        assertEquals(identityProvider.getIdPMetadata().getDisplayLabel(), "Updated");
+        Map<String, AuthenticatorConfig> authenticators = identityProvider.getAuthenticationConfig()
+                .getAuthenticators().stream()
+                .collect(Collectors.toMap(AuthenticatorConfig::getName, authenticator -> authenticator));
+        assertEquals(authenticators.keySet(),
+                new HashSet<>(Arrays.asList("SAMLSSOAuthenticator", "FacebookAuthenticator")));
+        assertFalse(authenticators.get("SAMLSSOAuthenticator").isEnabled());
+        assertEquals(authenticators.get("SAMLSSOAuthenticator").getProperties().get("SSOUrl"), "https://sso2");
+        assertEquals(authenticators.get("SAMLSSOAuthenticator").getProperties().get("LogoutUrl"), "https://logout");
+        assertEquals(identityProviderDAO.getIdPByAuthenticatorProperty("SSOUrl", "https://sso2")
+                .getIdPMetadata().getId(), idpId);
+        assertEquals(countRows(jdbcTemplate, "IDP_AUTHENTICATOR_PROPERTY"), 4);
+
+        assertEquals((int) jdbcTemplate.fetchSingleRecord(
+                "SELECT ID FROM IDP_AUTHENTICATOR_PROPERTY WHERE PROPERTY_KEY='IdPEntityId'",
+                (resultSet, rowNumber) -> resultSet.getInt(1), null), entityIdPropertyId,
+                "Unchanged properties must keep their rows");
+        assertEquals((int) jdbcTemplate.fetchSingleRecord("SELECT ID FROM IDP_PROVISIONING_CONFIG",
+                (resultSet, rowNumber) -> resultSet.getInt(1), null), provisionerId,
+                "Unchanged provisioners must keep their rows");
+
+        try {
+            identityProviderDAO.updateIdentityProvider(FederatedIdentityProvider.newBuilder(-1, "Update IdP").build());
+            fail("Updating an identity provider which does not exist must fail");
+        } catch (IdentityProviderException e) {
+            assertTrue(e.getMessage().contains("-1"));
+        }
+    }
+
+    @Test
+    public void testConcurrentModificationConflict() throws Exception {
+        JdbcTemplate jdbcTemplate = getJdbcTemplate();
+        IdentityProviderDAO identityProviderDAO = new IdentityProviderDAO();
+        identityProviderDAO.setJdbcTemplate(jdbcTemplate);
+
+        int idpId = identityProviderDAO.createIdentityProvider(createIdentityProvider("Versioned IdP", "Label", ""));
+        IdentityProvider firstRead = identityProviderDAO.loadIdentityProviderGraph(idpId);
+        IdentityProvider secondRead = identityProviderDAO.loadIdentityProviderGraph(idpId);
+        assertEquals(firstRead.getIdPMetadata().getVersion(), 0);
+
+        identityProviderDAO.updateIdentityProvider(FederatedIdentityProvider.newBuilder(idpId, "Versioned IdP")
+                .setDisplayLabel("First").setVersion(firstRead.getIdPMetadata().getVersion()).build());
+        try {
+            identityProviderDAO.updateIdentityProvider(FederatedIdentityProvider.newBuilder(idpId, "Versioned IdP")
+                    .setDisplayLabel("Second").setVersion(secondRead.getIdPMetadata().getVersion())
+                    .addAuthenticator(new AuthenticatorConfig.AuthenticatorConfigBuilder("SAMLSSOAuthenticator")
+                            .build())
+                    .build());
+            fail("An update based on a stale version must conflict");
+        } catch (IdentityProviderConflictException e) {
+            assertEquals(e.getIdentityProviderId(), idpId);
+            assertEquals(e.getExpectedVersion(), 0);
+        }
+        IdentityProvider identityProvider = identityProviderDAO.loadIdentityProviderGraph(idpId);
+        assertEquals(identityProvider.getIdPMetadata().getDisplayLabel(), "First");
+        assertEquals(identityProvider.getIdPMetadata().getVersion(), 1);
+        assertEquals(countRows(jdbcTemplate, "IDP_AUTHENTICATOR"), 0, "A conflicting update must not be applied");
+
+        identityProviderDAO.disableIdentityProvider("Versioned IdP");
+        assertFalse(identityProviderDAO.loadIdentityProviderGraph(idpId).isEnabled());
+        try {
+            identityProviderDAO.updateIdentityProviderMetaData(idpId, identityProvider.getIdPMetadata());
+            fail("Metadata read before disabling the identity provider must conflict");
+        } catch (IdentityProviderConflictException e) {
+            assertEquals(e.getExpectedVersion(), 1);
+        }
+        identityProviderDAO.updateIdentityProviderMetaData(idpId,
+                identityProviderDAO.loadIdentityProviderGraph(idpId).getIdPMetadata());
+        assertEquals(identityProviderDAO.loadIdentityProviderGraph(idpId).getIdPMetadata().getVersion(), 3);
+    }
+
+    @Test
+    public void testUpdateAuthenticationAndProvisioningConfig() throws Exception {
+        JdbcTemplate jdbcTemplate = getJdbcTemplate();
+        IdentityProviderDAO identityProviderDAO = new IdentityProviderDAO();
+        identityProviderDAO.setJdbcTemplate(jdbcTemplate);
+
+        int idpId = identityProviderDAO.createIdentityProvider(FederatedIdentityProvider.newBuilder(0, "Config IdP")
+                .addAuthenticator(new AuthenticatorConfig.AuthenticatorConfigBuilder("SAMLSSOAuthenticator")
+                        .addProperty("IdPEntityId", "entity").build())
+                .build());
+        IdentityProvider updated = FederatedIdentityProvider.newBuilder(idpId, "Config IdP")
+                .addAuthenticator(new AuthenticatorConfig.AuthenticatorConfigBuilder("SAMLSSOAuthenticator")
+                        .addProperty("IdPEntityId", "entity2").build())
+                .addProvisioner(new ProvisionerConfig.ProvisionerConfigBuilder("scim")
+                        .addProperty("Endpoint", "https://scim").build())
+                .build();
+
+        identityProviderDAO.updateIdPAuthenticationConfig(idpId, 0, updated.getAuthenticationConfig());
+        identityProviderDAO.updateIdPProvisioningConfig(idpId, 1, updated.getProvisioningConfig());
+        IdentityProvider identityProvider = identityProviderDAO.loadIdentityProviderGraph(idpId);
+        assertEquals(identityProvider.getIdPMetadata().getVersion(), 2);
+        assertEquals(identityProvider.getAuthenticationConfig().getAuthenticators().iterator().next().getProperties()
+                .get("IdPEntityId"), "entity2");
+        assertEquals(identityProvider.getProvisioningConfig().getProvisioners().size(), 1);
+
+        try {
+            identityProviderDAO.updateIdPAuthenticationConfig(idpId, 1, FederatedIdentityProvider
+                    .newBuilder(idpId, "Config IdP").setAuthenticators(Collections.emptyList()).build()
+                    .getAuthenticationConfig());
+            fail("An update based on a stale version must conflict");
+        } catch (IdentityProviderConflictException e) {
+            assertEquals(e.getExpectedVersion(), 1);
+        }
+        assertEquals(countRows(jdbcTemplate, "IDP_AUTHENTICATOR"), 1, "A conflicting update must not be applied");
+        try {
+            identityProviderDAO.updateIdPProvisioningConfig(-1, 0, updated.getProvisioningConfig());
+            fail("Updating an identity provider which does not exist must fail");
+        } catch (IdentityProviderException e) {
+            assertTrue(e.getMessage().contains("-1"));
+        }
+    }
+
+    @Test
+    public void testUpdateIdentityProviderMetadataOnly() throws Exception {
+        JdbcTemplate jdbcTemplate = getJdbcTemplate();
+        IdentityProviderDAO identityProviderDAO = new IdentityProviderDAO();
+        identityProviderDAO.setJdbcTemplate(jdbcTemplate);
+
+        int idpId = identityProviderDAO.createIdentityProvider(FederatedIdentityProvider.newBuilder(0, "Metadata IdP")
+                .addAuthenticator(new AuthenticatorConfig.AuthenticatorConfigBuilder("SAMLSSOAuthenticator")
+                        .addProperty("IdPEntityId", "entity").build())
+                .addProvisioner(new ProvisionerConfig.ProvisionerConfigBuilder("scim")
+                        .addProperty("Endpoint", "https://scim").build())
+                .build());
+        jdbcTemplate.executeUpdate("INSERT INTO IDP_PROVISIONING_ENTITY (PROVISIONING_CONFIG_ID, ENTITY_TYPE, "
+                + "ENTITY_LOCAL_USERSTORE, ENTITY_NAME) SELECT ID, 'USER', 'PRIMARY', 'user' "
+                        + "FROM IDP_PROVISIONING_CONFIG WHERE IDP_ID=?",
+                preparedStatement -> preparedStatement.setInt(1, idpId));
+
+        IdentityProvider metadataOnly = FederatedIdentityProvider.newBuilder(idpId, "Metadata IdP")
+                .setDisplayLabel("Renamed").build();
+        assertNull(metadataOnly.getAuthenticationConfig());
+        assertNull(metadataOnly.getProvisioningConfig());
+        identityProviderDAO.updateIdentityProvider(metadataOnly);
+
+        IdentityProvider identityProvider = identityProviderDAO.loadIdentityProviderGraph(idpId);
+        assertEquals(identityProvider.getIdPMetadata().getDisplayLabel(), "Renamed");
+        assertEquals(identityProvider.getAuthenticationConfig().getAuthenticators().iterator().next().getProperties()
+                .get("IdPEntityId"), "entity");
+        assertEquals(identityProvider.getProvisioningConfig().getProvisioners().size(), 1);
+        assertEquals(countRows(jdbcTemplate, "IDP_PROVISIONING_ENTITY"), 1,
+                "A metadata only update must keep the provisioned entities");
+    }
+
+    @Test
+    public void testTenantScopedAccess() throws Exception {
+        JdbcTemplate jdbcTemplate = getJdbcTemplate();
+        IdentityProviderDAO identityProviderDAO = new IdentityProviderDAO();
+        identityProviderDAO.setJdbcTemplate(jdbcTemplate);
+        IdentityProviderDAO tenantDAO = identityProviderDAO.forTenant(1);
+        IdentityProviderDAO otherTenantDAO = identityProviderDAO.forTenant(2);
+
+        int tenantIdpId = tenantDAO.createIdentityProvider(FederatedIdentityProvider.newBuilder(0, "Shared Name")
+                .addAuthenticator(new AuthenticatorConfig.AuthenticatorConfigBuilder("OpenIDConnectAuthenticator")
+                        .addProperty("ClientId", "client").build())
+                .build());
+        int otherTenantIdpId = otherTenantDAO.createIdentityProvider(
+                createIdentityProvider("Shared Name", "Other", ""));
+
+        assertEquals(tenantDAO.getIdPIdByName("Shared Name"), tenantIdpId);
+        assertEquals(otherTenantDAO.getIdPIdByName("Shared Name"), otherTenantIdpId);
+        assertTrue(identityProviderDAO.listAllIdentityProviders().isEmpty());
+        assertEquals(tenantDAO.listIdentityProviders(IdPListQuery.newBuilder().setIncludeTotalCount(true).build())
+                .getTotalCount(), 1);
+        assertNull(otherTenantDAO.loadIdentityProviderGraph(tenantIdpId));
+        assertNull(otherTenantDAO.getIdPByAuthenticatorProperty("ClientId", "client"));
+        assertEquals(tenantDAO.getIdPByAuthenticatorProperty("ClientId", "client").getIdPMetadata().getId(),
+                tenantIdpId);
+        assertEquals(otherTenantDAO.getIdentityProviders(Arrays.asList(tenantIdpId, otherTenantIdpId)).keySet(),
+                Collections.singleton(otherTenantIdpId));
+
+        otherTenantDAO.disableIdentityProvider(tenantIdpId);
+        otherTenantDAO.deleteIdentityProvider(tenantIdpId);
+        IdentityProvider identityProvider = tenantDAO.loadIdentityProviderGraph(tenantIdpId);
+        assertNotNull(identityProvider, "Another tenant must not delete the identity provider");
+        assertTrue(identityProvider.isEnabled(), "Another tenant must not disable the identity provider");
+        try {
+            otherTenantDAO.updateIdentityProvider(FederatedIdentityProvider.newBuilder(tenantIdpId, "Shared Name")
+                    .build());
+            fail("Another tenant must not update the identity provider");
+        } catch (IdentityProviderConflictException e) {
+            fail("The identity provider of another tenant must be reported as not found", e);
+        } catch (IdentityProviderException e) {
+            assertEquals(countRows(jdbcTemplate, "IDP_AUTHENTICATOR"), 1);
+        }
+    }
+
+    @Test
+    public void testGetIdentityProviderByHomeRealmId() throws Exception {
+        JdbcTemplate jdbcTemplate = getJdbcTemplate();
+        IdentityProviderDAO identityProviderDAO = new CacheBackedIdPDAO();
+        identityProviderDAO.setJdbcTemplate(jdbcTemplate);
+        IdentityProviderServiceImpl identityProviderService = new IdentityProviderServiceImpl();
+        identityProviderService.setIdentityProviderDAO(identityProviderDAO);
+
+        int idpId = identityProviderService.createIdentityProvider(FederatedIdentityProvider.newBuilder(0, "Realm IdP")
+                .setHomeRealmId("corp")
+                .addAuthenticator(new AuthenticatorConfig.AuthenticatorConfigBuilder("SAMLSSOAuthenticator").build())
+                .build());
+        identityProviderDAO.forTenant(1).createIdentityProvider(FederatedIdentityProvider.newBuilder(0, "Realm IdP")
+                .setHomeRealmId("corp").build());
+        int tenantIdpId = identityProviderDAO.forTenant(1).getIdPIdByName("Realm IdP");
+
+        IdentityProvider identityProvider = identityProviderService.getIdentityProviderByHomeRealmId(
+                IdentityProviderConstants.SUPER_TENANT_ID, "corp");
+        assertEquals(identityProvider.getIdPMetadata().getId(), idpId);
+        assertEquals(identityProvider.getAuthenticationConfig().getAuthenticators().size(), 1);
+        assertEquals(identityProviderService.getIdentityProviderByHomeRealmId(1, "corp").getIdPMetadata().getId(),
+                tenantIdpId);
+        assertNull(identityProviderService.getIdentityProviderByHomeRealmId(2, "corp"));
+
+        DefaultQueryMetricsCollector metricsCollector = new DefaultQueryMetricsCollector();
+        jdbcTemplate.setMetricsCollector(metricsCollector);
+        assertSame(identityProviderService.getIdentityProviderByHomeRealmId(
+                IdentityProviderConstants.SUPER_TENANT_ID, "corp"), identityProvider);
+        assertEquals(metricsCollector.getConnectionStatistics().getCount(), 0,
+                "A resolved home realm must be served from memory");
+
+        identityProviderService.updateIdPMetadata(idpId, FederatedIdentityProvider.newBuilder(idpId, "Realm IdP")
+                .setHomeRealmId("corp-new").build().getIdPMetadata());
+        assertNull(identityProviderService.getIdentityProviderByHomeRealmId(
+                IdentityProviderConstants.SUPER_TENANT_ID, "corp"));
+        assertEquals(identityProviderService.getIdentityProviderByHomeRealmId(
+                IdentityProviderConstants.SUPER_TENANT_ID, "corp-new").getIdPMetadata().getId(), idpId);
+    }
+
+    @Test
+    public void testCacheBackedIdPDAO() throws Exception {
+        JdbcTemplate jdbcTemplate = getJdbcTemplate();
+        CacheBackedIdPDAO identityProviderDAO = new CacheBackedIdPDAO();
+        identityProviderDAO.setJdbcTemplate(jdbcTemplate);
+
+        int idpId = identityProviderDAO.createIdentityProvider(FederatedIdentityProvider.newBuilder(0, "Cached IdP")
+                .setHomeRealmId("corp")
+                .addAuthenticator(new AuthenticatorConfig.AuthenticatorConfigBuilder("OpenIDConnectAuthenticator")
+                        .addProperty("ClientId", "client").build())
+                .build());
+        IdentityProvider identityProvider = identityProviderDAO.loadIdentityProviderGraph(idpId);
+        assertSame(identityProviderDAO.loadIdentityProviderGraph("Cached IdP"), identityProvider);
+        assertSame(identityProviderDAO.getIdentityProviderByHomeRealmId("corp"), identityProvider);
+        assertSame(identityProviderDAO.getIdPByAuthenticatorProperty("ClientId", "client"), identityProvider,
+                "All the keys must point to the canonical entry");
+        try {
+            identityProvider.getAuthenticationConfig().getAuthenticators().clear();
+            fail("The cached identity provider is shared, hence must not be modifiable");
+        } catch (UnsupportedOperationException e) {
+            assertEquals(identityProviderDAO.loadIdentityProviderGraph(idpId).getAuthenticationConfig()
+                    .getAuthenticators().size(), 1);
+        }
+        assertNull(identityProviderDAO.forTenant(1).loadIdentityProviderGraph(idpId));
+
+        DefaultQueryMetricsCollector metricsCollector = new DefaultQueryMetricsCollector();
+        jdbcTemplate.setMetricsCollector(metricsCollector);
+        assertSame(identityProviderDAO.forTenant(IdentityProviderConstants.SUPER_TENANT_ID)
+                .getIdPByAuthenticatorProperty("ClientId", "client"), identityProvider);
+        assertSame(identityProviderDAO.loadIdentityProviderGraph(idpId), identityProvider);
+        assertEquals(metricsCollector.getConnectionStatistics().getCount(), 0,
+                "Cached identity providers must be served from memory");
+
+        identityProviderDAO.updateIdentityProviderMetaData(idpId, FederatedIdentityProvider
+                .newBuilder(idpId, "Renamed IdP").setHomeRealmId("corp").build().getIdPMetadata());
+        assertNull(identityProviderDAO.loadIdentityProviderGraph("Cached IdP"));
+        assertEquals(identityProviderDAO.getIdentityProviderByHomeRealmId("corp").getIdPMetadata().getName(),
+                "Renamed IdP");
+        assertEquals(identityProviderDAO.getIdPByAuthenticatorProperty("ClientId", "client").getIdPMetadata()
+                .getVersion(), 1);
+
+        identityProviderDAO.disableIdentityProvider("Renamed IdP");
+        assertFalse(identityProviderDAO.loadIdentityProviderGraph(idpId).isEnabled());
+
+        int otherIdpId = identityProviderDAO.createIdentityProvider(FederatedIdentityProvider.newBuilder(0, "Other IdP")
+                .setHomeRealmId("corp")
+                .addAuthenticator(new AuthenticatorConfig.AuthenticatorConfigBuilder("OpenIDConnectAuthenticator")
+                        .addProperty("ClientId", "client").build())
+                .build());
+        assertEquals(identityProviderDAO.getIdentityProviderByHomeRealmId("corp").getIdPMetadata().getId(), idpId);
+        identityProviderDAO.deleteIdentityProvider(idpId);
+        assertNull(identityProviderDAO.loadIdentityProviderGraph(idpId));
+        assertEquals(identityProviderDAO.getIdentityProviderByHomeRealmId("corp").getIdPMetadata().getId(),
+                otherIdpId);
+        assertEquals(identityProviderDAO.getIdPByAuthenticatorProperty("ClientId", "client").getIdPMetadata()
+                .getId(), otherIdpId);
+    }
+
+    @Test
+    public void testCacheBackedBulkLookups() throws Exception {
+        JdbcTemplate jdbcTemplate = getJdbcTemplate();
+        CacheBackedIdPDAO identityProviderDAO = new CacheBackedIdPDAO();
+        identityProviderDAO.setJdbcTemplate(jdbcTemplate);
+
+        int firstId = identityProviderDAO.createIdentityProvider(createIdentityProvider("Bulk 1", "", ""));
+        int secondId = identityProviderDAO.createIdentityProvider(createIdentityProvider("Bulk 2", "", ""));
+        IdentityProvider first = identityProviderDAO.loadIdentityProviderGraph(firstId);
+
+        DefaultQueryMetricsCollector metricsCollector = new DefaultQueryMetricsCollector();
+        jdbcTemplate.setMetricsCollector(metricsCollector);
+        Map<Integer, IdentityProvider> identityProviders = identityProviderDAO.getIdentityProviders(
+                Arrays.asList(firstId, secondId, -1));
+        assertEquals(identityProviders.keySet(), new HashSet<>(Arrays.asList(firstId, secondId)));
+        assertSame(identityProviders.get(firstId), first);
+        assertEquals(metricsCollector.getConnectionStatistics().getCount(), 2,
+                "Only the IdPs not held must be loaded, with a single graph load");
+
+        assertSame(identityProviderDAO.getIdentityProvidersByName(Arrays.asList("Bulk 1", "Bulk 3")).get("Bulk 1"),
+                first);
+        long connections = metricsCollector.getConnectionStatistics().getCount();
+        assertSame(identityProviderDAO.getIdentityProviders(Arrays.asList(firstId, secondId, -1)).get(secondId),
+                identityProviders.get(secondId));
+        assertEquals(identityProviderDAO.getIdentityProvidersByName(Arrays.asList("Bulk 1", "Bulk 3")).keySet(),
+                Collections.singleton("Bulk 1"));
+        assertEquals(metricsCollector.getConnectionStatistics().getCount(), connections,
+                "The IdPs held and the misses remembered must be served from memory");
+    }
+
+    @Test
+    public void testNegativeCaching() throws Exception {
+        JdbcTemplate jdbcTemplate = getJdbcTemplate();
+        CacheBackedIdPDAO identityProviderDAO = new CacheBackedIdPDAO(100, 100, TimeUnit.MINUTES.toMillis(1));
+        identityProviderDAO.setJdbcTemplate(jdbcTemplate);
+        int idpId = identityProviderDAO.createIdentityProvider(createIdentityProvider("Test Name", "Test", ""));
+
+        assertNull(identityProviderDAO.loadIdentityProviderGraph("Test Name-Not Exists"));
+        assertNull(identityProviderDAO.loadIdentityProviderGraph(idpId + 1));
+        assertNull(identityProviderDAO.getIdPByAuthenticatorProperty("ClientId", "client"));
+        DefaultQueryMetricsCollector metricsCollector = new DefaultQueryMetricsCollector();
+        jdbcTemplate.setMetricsCollector(metricsCollector);
+        assertNull(identityProviderDAO.loadIdentityProviderGraph("Test Name-Not Exists"));
+        assertNull(identityProviderDAO.loadIdentityProviderGraph(idpId + 1));
+        assertNull(identityProviderDAO.getIdPByAuthenticatorProperty("ClientId", "client"));
+        assertEquals(metricsCollector.getConnectionStatistics().getCount(), 0,
+                "Repeated lookups of missing identity providers must not reach the database");
+
+        int createdIdpId = identityProviderDAO.createIdentityProvider(FederatedIdentityProvider
+                .newBuilder(0, "Test Name-Not Exists")
+                .addAuthenticator(new AuthenticatorConfig.AuthenticatorConfigBuilder("OpenIDConnectAuthenticator")
+                        .addProperty("ClientId", "client").build())
+                .build());
+        assertEquals(createdIdpId, idpId + 1);
+        assertNotNull(identityProviderDAO.loadIdentityProviderGraph("Test Name-Not Exists"));
+        assertNotNull(identityProviderDAO.loadIdentityProviderGraph(idpId + 1));
+        assertNotNull(identityProviderDAO.getIdPByAuthenticatorProperty("ClientId", "client"));
+
+        assertNull(identityProviderDAO.loadIdentityProviderGraph("Renamed"));
+        identityProviderDAO.updateIdentityProviderMetaData(idpId, FederatedIdentityProvider
+                .newBuilder(idpId, "Renamed").build().getIdPMetadata());
+        assertNotNull(identityProviderDAO.loadIdentityProviderGraph("Renamed"), "A rename must invalidate the miss");
+
+        CacheBackedIdPDAO expiringDAO = new CacheBackedIdPDAO(100, 1, 50);
+        expiringDAO.setJdbcTemplate(jdbcTemplate);
+        assertNull(expiringDAO.loadIdentityProviderGraph("Missing"));
+        assertNull(expiringDAO.loadIdentityProviderGraph("Other Missing"));
+        long connections = metricsCollector.getConnectionStatistics().getCount();
+        assertNull(expiringDAO.loadIdentityProviderGraph("Missing"));
+        assertEquals(metricsCollector.getConnectionStatistics().getCount(), connections + 1,
+                "The misses must be bounded");
+        Thread.sleep(100);
+        assertNull(expiringDAO.loadIdentityProviderGraph("Missing"));
+        assertEquals(metricsCollector.getConnectionStatistics().getCount(), connections + 2,
+                "The misses must expire");
+    }
+
+    @Test
+    public void testConcurrentMissesShareOneLoad() throws Exception {
+        JdbcTemplate jdbcTemplate = getJdbcTemplate();
+        CacheBackedIdPDAO identityProviderDAO = new CacheBackedIdPDAO();
+        identityProviderDAO.setJdbcTemplate(jdbcTemplate);
+        identityProviderDAO.createIdentityProvider(createIdentityProvider("Popular IdP", "Popular", ""));
+
+        // Slow down the connections, so that the lookups overlap with the first load
+        jdbcTemplate.setMetricsCollector(new QueryMetricsCollector() {
+            @Override
+            public void connectionAcquired(long durationNanos) {
+                try {
+                    Thread.sleep(200);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            @Override
+            public void queryExecuted(String query, long durationNanos, int rowCount, boolean successful) {
+            }
+        });
+        int threads = 20;
+        ExecutorService executorService = Executors.newFixedThreadPool(threads);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<IdentityProvider>> lookups = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                lookups.add(executorService.submit(() -> {
+                    start.await();
+                    return identityProviderDAO.loadIdentityProviderGraph("Popular IdP");
+                }));
+            }
+            start.countDown();
+            IdentityProvider identityProvider = lookups.get(0).get();
+            assertNotNull(identityProvider);
+            for (Future<IdentityProvider> lookup : lookups) {
+                assertSame(lookup.get(), identityProvider);
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+        assertTrue(identityProviderDAO.getCoalescedLoadCount() > 0, "Concurrent misses must share a load");
+        assertEquals(identityProviderDAO.getLoadCount() + identityProviderDAO.getCoalescedLoadCount(), threads);
+    }
+
+    @Test
+    public void testInvalidationDuringLoad() throws Exception {
+        JdbcTemplate jdbcTemplate = getJdbcTemplate();
+        CacheBackedIdPDAO identityProviderDAO = new CacheBackedIdPDAO();
+        identityProviderDAO.setJdbcTemplate(jdbcTemplate);
+        int loadedId = identityProviderDAO.createIdentityProvider(createIdentityProvider("Loaded IdP", "", ""));
+        int writtenId = identityProviderDAO.createIdentityProvider(createIdentityProvider("Written IdP", "", ""));
+
+        // Hold the load of the thread set after its first query, until the write in between is done
+        AtomicReference<Thread> loadingThread = new AtomicReference<>();
+        CountDownLatch[] latches = new CountDownLatch[2];
+        jdbcTemplate.setMetricsCollector(new QueryMetricsCollector() {
+            @Override
+            public void connectionAcquired(long durationNanos) {
+            }
+
+            @Override
+            public void queryExecuted(String query, long durationNanos, int rowCount, boolean successful) {
+                if (loadingThread.compareAndSet(Thread.currentThread(), null)) {
+                    latches[0].countDown();
+                    try {
+                        latches[1].await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+        });
+        ExecutorService executorService = Executors.newSingleThreadExecutor();
+        try {
+            latches[0] = new CountDownLatch(1);
+            latches[1] = new CountDownLatch(1);
+            Future<IdentityProvider> load = executorService.submit(() -> {
+                loadingThread.set(Thread.currentThread());
+                return identityProviderDAO.loadIdentityProviderGraph("Loaded IdP");
+            });
+            latches[0].await();
+            identityProviderDAO.disableIdentityProvider(writtenId);
+            latches[1].countDown();
+            IdentityProvider identityProvider = load.get();
+            assertSame(identityProviderDAO.loadIdentityProviderGraph(loadedId), identityProvider,
+                    "Invalidating another IdP must not drop the load");
+            assertEquals(identityProviderDAO.getLoadCount(), 1);
+
+            latches[0] = new CountDownLatch(1);
+            latches[1] = new CountDownLatch(1);
+            load = executorService.submit(() -> {
+                loadingThread.set(Thread.currentThread());
+                return identityProviderDAO.loadIdentityProviderGraph("Written IdP");
+            });
+            latches[0].await();
+            identityProviderDAO.enableIdentityProvider(writtenId);
+            latches[1].countDown();
+            assertTrue(load.get().isEnabled(), "A load which read an IdP invalidated meanwhile must be repeated");
+            assertTrue(identityProviderDAO.loadIdentityProviderGraph(writtenId).isEnabled());
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testRefreshAheadServesStaleEntries() throws Exception {
+        JdbcTemplate jdbcTemplate = getJdbcTemplate();
+        CacheBackedIdPDAO identityProviderDAO = new CacheBackedIdPDAO(100, 100, TimeUnit.MINUTES.toMillis(1));
+        identityProviderDAO.setJdbcTemplate(jdbcTemplate);
+        identityProviderDAO.setExpiry(400, 0.5, 400);
+        int idpId = identityProviderDAO.createIdentityProvider(createIdentityProvider("Refreshed", "Refreshed", ""));
+        IdentityProvider identityProvider = identityProviderDAO.loadIdentityProviderGraph("Refreshed");
+
+        // Modify the identity provider behind the cache, as another node would
+        jdbcTemplate.executeUpdate("UPDATE IDP SET DESCRIPTION=? WHERE ID=?", preparedStatement -> {
+            preparedStatement.setString(1, "Changed");
+            preparedStatement.setInt(2, idpId);
+        });
+        assertSame(identityProviderDAO.loadIdentityProviderGraph("Refreshed"), identityProvider);
+        Thread.sleep(250);
+        assertSame(identityProviderDAO.loadIdentityProviderGraph("Refreshed"), identityProvider,
+                "The entry held must be served while it is refreshed");
+        IdentityProvider refreshedIdentityProvider = identityProvider;
+        for (int i = 0; i < 100 && refreshedIdentityProvider == identityProvider; i++) {
+            Thread.sleep(10);
+            refreshedIdentityProvider = identityProviderDAO.loadIdentityProviderGraph(idpId);
+        }
+        assertEquals(refreshedIdentityProvider.getIdPMetadata().getDescription(), "Changed");
+        assertSame(identityProviderDAO.loadIdentityProviderGraph("Refreshed"), refreshedIdentityProvider);
+
+        // A refresh that cannot run leaves the stale entry served until the grace period ends
+        AsyncQueryExecutor asyncExecutor = AsyncQueryExecutor.newPlatformThreadExecutor(1, 1);
+        asyncExecutor.close();
+        jdbcTemplate.setAsyncExecutor(asyncExecutor);
+        jdbcTemplate.executeUpdate("UPDATE IDP SET DESCRIPTION=? WHERE ID=?", preparedStatement -> {
+            preparedStatement.setString(1, "Changed Again");
+            preparedStatement.setInt(2, idpId);
+        });
+        Thread.sleep(500);
+        assertSame(identityProviderDAO.loadIdentityProviderGraph(idpId), refreshedIdentityProvider,
+                "The stale entry must be served within the grace period");
+        Thread.sleep(400);
+        assertEquals(identityProviderDAO.loadIdentityProviderGraph(idpId).getIdPMetadata().getDescription(),
+                "Changed Again", "The stale entry must expire after the grace period");
+    }
+
+    @Test
+    public void testCacheWarmUp() throws Exception {
+        JdbcTemplate jdbcTemplate = getJdbcTemplate();
+        CacheBackedIdPDAO identityProviderDAO = new CacheBackedIdPDAO(100, 100, TimeUnit.MINUTES.toMillis(1));
+        identityProviderDAO.setJdbcTemplate(jdbcTemplate);
+        List<Integer> idpIds = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            idpIds.add(identityProviderDAO.createIdentityProvider(createIdentityProvider("Warm " + i, "Warm", "")));
+        }
+        int tenantIdpId = identityProviderDAO.forTenant(1)
+                .createIdentityProvider(createIdentityProvider("Warm 0", "Warm", ""));
+        identityProviderDAO.disableIdentityProvider(idpIds.get(4));
+
+        assertEquals(new IdentityProviderCacheWarmer(identityProviderDAO, 2, 2, 3, TimeUnit.MINUTES.toMillis(1))
+                .warmUp(), 3, "The warm-up must be limited to the given number of identity providers");
+        DefaultQueryMetricsCollector metricsCollector = new DefaultQueryMetricsCollector();
+        jdbcTemplate.setMetricsCollector(metricsCollector);
+        assertNotNull(identityProviderDAO.forTenant(1).loadIdentityProviderGraph(tenantIdpId));
+        assertNotNull(identityProviderDAO.loadIdentityProviderGraph("Warm 3"));
+        assertNotNull(identityProviderDAO.loadIdentityProviderGraph(idpIds.get(2)));
+        assertEquals(metricsCollector.getConnectionStatistics().getCount(), 0,
+                "The most recently created identity providers must be loaded first");
+        assertNotNull(identityProviderDAO.loadIdentityProviderGraph(idpIds.get(1)));
+        assertTrue(metricsCollector.getConnectionStatistics().getCount() > 0);
+
+        identityProviderDAO.clearCache();
+        assertEquals(new IdentityProviderCacheWarmer(identityProviderDAO, 4, 2, 100, TimeUnit.MINUTES.toMillis(1))
+                .warmUp(), 5, "Only the enabled identity providers must be loaded");
+        long connections = metricsCollector.getConnectionStatistics().getCount();
+        for (int i = 0; i < 4; i++) {
+            assertNotNull(identityProviderDAO.loadIdentityProviderGraph("Warm " + i));
+        }
+        assertEquals(metricsCollector.getConnectionStatistics().getCount(), connections);
+    }
+
+    @Test
+    public void testBulkEnableDisableDelete() throws Exception {
+        JdbcTemplate jdbcTemplate = getJdbcTemplate();
+        jdbcTemplate.setMaxInListSize(2);
+        IdentityProviderDAO identityProviderDAO = new IdentityProviderDAO();
+        identityProviderDAO.setJdbcTemplate(jdbcTemplate);
+        IdentityProviderServiceImpl identityProviderService = new IdentityProviderServiceImpl();
+        identityProviderService.setIdentityProviderDAO(identityProviderDAO);
+        List<String> interceptions = new ArrayList<>();
+        identityProviderService.addInterceptor((IdentityProviderInterceptor) Proxy.newProxyInstance(
+                getClass().getClassLoader(), new Class<?>[] {IdentityProviderInterceptor.class},
+                (proxy, method, args) -> {
+                    interceptions.add(method.getName());
+                    return null;
+                }));
+
+        List<Integer> idpIds = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            idpIds.add(identityProviderDAO.createIdentityProvider(createIdentityProvider("Bulk " + i, "Bulk", "")));
+        }
+        identityProviderDAO.createIdentityProvider(createIdentityProvider("Other", "Other", ""));
+        identityProviderDAO.forTenant(1).createIdentityProvider(createIdentityProvider("Bulk 0", "Bulk", ""));
+
+        assertEquals(identityProviderService.disableIdentityProviders(idpIds), 5);
+        assertEquals(interceptions, Arrays.asList("preDisableIdentityProviders", "postDisableIdentityProviders"),
+                "Interceptors must be invoked once per batch");
+        assertEquals(identityProviderDAO.listEnabledIdentityProviders().size(), 1);
+        assertEquals(identityProviderDAO.forTenant(1).listEnabledIdentityProviders().size(), 1);
+        assertEquals(identityProviderDAO.loadIdentityProviderGraph(idpIds.get(0)).getIdPMetadata().getVersion(), 1);
+
+        interceptions.clear();
+        assertEquals(identityProviderService.enableIdentityProviders(IdPListQuery.newBuilder().setNamePrefix("Bulk")
+                .setEnabled(false).build()), 5);
+        assertEquals(interceptions, Arrays.asList("preEnableIdentityProviders", "postEnableIdentityProviders"));
+        assertEquals(identityProviderDAO.listEnabledIdentityProviders().size(), 6);
+
+        interceptions.clear();
+        assertEquals(identityProviderService.deleteIdentityProviders(idpIds.subList(0, 3)), 3);
+        assertEquals(interceptions, Arrays.asList("preDeleteIdentityProviders", "postDeleteIdentityProviders"));
+        assertEquals(identityProviderDAO.listAllIdentityProviders().size(), 3);
+        assertEquals(identityProviderDAO.forTenant(1).listAllIdentityProviders().size(), 1);
+        assertEquals(identityProviderService.deleteIdentityProviders(Collections.emptyList()), 0);
+    }
+
+    @Test
+    public void testSoftDeleteAndPurge() throws Exception {
+        JdbcTemplate jdbcTemplate = getJdbcTemplate();
+        IdentityProviderDAO identityProviderDAO = new IdentityProviderDAO();
+        identityProviderDAO.setJdbcTemplate(jdbcTemplate);
+        identityProviderDAO.setSoftDelete(true);
+
+        int idpId = identityProviderDAO.createIdentityProvider(FederatedIdentityProvider.newBuilder(0, "Deleted IdP")
+                .addAuthenticator(new AuthenticatorConfig.AuthenticatorConfigBuilder("OpenIDConnectAuthenticator")
+                        .addProperty("ClientId", "client")
+                        .addProperty("ClientSecret", "secret").build())
+                .addProvisioner(new ProvisionerConfig.ProvisionerConfigBuilder("scim")
+                        .addProperty("scim-username", "admin").build())
+                .build());
+        int keptIdpId = identityProviderDAO.createIdentityProvider(createIdentityProvider("Kept IdP", "Kept", ""));
+        for (int i = 0; i < 25; i++) {
+            int entity = i;
+            jdbcTemplate.executeUpdate("INSERT INTO IDP_PROVISIONING_ENTITY (PROVISIONING_CONFIG_ID, ENTITY_TYPE, "
+                            + "ENTITY_LOCAL_USERSTORE, ENTITY_NAME) SELECT ID, 'USER', 'PRIMARY', ? "
+                            + "FROM IDP_PROVISIONING_CONFIG WHERE IDP_ID=?",
+                    preparedStatement -> {
+                        preparedStatement.setString(1, "user" + entity);
+                        preparedStatement.setInt(2, idpId);
+                    });
+        }
+
+        identityProviderDAO.deleteIdentityProvider(idpId);
+        assertNull(identityProviderDAO.loadIdentityProviderGraph(idpId));
+        assertNull(identityProviderDAO.getIdPByAuthenticatorProperty("ClientId", "client"));
+        assertEquals(identityProviderDAO.getIdPIdByName("Deleted IdP"), 0);
+        assertEquals(identityProviderDAO.listAllIdentityProviders().size(), 1);
+        assertEquals(countRows(jdbcTemplate, "IDP_PROVISIONING_ENTITY"), 25,
+                "Soft delete must leave the child rows to the purger");
+        assertEquals(identityProviderDAO.listDeletedIdentityProviderIds(10), Collections.singletonList(idpId));
+
+        assertEquals(identityProviderDAO.purgeDeletedIdentityProvider(idpId, 10), 10);
+        assertEquals(countRows(jdbcTemplate, "IDP_PROVISIONING_ENTITY"), 15);
+
+        DeletedIdentityProviderPurger purger = new DeletedIdentityProviderPurger(identityProviderDAO, 10, 1000);
+        assertEquals(purger.purge(), 15 + 1 + 2 + 1);
+        assertEquals(countRows(jdbcTemplate, "IDP_PROVISIONING_ENTITY"), 0);
+        assertEquals(countRows(jdbcTemplate, "IDP_AUTHENTICATOR"), 0);
+        assertEquals(countRows(jdbcTemplate, "IDP_PROVISIONING_CONFIG"), 0);
+        assertEquals(countRows(jdbcTemplate, "IDP"), 1);
+        assertTrue(identityProviderDAO.listDeletedIdentityProviderIds(10).isEmpty());
+        assertNotNull(identityProviderDAO.loadIdentityProviderGraph(keptIdpId));
+        assertEquals(identityProviderDAO.purgeDeletedIdentityProvider(keptIdpId, 10), 0,
+                "A live identity provider must not be purged");
+    }
+
     @Test
     public void testGetIdentityProvider_Int() throws Exception {
         JdbcTemplate jdbcTemplate = getJdbcTemplate();
@@ -204,6 +1253,11 @@ public class IdentityProviderDAOTest {
 
     }
 
+    private int countRows(JdbcTemplate jdbcTemplate, String table) throws DataAccessException {
+        return jdbcTemplate.fetchSingleRecord("SELECT COUNT(*) FROM " + table,
+                (resultSet, rowNumber) -> resultSet.getInt(1), null);
+    }
+
     private IdentityProvider createIdentityProvider(String name, String label, String description) {
         IdentityProvider.IdentityProviderBuilder identityProviderBuilder = ResidentIdentityProvider.newBuilder(0, name);
         identityProviderBuilder.setDialectId(1).setDisplayLabel(label).setDescription(description);
@@ -0,0 +1,492 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.provider.dao;
+
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.testng.Reporter;
+import org.testng.SkipException;
+import org.testng.annotations.Test;
+
+import javax.sql.DataSource;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+@Test
+public class JdbcTemplateTest {
+
+    private static final String COUNT_IDP_SQL = "SELECT COUNT(*) FROM IDP";
+    private static final String LIST_IDP_SQL = "SELECT ID, NAME, DISPLAY_NAME, DESCRIPTION, IS_FEDERATION_HUB, "
+            + "IS_ENABLED, HOME_REALM_ID FROM IDP ORDER BY ID";
+    private static final String BENCHMARK_PROPERTY = "identity.provider.benchmark";
+    private static final String ENDLESS_QUERY_SQL =
+            "SELECT COUNT(*) FROM SYSTEM_RANGE(1, 100000) A, SYSTEM_RANGE(1, 100000) B, SYSTEM_RANGE(1, 100000) C";
+
+    @Test
+    public void testExecuteBatch() throws Exception {
+        JdbcTemplate jdbcTemplate = getJdbcTemplate();
+        jdbcTemplate.setBatchSize(100);
+
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < 250; i++) {
+            names.add("Batch IdP " + i);
+        }
+        List<Integer> generatedKeys = jdbcTemplate
+                .executeBatch("INSERT INTO IDP (NAME, DISPLAY_NAME, DESCRIPTION) VALUES (?,?,?)", names,
+                        (preparedStatement, name) -> {
+                            preparedStatement.setString(1, name);
+                            preparedStatement.setString(2, name);
+                            preparedStatement.setString(3, name);
+                        });
+
+        assertEquals(countIdentityProviders(jdbcTemplate), 250, "All the entries of the batch should be inserted");
+        assertEquals(generatedKeys, jdbcTemplate.executeQuery("SELECT ID FROM IDP ORDER BY ID",
+                (resultSet, rowNumber) -> resultSet.getInt(1)), "The key of every entry should be returned in order");
+    }
+
+    @Test
+    public void testExecuteBatchRollback() throws Exception {
+        JdbcTemplate jdbcTemplate = getJdbcTemplate();
+        jdbcTemplate.setBatchSize(2);
+
+        List<String> names = new ArrayList<>();
+        Collections.addAll(names, "IdP 1", "IdP 2", "IdP 3", "IdP 1");
+        try {
+            jdbcTemplate.executeBatch("INSERT INTO IDP (NAME) VALUES (?)", names,
+                    (preparedStatement, name) -> preparedStatement.setString(1, name), false);
+            fail("Duplicate names should fail the batch");
+        } catch (DataAccessException e) {
+            assertTrue(e.getCause() instanceof SQLException);
+        }
+        assertEquals(countIdentityProviders(jdbcTemplate), 0, "A failed batch should not leave partial chunks");
+    }
+
+    @Test
+    public void testStreamQuery() throws Exception {
+        JdbcTemplate jdbcTemplate = getJdbcTemplate();
+        jdbcTemplate.setFetchSize(10);
+        jdbcTemplate.executeBatch("INSERT INTO IDP (NAME) VALUES (?)", Arrays.asList("IdP 1", "IdP 2", "IdP 3"),
+                (preparedStatement, name) -> preparedStatement.setString(1, name), false);
+
+        try (Stream<String> names = jdbcTemplate.streamQuery("SELECT NAME FROM IDP WHERE NAME <> ? ORDER BY NAME",
+                (resultSet, rowNumber) -> resultSet.getString(1),
+                (preparedStatement) -> preparedStatement.setString(1, "IdP 2"))) {
+            assertEquals(names.collect(Collectors.toList()), Arrays.asList("IdP 1", "IdP 3"));
+        }
+    }
+
+    @Test
+    public void testStreamQueryPartialConsumption() throws Exception {
+        JdbcTemplate jdbcTemplate = getJdbcTemplate();
+        jdbcTemplate.executeBatch("INSERT INTO IDP (NAME) VALUES (?)", Arrays.asList("IdP 1", "IdP 2", "IdP 3"),
+                (preparedStatement, name) -> preparedStatement.setString(1, name), false);
+
+        try (Stream<String> names = jdbcTemplate.streamQuery("SELECT NAME FROM IDP ORDER BY NAME",
+                (resultSet, rowNumber) -> resultSet.getString(1), null)) {
+            assertEquals(names.findFirst().get(), "IdP 1");
+        }
+        assertEquals(countIdentityProviders(jdbcTemplate), 3, "Connection should be usable after closing the stream");
+    }
+
+    @Test
+    public void testInTransaction() throws Exception {
+        JdbcTemplate jdbcTemplate = getJdbcTemplate();
+
+        int count = jdbcTemplate.inTransaction(() -> {
+            jdbcTemplate.executeUpdate("INSERT INTO IDP (NAME) VALUES ('IdP 1')");
+            jdbcTemplate.executeUpdate("INSERT INTO IDP (NAME) VALUES ('IdP 2')");
+            return countIdentityProviders(jdbcTemplate);
+        });
+        assertEquals(count, 2, "Uncommitted changes should be visible within the transaction");
+        assertEquals(countIdentityProviders(jdbcTemplate), 2, "The transaction should be committed");
+    }
+
+    @Test
+    public void testInTransactionRollback() throws Exception {
+        JdbcTemplate jdbcTemplate = getJdbcTemplate();
+
+        try {
+            jdbcTemplate.inTransaction(() -> {
+                jdbcTemplate.executeUpdate("INSERT INTO IDP (NAME) VALUES ('IdP 1')");
+                jdbcTemplate.executeBatch("INSERT INTO IDP (NAME) VALUES (?)", Arrays.asList("IdP 2", "IdP 1"),
+                        (preparedStatement, name) -> preparedStatement.setString(1, name), false);
+                return null;
+            });
+            fail("Duplicate names should fail the transaction");
+        } catch (DataAccessException e) {
+            assertTrue(e.getCause() instanceof SQLException);
+        }
+        assertEquals(countIdentityProviders(jdbcTemplate), 0, "The transaction should be rolled back");
+    }
+
+    @Test
+    public void testAsyncCalls() throws Exception {
+        JdbcTemplate jdbcTemplate = getJdbcTemplate();
+        AsyncQueryExecutor asyncQueryExecutor = AsyncQueryExecutor.newVirtualThreadExecutor(2, 10);
+        jdbcTemplate.setAsyncExecutor(asyncQueryExecutor);
+
+        jdbcTemplate.executeUpdateAsync("INSERT INTO IDP (NAME) VALUES (?)",
+                (preparedStatement) -> preparedStatement.setString(1, "IdP 1")).get(10, TimeUnit.SECONDS);
+        List<String> names = jdbcTemplate.executeQueryAsync("SELECT NAME FROM IDP",
+                (resultSet, rowNumber) -> resultSet.getString(1), null).get(10, TimeUnit.SECONDS);
+        assertEquals(names, Collections.singletonList("IdP 1"));
+
+        CompletableFuture<String> missing = jdbcTemplate.fetchSingleRecordAsync("SELECT NAME FROM UNKNOWN_TABLE",
+                (resultSet, rowNumber) -> resultSet.getString(1), null);
+        try {
+            missing.get(10, TimeUnit.SECONDS);
+            fail("Query on an unknown table should fail");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof DataAccessException);
+        }
+        asyncQueryExecutor.close();
+    }
+
+    @Test
+    public void testAsyncBulkhead() throws Exception {
+        JdbcTemplate jdbcTemplate = getJdbcTemplate();
+        AsyncQueryExecutor asyncQueryExecutor = AsyncQueryExecutor.newPlatformThreadExecutor(1, 0);
+        jdbcTemplate.setAsyncExecutor(asyncQueryExecutor);
+
+        CountDownLatch latch = new CountDownLatch(1);
+        asyncQueryExecutor.execute(() -> {
+            try {
+                latch.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertEquals(asyncQueryExecutor.getInFlightCount(), 1);
+
+        CompletableFuture<Integer> rejected = jdbcTemplate.fetchSingleRecordAsync(COUNT_IDP_SQL,
+                (resultSet, rowNumber) -> resultSet.getInt(1), null);
+        assertTrue(rejected.isCompletedExceptionally(), "Calls beyond the bulkhead limits should be rejected");
+
+        latch.countDown();
+        asyncQueryExecutor.close();
+    }
+
+    @Test
+    public void testQueryMetrics() throws Exception {
+        JdbcTemplate jdbcTemplate = getJdbcTemplate();
+        DefaultQueryMetricsCollector metricsCollector = new DefaultQueryMetricsCollector();
+        jdbcTemplate.setMetricsCollector(metricsCollector);
+        jdbcTemplate.setSlowQueryThreshold(1);
+
+        jdbcTemplate.executeBatch("INSERT INTO IDP (NAME) VALUES (?)", Arrays.asList("Metrics IdP 1", "Metrics IdP 2"),
+                (preparedStatement, name) -> preparedStatement.setString(1, name), false);
+        countIdentityProviders(jdbcTemplate);
+        countIdentityProviders(jdbcTemplate);
+        try (Stream<String> names = jdbcTemplate.streamQuery("SELECT NAME FROM IDP",
+                (resultSet, rowNumber) -> resultSet.getString(1), null)) {
+            assertEquals(names.count(), 2);
+        }
+        try {
+            jdbcTemplate.executeUpdate("DELETE FROM MISSING_TABLE");
+            fail("Update on an unknown table should fail");
+        } catch (DataAccessException e) {
+            // expected
+        }
+
+        QueryStatistics countStatistics = metricsCollector.getQueryStatistics().get(COUNT_IDP_SQL);
+        assertEquals(countStatistics.getCount(), 2);
+        assertEquals(countStatistics.getRowCount(), 2);
+        assertEquals(countStatistics.getFailureCount(), 0);
+        assertTrue(countStatistics.getPercentileMillis(99) >= countStatistics.getPercentileMillis(50));
+        assertEquals(metricsCollector.getQueryStatistics().get("INSERT INTO IDP (NAME) VALUES (?)").getRowCount(), 2);
+        assertEquals(metricsCollector.getQueryStatistics().get("SELECT NAME FROM IDP").getRowCount(), 2);
+        assertEquals(metricsCollector.getQueryStatistics().get("DELETE FROM MISSING_TABLE").getFailureCount(), 1);
+        assertEquals(metricsCollector.getConnectionStatistics().getCount(), 5);
+    }
+
+    @Test
+    public void testQueryTimeout() throws Exception {
+        JdbcTemplate jdbcTemplate = getJdbcTemplate();
+        jdbcTemplate.setQueryTimeout(60);
+
+        long start = System.nanoTime();
+        try {
+            jdbcTemplate.withQueryTimeout(1).fetchSingleRecord(ENDLESS_QUERY_SQL,
+                    (resultSet, rowNumber) -> resultSet.getLong(1), null);
+            fail("The query should be aborted by the timeout");
+        } catch (DataAccessException e) {
+            assertTrue(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start) < 30);
+        }
+        assertEquals(countIdentityProviders(jdbcTemplate), 0);
+    }
+
+    @Test
+    public void testAsyncCancellation() throws Exception {
+        JdbcTemplate jdbcTemplate = getJdbcTemplate();
+        AsyncQueryExecutor asyncQueryExecutor = AsyncQueryExecutor.newPlatformThreadExecutor(1, 1);
+        jdbcTemplate.setAsyncExecutor(asyncQueryExecutor);
+
+        CompletableFuture<Long> endless = jdbcTemplate.fetchSingleRecordAsync(ENDLESS_QUERY_SQL,
+                (resultSet, rowNumber) -> resultSet.getLong(1), null);
+        Thread.sleep(200);
+        assertTrue(endless.cancel(true));
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (asyncQueryExecutor.getInFlightCount() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(50);
+        }
+        assertEquals(asyncQueryExecutor.getInFlightCount(), 0, "The cancelled statement should stop running");
+        assertEquals(jdbcTemplate.fetchSingleRecordAsync(COUNT_IDP_SQL, (resultSet, rowNumber) -> resultSet.getInt(1),
+                null).get(10, TimeUnit.SECONDS), Integer.valueOf(0));
+        asyncQueryExecutor.close();
+    }
+
+    @Test
+    public void testReadReplicaRouting() throws Exception {
+        DataSource primary = createDataSource("primary");
+        DataSource replica1 = createDataSource("replica1");
+        DataSource replica2 = createDataSource("replica2");
+        new JdbcTemplate(replica2).executeUpdate("INSERT INTO IDP (NAME) VALUES ('Replica IdP')");
+        RoutingJdbcTemplate jdbcTemplate = new RoutingJdbcTemplate(primary, Arrays.asList(replica1, replica2),
+                RoutingJdbcTemplate.ReplicaSelection.ROUND_ROBIN);
+
+        List<Integer> counts = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            counts.add(countIdentityProviders(jdbcTemplate));
+        }
+        assertEquals(counts, Arrays.asList(0, 1, 0, 1), "Reads should be spread over the replicas");
+
+        jdbcTemplate.executeUpdate("INSERT INTO IDP (NAME) VALUES ('Primary IdP 1')");
+        jdbcTemplate.executeUpdate("INSERT INTO IDP (NAME) VALUES ('Primary IdP 2')");
+        assertEquals(new JdbcTemplate(primary).fetchSingleRecord(COUNT_IDP_SQL,
+                (resultSet, rowNumber) -> resultSet.getInt(1), null), Integer.valueOf(2));
+        assertTrue(countIdentityProviders(jdbcTemplate) < 2, "Writes should not change the replicas");
+        assertEquals(jdbcTemplate.inTransaction(() -> countIdentityProviders(jdbcTemplate)), Integer.valueOf(2),
+                "Reads within a transaction should go to the primary");
+
+        jdbcTemplate.setReadYourWritesWindow(60000);
+        jdbcTemplate.executeUpdate("INSERT INTO IDP (NAME) VALUES ('Primary IdP 3')");
+        assertEquals(countIdentityProviders(jdbcTemplate), 3, "Reads after a write should go to the primary");
+        assertEquals(countIdentityProviders(jdbcTemplate.withQueryTimeout(5)), 3);
+        assertEquals(CompletableFuture.supplyAsync(() -> {
+            try {
+                return countIdentityProviders(jdbcTemplate);
+            } catch (DataAccessException e) {
+                throw new IllegalStateException(e);
+            }
+        }).get(), Integer.valueOf(3), "The window should cover the reads of the other threads");
+        jdbcTemplate.setReadYourWritesWindow(0);
+        assertTrue(countIdentityProviders(jdbcTemplate) < 2, "Reads should go to the replicas without a window");
+        assertEquals(jdbcTemplate.getReplicaLoads(), Arrays.asList(0, 0));
+    }
+
+    @Test
+    public void testLeastLoadedReplicaSelection() throws Exception {
+        DataSource replica1 = createDataSource("replica1");
+        DataSource replica2 = createDataSource("replica2");
+        RoutingJdbcTemplate jdbcTemplate = new RoutingJdbcTemplate(createDataSource("primary"),
+                Arrays.asList(replica1, replica2), RoutingJdbcTemplate.ReplicaSelection.LEAST_LOADED);
+
+        try (Stream<String> first = jdbcTemplate.streamQuery("SELECT NAME FROM IDP",
+                (resultSet, rowNumber) -> resultSet.getString(1), null);
+                Stream<String> second = jdbcTemplate.streamQuery("SELECT NAME FROM IDP",
+                        (resultSet, rowNumber) -> resultSet.getString(1), null)) {
+            assertEquals(jdbcTemplate.getReplicaLoads(), Arrays.asList(1, 1));
+        }
+        assertEquals(jdbcTemplate.getReplicaLoads(), Arrays.asList(0, 0));
+    }
+
+    @Test
+    public void testIndexedRowMapper() throws Exception {
+        JdbcTemplate jdbcTemplate = getJdbcTemplate();
+        insertIdentityProviders(jdbcTemplate, 3);
+
+        List<String> names = jdbcTemplate.executeQuery(LIST_IDP_SQL, columnIndex -> {
+            int name = columnIndex.indexOf("name");
+            int displayName = columnIndex.indexOf("DISPLAY_NAME");
+            return (resultSet, rowNumber) -> resultSet.getString(name) + "/" + resultSet.getString(displayName);
+        }, null);
+        assertEquals(names, Arrays.asList("IdP 0/Display 0", "IdP 1/Display 1", "IdP 2/Display 2"));
+
+        try (Stream<String> streamedNames = jdbcTemplate.streamQuery(LIST_IDP_SQL, columnIndex -> {
+            int name = columnIndex.indexOf("NAME");
+            return (resultSet, rowNumber) -> resultSet.getString(name);
+        }, null)) {
+            assertEquals(streamedNames.count(), 3);
+        }
+
+        try {
+            jdbcTemplate.fetchSingleRecord(COUNT_IDP_SQL, columnIndex -> {
+                int missing = columnIndex.indexOf("MISSING");
+                return (resultSet, rowNumber) -> resultSet.getInt(missing);
+            }, null);
+            fail("Mapping an unknown column should fail");
+        } catch (DataAccessException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Compares mapping a large listing by column label and by pre-resolved column index.
+     * Run with -Didentity.provider.benchmark=true.
+     */
+    @Test
+    public void testColumnIndexBenchmark() throws Exception {
+        if (!Boolean.getBoolean(BENCHMARK_PROPERTY)) {
+            throw new SkipException("Benchmarks run only when " + BENCHMARK_PROPERTY + " is set");
+        }
+        JdbcTemplate jdbcTemplate = getJdbcTemplate();
+        insertIdentityProviders(jdbcTemplate, 50000);
+
+        RowMapper<Object[]> labelRowMapper = (resultSet, rowNumber) -> new Object[] {
+                resultSet.getInt("ID"), resultSet.getString("NAME"), resultSet.getString("DISPLAY_NAME"),
+                resultSet.getString("DESCRIPTION"), resultSet.getBoolean("IS_FEDERATION_HUB"),
+                resultSet.getBoolean("IS_ENABLED"), resultSet.getString("HOME_REALM_ID") };
+        IndexedRowMapper<Object[]> indexedRowMapper = columnIndex -> {
+            int id = columnIndex.indexOf("ID");
+            int name = columnIndex.indexOf("NAME");
+            int displayName = columnIndex.indexOf("DISPLAY_NAME");
+            int description = columnIndex.indexOf("DESCRIPTION");
+            int isFederationHub = columnIndex.indexOf("IS_FEDERATION_HUB");
+            int isEnabled = columnIndex.indexOf("IS_ENABLED");
+            int homeRealmId = columnIndex.indexOf("HOME_REALM_ID");
+            return (resultSet, rowNumber) -> new Object[] {
+                    resultSet.getInt(id), resultSet.getString(name), resultSet.getString(displayName),
+                    resultSet.getString(description), resultSet.getBoolean(isFederationHub),
+                    resultSet.getBoolean(isEnabled), resultSet.getString(homeRealmId) };
+        };
+
+        long labelNanos = 0;
+        long indexNanos = 0;
+        for (int round = 0; round < 10; round++) {
+            long start = System.nanoTime();
+            assertEquals(jdbcTemplate.executeQuery(LIST_IDP_SQL, labelRowMapper, null).size(), 50000);
+            long labelDone = System.nanoTime();
+            assertEquals(jdbcTemplate.executeQuery(LIST_IDP_SQL, indexedRowMapper, null).size(), 50000);
+            long indexDone = System.nanoTime();
+            if (round >= 5) {
+                labelNanos += labelDone - start;
+                indexNanos += indexDone - labelDone;
+            }
+        }
+        Reporter.log("Mapping 50000 rows by column label: " + TimeUnit.NANOSECONDS.toMillis(labelNanos / 5)
+                + " ms, by column index: " + TimeUnit.NANOSECONDS.toMillis(indexNanos / 5) + " ms", true);
+    }
+
+    @Test
+    public void testQueryWithGroupingExtractor() throws Exception {
+        JdbcTemplate jdbcTemplate = getJdbcTemplate();
+        insertIdentityProviders(jdbcTemplate, 2);
+        jdbcTemplate.executeUpdate("INSERT INTO IDP_AUTHENTICATOR (IDP_ID, NAME) SELECT ID, 'SAML' FROM IDP");
+        jdbcTemplate.executeUpdate("INSERT INTO IDP_AUTHENTICATOR (IDP_ID, NAME) SELECT ID, 'OIDC' FROM IDP "
+                + "WHERE NAME='IdP 0'");
+        jdbcTemplate.executeUpdate("INSERT INTO IDP_AUTHENTICATOR_PROPERTY (AUTHENTICATOR_ID, PROPERTY_KEY, "
+                + "PROPERTY_VALUE) SELECT ID, 'Key1', 'Value1' FROM IDP_AUTHENTICATOR");
+        jdbcTemplate.executeUpdate("INSERT INTO IDP_AUTHENTICATOR_PROPERTY (AUTHENTICATOR_ID, PROPERTY_KEY, "
+                + "PROPERTY_VALUE) SELECT ID, 'Key2', 'Value2' FROM IDP_AUTHENTICATOR WHERE NAME='SAML'");
+        jdbcTemplate.executeUpdate("INSERT INTO IDP (NAME) VALUES ('IdP without authenticators')");
+
+        final String JOIN_SQL = "SELECT IDP.NAME, IDP_AUTHENTICATOR.ID AS AUTHENTICATOR_ID, "
+                + "IDP_AUTHENTICATOR.NAME AS AUTHENTICATOR_NAME, PROPERTY_KEY, PROPERTY_VALUE FROM IDP "
+                + "LEFT JOIN IDP_AUTHENTICATOR ON IDP.ID = IDP_AUTHENTICATOR.IDP_ID "
+                + "LEFT JOIN IDP_AUTHENTICATOR_PROPERTY ON IDP_AUTHENTICATOR.ID = "
+                + "IDP_AUTHENTICATOR_PROPERTY.AUTHENTICATOR_ID ORDER BY IDP.ID, IDP_AUTHENTICATOR.ID";
+        DefaultQueryMetricsCollector metricsCollector = new DefaultQueryMetricsCollector();
+        jdbcTemplate.setMetricsCollector(metricsCollector);
+        Map<String, Map<String, Map<String, String>>> identityProviders = jdbcTemplate.query(JOIN_SQL,
+                new GroupingResultSetExtractor<>((resultSet, rowNumber) -> resultSet.getString("NAME"),
+                        (resultSet, rowNumber) -> new LinkedHashMap<>(),
+                        GroupingResultSetExtractor.<Map<String, Map<String, String>>, String, Map<String, String>>
+                                groupChildren(authenticators -> authenticators,
+                                (resultSet, rowNumber) -> resultSet.getString("AUTHENTICATOR_NAME"),
+                                (resultSet, rowNumber) -> new HashMap<>(),
+                                (properties, resultSet, rowNumber) -> properties.put(
+                                        resultSet.getString("PROPERTY_KEY"), resultSet.getString("PROPERTY_VALUE")))),
+                null);
+
+        assertEquals(new ArrayList<>(identityProviders.keySet()),
+                Arrays.asList("IdP 0", "IdP 1", "IdP without authenticators"));
+        assertEquals(identityProviders.get("IdP 0").keySet().size(), 2);
+        assertEquals(identityProviders.get("IdP 0").get("SAML").size(), 2);
+        assertEquals(identityProviders.get("IdP 0").get("OIDC").get("Key1"), "Value1");
+        assertEquals(identityProviders.get("IdP 1").keySet().size(), 1);
+        assertTrue(identityProviders.get("IdP without authenticators").isEmpty());
+        assertEquals(metricsCollector.getQueryStatistics().get(JOIN_SQL).getRowCount(), 6,
+                "The rows read by the extractor should be counted");
+    }
+
+    private void insertIdentityProviders(JdbcTemplate jdbcTemplate, int count) throws DataAccessException {
+        List<Integer> indexes = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            indexes.add(i);
+        }
+        jdbcTemplate.executeBatch("INSERT INTO IDP (NAME, DISPLAY_NAME, DESCRIPTION) VALUES (?, ?, ?)", indexes,
+                (preparedStatement, index) -> {
+                    preparedStatement.setString(1, "IdP " + index);
+                    preparedStatement.setString(2, "Display " + index);
+                    preparedStatement.setString(3, "Description of the identity provider " + index);
+                }, false);
+    }
+
+    private int countIdentityProviders(JdbcTemplate jdbcTemplate) throws DataAccessException {
+        return jdbcTemplate.fetchSingleRecord(COUNT_IDP_SQL, (resultSet, rowNumber) -> resultSet.getInt(1), null);
+    }
+
+    private JdbcTemplate getJdbcTemplate() {
+        return new JdbcTemplate(createDataSource("test"));
+    }
+
+    private DataSource createDataSource(String name) {
+        DataSource ds = JdbcConnectionPool.create("jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1", "user", "password");
+
+        try (InputStream databaseInputStream = this.getClass().getClassLoader().getResourceAsStream("dbscripts/h2.sql");
+                Connection conn = ds.getConnection();
+                Statement statement = conn.createStatement()) {
+            statement.execute("DROP ALL OBJECTS");
+            String sql = read(databaseInputStream);
+            statement.executeUpdate(sql);
+        } catch (SQLException | IOException e) {
+            fail("Could not create in-memory h2 database", e);
+        }
+
+        return ds;
+    }
+
+    private String read(InputStream input) throws IOException {
+        try (BufferedReader buffer = new BufferedReader(new InputStreamReader(input))) {
+            return buffer.lines().collect(Collectors.joining("\n"));
+        }
+    }
+}
@@ -27,6 +27,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.wso2.carbon.identity.provider.IdentityProviderService;
 import org.wso2.carbon.identity.provider.dao.JdbcTemplate;
+import org.wso2.carbon.identity.provider.util.IdentityProviderUtil;
 import org.wso2.carbon.identity.service.provider.internal.dao.ServiceProviderDAO;
 import org.wso2.carbon.identity.service.provider.internal.service.ServiceProviderServiceImpl;
 
@@ -45,13 +46,12 @@ public class ServiceProviderServiceComponent {
 
     private static final Logger logger = LoggerFactory.getLogger(ServiceProviderServiceComponent.class);
 
-    private ServiceProviderServiceImpl serviceProviderService;
+    private final ServiceProviderServiceImpl serviceProviderService = new ServiceProviderServiceImpl();
     private ServiceRegistration<?> identityProviderServiceRegistration;
     private JdbcTemplate jdbcTemplate;
 
     @Activate
     public void activate(ComponentContext componentContext, BundleContext bundleContext, Map<String, ?> properties) {
-        serviceProviderService = new ServiceProviderServiceImpl();
         identityProviderServiceRegistration = bundleContext
                 .registerService(IdentityProviderService.class.getName(), serviceProviderService, null);
         if (logger.isDebugEnabled()) {
@@ -83,7 +83,7 @@ public class ServiceProviderServiceComponent {
             Context ctx = jndiContextManager.newInitialContext();
             DataSource dsObject = (DataSource) ctx.lookup("java:comp/env/jdbc/WSO2CarbonDB");
             if (dsObject != null) {
-                jdbcTemplate = new JdbcTemplate(dsObject);
+                jdbcTemplate = IdentityProviderUtil.createJdbcTemplate(ctx, dsObject);
                 initializeDao(jdbcTemplate);
             } else {
                 logger.error("Could not find WSO2CarbonDB");